@@ -0,0 +1,151 @@
+package de.aitools.aq.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+import com.ibm.icu.text.BreakIterator;
+
+/**
+ * A filter that accepts texts that all of its {@link TextFilter}s accept,
+ * counting the words of all filters in one pass over the text.
+ *
+ * <p>
+ * Testing the text filters one after another segments the text for each (or
+ * collects its words in a list that each then walks) and builds a list of the
+ * words that match each. This filter instead segments the text once, tests
+ * each word with the word filters of all text filters that are not decided
+ * yet, and only counts the matches. A text filter is decided once the count
+ * reaches its requirements, or once it can not reach them even if all
+ * remaining words match. The test stops as soon as one text filter rejects the
+ * text or all accept it, and thus returns the same as testing the text filters
+ * one after another.
+ * </p><p>
+ * The requirements and word filters are read from the text filters at each
+ * test, so changes to them take effect immediately.
+ * </p>
+ */
+public class CombinedTextFilter implements BiPredicate<String, Locale> {
+
+  private final List<TextFilter> textFilters;
+
+  /**
+   * Creates a new filter that accepts texts that all given text filters accept.
+   */
+  public CombinedTextFilter(final TextFilter... textFilters) {
+    this(Arrays.asList(textFilters));
+  }
+
+  /**
+   * Creates a new filter that accepts texts that all given text filters accept.
+   */
+  public CombinedTextFilter(final List<TextFilter> textFilters) {
+    for (final TextFilter textFilter : textFilters) {
+      if (textFilter == null) { throw new NullPointerException(); }
+    }
+    this.textFilters =
+        Collections.unmodifiableList(new ArrayList<>(textFilters));
+  }
+
+  /**
+   * Gets the text filters that must all accept a text.
+   */
+  public List<TextFilter> getTextFilters() {
+    return this.textFilters;
+  }
+
+  /**
+   * Tests whether all text filters accept the text of given language.
+   * @see TextFilter#test(String, Locale)
+   */
+  @Override
+  public boolean test(final String text, final Locale language) {
+    if (language == null) { throw new NullPointerException(); }
+    final int numFilters = this.textFilters.size();
+    final List<Predicate<String>> predicates = new ArrayList<>(numFilters);
+    for (final TextFilter textFilter : this.textFilters) {
+      predicates.add(textFilter.getWordFilter().getPredicate(language));
+    }
+
+    final int[] bounds = CombinedTextFilter.toWordBounds(text, language);
+    final int numWords = bounds[0];
+
+    final int[] numRemaining = new int[numFilters];
+    final boolean[] accepted = new boolean[numFilters];
+    int numUndecided = numFilters;
+    for (int f = 0; f < numFilters; ++f) {
+      final TextFilter textFilter = this.textFilters.get(f);
+      if (!textFilter.test(numWords, numWords)) {
+        return false;
+      } else if (textFilter.test(0, numWords)) {
+        accepted[f] = true;
+        --numUndecided;
+      }
+    }
+
+    for (int w = 0; w < numWords && numUndecided > 0; ++w) {
+      final String word =
+          text.substring(bounds[2 * w + 1], bounds[2 * w + 2]);
+      final int numWordsAfter = numWords - w - 1;
+      for (int f = 0; f < numFilters; ++f) {
+        if (!accepted[f]) {
+          final TextFilter textFilter = this.textFilters.get(f);
+          if (predicates.get(f).test(word)) {
+            ++numRemaining[f];
+            if (textFilter.test(numRemaining[f], numWords)) {
+              accepted[f] = true;
+              --numUndecided;
+            }
+          } else if (!textFilter.test(
+              numRemaining[f] + numWordsAfter, numWords)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Segments the text into words like {@link WordFilter#toWords(String,
+   * Locale)}, but returns the number of words followed by the begin and end of
+   * each word instead of the words.
+   */
+  private static int[] toWordBounds(final String text, final Locale language) {
+    final BreakIterator segmenter = Segmenters.getWordInstance(language);
+    segmenter.setText(text);
+
+    int[] bounds = new int[33];
+    int numWords = 0;
+    int begin = segmenter.first();
+    int end = segmenter.next();
+    while (end != BreakIterator.DONE) {
+      // trimmed like String#trim()
+      int wordBegin = begin;
+      int wordEnd = end;
+      while (wordBegin < wordEnd && text.charAt(wordBegin) <= ' ') {
+        ++wordBegin;
+      }
+      while (wordEnd > wordBegin && text.charAt(wordEnd - 1) <= ' ') {
+        --wordEnd;
+      }
+      if (wordBegin < wordEnd) {
+        if (2 * numWords + 2 >= bounds.length) {
+          bounds = Arrays.copyOf(bounds, 2 * bounds.length + 1);
+        }
+        bounds[2 * numWords + 1] = wordBegin;
+        bounds[2 * numWords + 2] = wordEnd;
+        ++numWords;
+      }
+      begin = end;
+      end = segmenter.next();
+    }
+    bounds[0] = numWords;
+    return bounds;
+  }
+
+}
@@ -0,0 +1,105 @@
+package de.aitools.aq.text;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ibm.icu.text.BreakIterator;
+
+/**
+ * Cache of ICU segmenters ({@link BreakIterator}s) by type and language that
+ * gives each thread its own instances to reuse.
+ *
+ * <p>
+ * Segmenters are not thread-safe, and creating one for each text looks up the
+ * segmentation rules of the language and clones them every time. This class
+ * instead keeps one prototype per type and language, and clones it only once
+ * per thread. The returned segmenter belongs to the calling thread, and is
+ * returned again on the next call with the same type and language. A caller
+ * thus must be done with it before it gets the same segmenter again, and must
+ * not pass it to another thread.
+ * </p>
+ */
+public class Segmenters {
+
+  /**
+   * The type of segments that a segmenter finds.
+   */
+  public static enum Type {
+
+    /**
+     * Segments text into words (and the whitespace and punctuation between).
+     */
+    WORD,
+
+    /**
+     * Segments text into sentences.
+     */
+    SENTENCE
+
+  }
+
+  private static final Map<Type, ConcurrentMap<Locale, BreakIterator>>
+  PROTOTYPES = Segmenters.createPrototypeMaps();
+
+  private static final ThreadLocal<Map<Type, Map<Locale, BreakIterator>>>
+  INSTANCES = ThreadLocal.withInitial(() -> new EnumMap<>(Type.class));
+
+  private Segmenters() { }
+
+  /**
+   * Gets the word segmenter for given language of the calling thread.
+   */
+  public static BreakIterator getWordInstance(final Locale language) {
+    return Segmenters.getInstance(Type.WORD, language);
+  }
+
+  /**
+   * Gets the sentence segmenter for given language of the calling thread.
+   */
+  public static BreakIterator getSentenceInstance(final Locale language) {
+    return Segmenters.getInstance(Type.SENTENCE, language);
+  }
+
+  /**
+   * Gets the segmenter of given type for given language of the calling thread.
+   */
+  public static BreakIterator getInstance(
+      final Type type, final Locale language) {
+    if (type == null) { throw new NullPointerException(); }
+    if (language == null) { throw new NullPointerException(); }
+    return INSTANCES.get()
+        .computeIfAbsent(type, key -> new HashMap<>())
+        .computeIfAbsent(language,
+            key -> (BreakIterator) Segmenters.getPrototype(type, key).clone());
+  }
+
+  private static BreakIterator getPrototype(
+      final Type type, final Locale language) {
+    // prototypes are only cloned, never used, so they can be shared
+    return PROTOTYPES.get(type).computeIfAbsent(language, key -> {
+      switch (type) {
+      case WORD:
+        return BreakIterator.getWordInstance(key);
+      case SENTENCE:
+        return BreakIterator.getSentenceInstance(key);
+      default:
+        throw new IllegalArgumentException("Unknown type: " + type);
+      }
+    });
+  }
+
+  private static Map<Type, ConcurrentMap<Locale, BreakIterator>>
+  createPrototypeMaps() {
+    final Map<Type, ConcurrentMap<Locale, BreakIterator>> prototypes =
+        new EnumMap<>(Type.class);
+    for (final Type type : Type.values()) {
+      prototypes.put(type, new ConcurrentHashMap<>());
+    }
+    return prototypes;
+  }
+
+}
@@ -1,6 +1,7 @@
 package de.aitools.aq.text;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
@@ -21,6 +22,15 @@ public class StopWordFilter extends WordFilter {
   
   protected static final Set<String> NO_LIST_AVAILABLE = null;
 
+  private static final Map<Locale, String[]> DEFAULT_STOP_WORD_LISTS =
+      new HashMap<>();
+
+  private static final Map<Locale, Set<String>> DEFAULT_STOP_WORD_SETS =
+      new HashMap<>();
+
+  private static final Map<Locale, Set<String>>
+  DEFAULT_LOWER_CASE_STOP_WORD_SETS = new HashMap<>();
+
   private final Map<Locale, StopWordPredicate> stopWordLists;
   
   private final boolean ignoreCase;
@@ -113,28 +123,88 @@ public class StopWordFilter extends WordFilter {
     } else {
       synchronized (this.stopWordLists) {
         if (!this.stopWordLists.containsKey(language)) {
-          try {
-            final String[] stopWords =
-                new StopWordList(language).getStopWordList();
-            this.addStopWords(language, stopWords);
-          } catch (final Error e) {
-            this.stopWordLists.put(language, null);
-          }
+          final Set<String> stopWords = this.getDefaultStopWordSet(language);
+          this.stopWordLists.put(language, stopWords == null
+              ? null : new StopWordPredicate(language, stopWords));
         }
       }
       return this.getPredicate(language);
     }
   }
 
+  /**
+   * Gets the stop words of the default list for the given language, or
+   * <tt>null</tt> if there is none. Each list is loaded only once and then
+   * shared by all filters (e.g., of extractors in different threads), so the
+   * returned array must not be changed.
+   */
+  protected static String[] getDefaultStopWords(final Locale language) {
+    synchronized (DEFAULT_STOP_WORD_LISTS) {
+      if (!DEFAULT_STOP_WORD_LISTS.containsKey(language)) {
+        String[] stopWords = null;
+        try {
+          stopWords = new StopWordList(language).getStopWordList();
+        } catch (final Error e) {
+          // no list for this language
+        }
+        DEFAULT_STOP_WORD_LISTS.put(language, stopWords);
+      }
+      return DEFAULT_STOP_WORD_LISTS.get(language);
+    }
+  }
+
+  /**
+   * Gets the normalized stop words of the default list for the given language
+   * as used by this filter, or <tt>null</tt> if there is none. Like the lists,
+   * the sets are built only once (for filters that ignore case and for those
+   * that do not) and then shared by all filters, so they can not be changed.
+   */
+  private Set<String> getDefaultStopWordSet(final Locale language) {
+    final Map<Locale, Set<String>> stopWordSets = this.ignoreCase
+        ? DEFAULT_LOWER_CASE_STOP_WORD_SETS
+        : DEFAULT_STOP_WORD_SETS;
+    synchronized (stopWordSets) {
+      if (!stopWordSets.containsKey(language)) {
+        final String[] stopWords =
+            StopWordFilter.getDefaultStopWords(language);
+        Set<String> stopWordSet = null;
+        if (stopWords != null) {
+          final StopWordPredicate predicate = new StopWordPredicate(language);
+          predicate.addStopWords(stopWords);
+          stopWordSet = Collections.unmodifiableSet(predicate.stopWords);
+        }
+        stopWordSets.put(language, stopWordSet);
+      }
+      return stopWordSets.get(language);
+    }
+  }
+
   protected class StopWordPredicate implements Predicate<String> {
     
-    private final Set<String> stopWords;
+    private Set<String> stopWords;
+
+    // whether the stop words are shared and must be copied before adding
+    private boolean shared;
     
     private final Locale language;
     
     public StopWordPredicate(final Locale language) {
       if (language == null) { throw new NullPointerException(); }
       this.stopWords = new HashSet<>();
+      this.shared = false;
+      this.language = language;
+    }
+
+    /**
+     * Creates a predicate for the given normalized stop words, which are
+     * shared and thus copied before other stop words are added.
+     */
+    protected StopWordPredicate(
+        final Locale language, final Set<String> stopWords) {
+      if (language == null) { throw new NullPointerException(); }
+      if (stopWords == null) { throw new NullPointerException(); }
+      this.stopWords = stopWords;
+      this.shared = true;
       this.language = language;
     }
 
@@ -144,17 +214,26 @@ public class StopWordFilter extends WordFilter {
     }
     
     protected void addStopWords(final String[] words) {
+      this.unshare();
       for (final String word : words) {
         this.stopWords.add(this.normalize(word));
       }
     }
     
     protected void addStopWords(final Iterable<String> words) {
+      this.unshare();
       for (final String word : words) {
         this.stopWords.add(this.normalize(word));
       }
     }
     
+    private void unshare() {
+      if (this.shared) {
+        this.stopWords = new HashSet<>(this.stopWords);
+        this.shared = false;
+      }
+    }
+    
     protected String normalize(final String word) {
       if (StopWordFilter.this.ignoreCase) {
         return word.toLowerCase(this.language);
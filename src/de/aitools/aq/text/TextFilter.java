@@ -105,9 +105,19 @@ public class TextFilter implements BiPredicate<String, Locale> {
    * @see #getMinRatio()
    */
   public boolean test(final List<String> words, final Locale language) {
-    final int numWords = words.size();
-    final int numRemaining = this.wordFilter.filterWords(words, language).size();
-    
+    final int numRemaining = this.wordFilter.countWords(words, language);
+    return this.test(numRemaining, words.size());
+  }
+
+  /**
+   * Tests whether a text with given number of words, of which the word filter
+   * matches given number, fulfills the minimum ratio and minimum absolute count
+   * requirements of this filter. A text without words never does, as its ratio
+   * is undefined.
+   * @see #getMinAbsolute()
+   * @see #getMinRatio()
+   */
+  public boolean test(final int numRemaining, final int numWords) {
     final double ratio = ((double) numRemaining) / ((double) numWords);
     return numRemaining >= this.minAbsolute && ratio >= this.minRatio;
   }
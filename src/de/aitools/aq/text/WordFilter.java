@@ -56,10 +56,27 @@ public abstract class WordFilter implements BiPredicate<String, Locale> {
   }
 
   /**
-   * Segments the text into words, using a segmenter for the given language.
+   * Counts the words that pass the {@link #test(String, Locale)}, without
+   * collecting them like {@link #filterWords(List, Locale)}.
+   */
+  public int countWords(final List<String> words, final Locale language) {
+    if (language == null) { throw new NullPointerException(); }
+    final Predicate<String> predicate = this.getPredicate(language);
+    int numRemaining = 0;
+    for (final String word : words) {
+      if (predicate.test(word)) {
+        ++numRemaining;
+      }
+    }
+    return numRemaining;
+  }
+
+  /**
+   * Segments the text into words, using the word segmenter of the calling
+   * thread for the given language (see {@link Segmenters}).
    */
   public static List<String> toWords(final String text, final Locale language) {
-    final BreakIterator segmenter = BreakIterator.getWordInstance(language);
+    final BreakIterator segmenter = Segmenters.getWordInstance(language);
     segmenter.setText(text);
 
     final List<String> segments = new ArrayList<>();
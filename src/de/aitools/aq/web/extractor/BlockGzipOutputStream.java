@@ -0,0 +1,367 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream that compresses the data in independent gzip members (blocks)
+ * of about {@link #DEFAULT_BLOCK_SIZE} uncompressed bytes each, like the BGZF
+ * format.
+ *
+ * <p>
+ * The result is a valid multi-member gzip file that can be read with any gzip
+ * tool, but since each block can be decompressed on its own, it can also be
+ * split and processed in parallel. Blocks only end at record boundaries, which
+ * the writer marks by calling {@link #endRecord()}, so that no record is split
+ * between two blocks. A record that is larger than the block size thus results
+ * in a larger block.
+ * </p><p>
+ * Optionally, an index of the blocks is written to a separate stream (usually
+ * a hidden file next to the compressed file, see
+ * {@link #getIndexFileName(String)}).
+ * Like the {@link WarcIndex}, it is a text file with one line per block,
+ * containing the offset and length of the block in the compressed file, the
+ * offset and length of its data in the uncompressed file, and the number of
+ * records in it, separated by spaces.
+ * </p><p>
+ * If an executor is given, the blocks are compressed in its threads, and at
+ * most {@link #MAX_PENDING_BLOCKS_PER_THREAD} blocks per thread wait for their
+ * compression before {@link #endRecord()} blocks. The blocks are always
+ * written in order.
+ * </p>
+ */
+public class BlockGzipOutputStream extends OutputStream {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Default number of uncompressed bytes after which a block ends at the next
+   * record boundary.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+  /**
+   * Prefix that is prepended to the name of a compressed file to get the name
+   * of its index file, which hides the index file from Hadoop's input formats.
+   */
+  public static final String INDEX_FILE_PREFIX = ".";
+
+  /**
+   * Suffix that is appended to the name of a compressed file to get the name
+   * of its index file.
+   */
+  public static final String INDEX_FILE_SUFFIX = ".idx";
+
+  /**
+   * Maximum number of blocks per thread of the executor that may wait for
+   * their compression.
+   */
+  public static final int MAX_PENDING_BLOCKS_PER_THREAD = 2;
+
+  private static final byte[] GZIP_HEADER = {
+    0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xFF
+  };
+
+  private static final int GZIP_TRAILER_LENGTH = 8;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final OutputStream output;
+
+  private final Writer indexOutput;
+
+  private final ExecutorService executor;
+
+  private final int maxPendingBlocks;
+
+  private final int blockSize;
+
+  private final Deque<Future<Block>> pendingBlocks;
+
+  private byte[] buffer;
+
+  private int length;
+
+  private int numRecordsInBuffer;
+
+  private long compressedOffset;
+
+  private long uncompressedOffset;
+
+  private boolean closed;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new stream that compresses in the calling thread.
+   * @param output The stream to write the compressed data to
+   * @param indexOutput The stream to write the index to, or <tt>null</tt>
+   */
+  public BlockGzipOutputStream(
+      final OutputStream output, final OutputStream indexOutput) {
+    this(output, indexOutput, null, 1);
+  }
+
+  /**
+   * Creates a new stream.
+   * @param output The stream to write the compressed data to
+   * @param indexOutput The stream to write the index to, or <tt>null</tt>
+   * @param executor The executor to compress the blocks in, or <tt>null</tt>
+   * to compress them in the calling thread
+   * @param numThreads The number of threads of the executor
+   */
+  public BlockGzipOutputStream(
+      final OutputStream output, final OutputStream indexOutput,
+      final ExecutorService executor, final int numThreads) {
+    if (output == null) { throw new NullPointerException(); }
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of threads: " + numThreads);
+    }
+    this.output = output;
+    this.indexOutput = indexOutput == null
+        ? null
+        : new OutputStreamWriter(indexOutput, StandardCharsets.UTF_8);
+    this.executor = executor;
+    this.maxPendingBlocks = numThreads * MAX_PENDING_BLOCKS_PER_THREAD;
+    this.blockSize = DEFAULT_BLOCK_SIZE;
+    this.pendingBlocks = new ArrayDeque<>();
+    this.buffer = new byte[this.blockSize];
+    this.length = 0;
+    this.numRecordsInBuffer = 0;
+    this.compressedOffset = 0;
+    this.uncompressedOffset = 0;
+    this.closed = false;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the name of the index file for the compressed file of given name. As
+   * it starts with {@link #INDEX_FILE_PREFIX}, the index file is not taken as
+   * input when its directory is the input of a Hadoop job.
+   */
+  public static String getIndexFileName(final String fileName) {
+    return INDEX_FILE_PREFIX + fileName + INDEX_FILE_SUFFIX;
+  }
+
+  /**
+   * Gets the name of the compressed file for the index file of given name, or
+   * <tt>null</tt> if it is not the name of an index file.
+   * @see #getIndexFileName(String)
+   */
+  public static String getIndexedFileName(final String indexFileName) {
+    if (indexFileName.startsWith(INDEX_FILE_PREFIX)
+        && indexFileName.endsWith(INDEX_FILE_SUFFIX)
+        && indexFileName.length()
+          > INDEX_FILE_PREFIX.length() + INDEX_FILE_SUFFIX.length()) {
+      return indexFileName.substring(INDEX_FILE_PREFIX.length(),
+          indexFileName.length() - INDEX_FILE_SUFFIX.length());
+    }
+    return null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public void write(final int b) throws IOException {
+    this.ensureCapacity(1);
+    this.buffer[this.length++] = (byte) b;
+  }
+
+  @Override
+  public void write(final byte[] bytes, final int offset, final int length)
+  throws IOException {
+    this.ensureCapacity(length);
+    System.arraycopy(bytes, offset, this.buffer, this.length, length);
+    this.length += length;
+  }
+
+  /**
+   * Marks the end of a record, which ends the current block if it has reached
+   * the block size.
+   */
+  public void endRecord() throws IOException {
+    ++this.numRecordsInBuffer;
+    if (this.length >= this.blockSize) {
+      this.endBlock();
+    }
+  }
+
+  /**
+   * Writes the blocks that are compressed already, but does not end the
+   * current block, as it may only end at a record boundary.
+   */
+  @Override
+  public void flush() throws IOException {
+    while (!this.pendingBlocks.isEmpty()
+        && this.pendingBlocks.peekFirst().isDone()) {
+      this.writeBlock(this.pendingBlocks.pollFirst());
+    }
+    this.output.flush();
+  }
+
+  /**
+   * Ends the current block, writes all blocks and the index, and closes the
+   * streams.
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) { return; }
+    this.closed = true;
+    try {
+      if (this.length > 0) { this.endBlock(); }
+      while (!this.pendingBlocks.isEmpty()) {
+        this.writeBlock(this.pendingBlocks.pollFirst());
+      }
+    } finally {
+      this.output.close();
+      if (this.indexOutput != null) { this.indexOutput.close(); }
+    }
+  }
+
+  private void ensureCapacity(final int length) throws IOException {
+    if (this.closed) { throw new IOException("Stream closed"); }
+    final long required = (long) this.length + length;
+    if (required > this.buffer.length) {
+      if (required > Integer.MAX_VALUE - GZIP_HEADER.length) {
+        throw new IOException("Record too large");
+      }
+      this.buffer = Arrays.copyOf(this.buffer,
+          (int) Math.min(Integer.MAX_VALUE - GZIP_HEADER.length,
+              Math.max(required, 2L * this.buffer.length)));
+    }
+  }
+
+  private void endBlock() throws IOException {
+    final Block block = new Block(
+        this.buffer, this.length, this.numRecordsInBuffer);
+    final FutureTask<Block> task = new FutureTask<>(block::compress, block);
+    if (this.executor == null) {
+      task.run();
+    } else {
+      this.executor.execute(task);
+    }
+    this.pendingBlocks.addLast(task);
+    this.buffer = new byte[this.blockSize];
+    this.length = 0;
+    this.numRecordsInBuffer = 0;
+
+    while (this.pendingBlocks.size() > this.maxPendingBlocks
+        || (!this.pendingBlocks.isEmpty()
+            && this.pendingBlocks.peekFirst().isDone())) {
+      this.writeBlock(this.pendingBlocks.pollFirst());
+    }
+  }
+
+  private void writeBlock(final Future<Block> pendingBlock)
+  throws IOException {
+    final Block block;
+    try {
+      block = pendingBlock.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (final ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+    this.output.write(block.compressed, 0, block.compressedLength);
+    if (this.indexOutput != null) {
+      this.indexOutput.write(this.compressedOffset + " "
+          + block.compressedLength + " " + this.uncompressedOffset + " "
+          + block.length + " " + block.numRecords + "\n");
+    }
+    this.compressedOffset += block.compressedLength;
+    this.uncompressedOffset += block.length;
+  }
+
+  /**
+   * A block that is compressed into a gzip member of its own.
+   */
+  private static class Block {
+
+    private final byte[] data;
+
+    private final int length;
+
+    private final int numRecords;
+
+    private byte[] compressed;
+
+    private int compressedLength;
+
+    private Block(final byte[] data, final int length, final int numRecords) {
+      this.data = data;
+      this.length = length;
+      this.numRecords = numRecords;
+      this.compressed = null;
+      this.compressedLength = 0;
+    }
+
+    private void compress() {
+      final Deflater deflater =
+          new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      try {
+        deflater.setInput(this.data, 0, this.length);
+        deflater.finish();
+        // deflate may expand incompressible data a little
+        this.compressed = new byte[GZIP_HEADER.length + this.length
+            + this.length / 1000 + 64 + GZIP_TRAILER_LENGTH];
+        System.arraycopy(
+            GZIP_HEADER, 0, this.compressed, 0, GZIP_HEADER.length);
+        int position = GZIP_HEADER.length;
+        while (!deflater.finished()) {
+          if (position == this.compressed.length - GZIP_TRAILER_LENGTH) {
+            this.compressed = Arrays.copyOf(
+                this.compressed, this.compressed.length * 2);
+          }
+          position += deflater.deflate(this.compressed, position,
+              this.compressed.length - GZIP_TRAILER_LENGTH - position);
+        }
+
+        final CRC32 checksum = new CRC32();
+        checksum.update(this.data, 0, this.length);
+        Block.writeIntLittleEndian(
+            this.compressed, position, (int) checksum.getValue());
+        Block.writeIntLittleEndian(
+            this.compressed, position + 4, this.length);
+        this.compressedLength = position + GZIP_TRAILER_LENGTH;
+      } finally {
+        deflater.end();
+      }
+    }
+
+    private static void writeIntLittleEndian(
+        final byte[] bytes, final int offset, final int value) {
+      bytes[offset] = (byte) value;
+      bytes[offset + 1] = (byte) (value >>> 8);
+      bytes[offset + 2] = (byte) (value >>> 16);
+      bytes[offset + 3] = (byte) (value >>> 24);
+    }
+
+  }
+
+}
@@ -0,0 +1,157 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import edu.cmu.lemurproject.WritableWarcRecord;
+
+/**
+ * Hadoop input format that packs many small WARC and HTML files into one split,
+ * so that the start-up cost of a mapper (like configuring the extractor) is
+ * paid once per split rather than once per file.
+ *
+ * <p>
+ * The splits are formed by <tt>CombineFileInputFormat</tt>: blocks are grouped
+ * by node first and by rack second, up to the maximum split size (set via
+ * {@link #setMaxInputSplitSize(org.apache.hadoop.mapreduce.Job, long)}).
+ * Large files are split like by {@link WarcInputFormat}, and each file (part)
+ * of a split is read like by {@link WarcInputFormat}. Files that fit into one
+ * block and one split are not split anyway, so they are not checked whether
+ * they could be, which for compressed files means inflating the start of the
+ * file on the job client.
+ * </p>
+ */
+public class CombineWarcInputFormat
+extends CombineFileInputFormat<LongWritable, WritableWarcRecord> {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final WarcInputFormat warcInputFormat;
+
+  // the status of the input files by path, as listed for the splits
+  private final Map<Path, FileStatus> statuses;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new input format.
+   */
+  public CombineWarcInputFormat() {
+    this.warcInputFormat = new WarcInputFormat();
+    this.statuses = new HashMap<>();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public RecordReader<LongWritable, WritableWarcRecord> createRecordReader(
+      final InputSplit split, final TaskAttemptContext context)
+  throws IOException {
+    return new CombineFileRecordReader<>(
+        (CombineFileSplit) split, context, FileWarcRecordReader.class);
+  }
+
+  @Override
+  protected List<FileStatus> listStatus(final JobContext context)
+  throws IOException {
+    final List<FileStatus> files = super.listStatus(context);
+    this.statuses.clear();
+    for (final FileStatus file : files) {
+      this.statuses.put(file.getPath(), file);
+    }
+    return files;
+  }
+
+  @Override
+  protected boolean isSplitable(final JobContext context, final Path file) {
+    final FileStatus status = this.statuses.get(file);
+    if (status != null) {
+      long maxSplitSize = CombineWarcInputFormat.getMaxSplitSize(context);
+      if (maxSplitSize <= 0) { maxSplitSize = Long.MAX_VALUE; } // no limit
+      final long length = status.getLen();
+      if (length <= status.getBlockSize() && length <= maxSplitSize) {
+        // would be one part anyway
+        return false;
+      }
+    }
+    return this.warcInputFormat.isSplitable(context, file);
+  }
+
+  /**
+   * Reader for the records of one file (part) of a combined split.
+   */
+  public static class FileWarcRecordReader
+  extends RecordReader<LongWritable, WritableWarcRecord> {
+
+    private final FileSplit split;
+
+    private final WarcInputFormat.WarcRecordReader reader;
+
+    /**
+     * Creates a new reader for the file (part) with given index in the split,
+     * as required by <tt>CombineFileRecordReader</tt>.
+     */
+    public FileWarcRecordReader(final CombineFileSplit split,
+        final TaskAttemptContext context, final Integer index)
+    throws IOException {
+      this.split = new FileSplit(split.getPath(index),
+          split.getOffset(index), split.getLength(index),
+          split.getLocations());
+      this.reader = new WarcInputFormat.WarcRecordReader();
+    }
+
+    @Override
+    public void initialize(
+        final InputSplit split, final TaskAttemptContext context)
+    throws IOException {
+      this.reader.initialize(this.split, context);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      return this.reader.nextKeyValue();
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+      return this.reader.getCurrentKey();
+    }
+
+    @Override
+    public WritableWarcRecord getCurrentValue() {
+      return this.reader.getCurrentValue();
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      return this.reader.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.reader.close();
+    }
+
+  }
+
+}
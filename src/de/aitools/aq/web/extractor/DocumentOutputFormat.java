@@ -0,0 +1,138 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Hadoop output format that writes the bytes of each value as they are, without
+ * separators, to an own (optionally compressed) file per task.
+ *
+ * <p>
+ * The values are documents that were already written in the output format by
+ * a {@link DocumentWriter}, so that the output of Hadoop is the same as the
+ * one of the {@link LocalHtmlSentenceExtractionTool}. As each document is one
+ * value, the documents written by several threads of a mapper are not
+ * interleaved.
+ * </p><p>
+ * If block gzip output is enabled (see
+ * {@link #setBlockGzipOutput(Job, boolean)}), the files are written by a
+ * {@link BlockGzipOutputStream} instead of a compression codec, with each
+ * value being one record, and each file gets an index file next to it.
+ * </p>
+ */
+public class DocumentOutputFormat
+extends FileOutputFormat<NullWritable, BytesWritable> {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Name of the configuration parameter that enables block gzip output.
+   */
+  public static final String PARAM_BLOCK_GZIP_OUTPUT =
+      "de.aitools.aq.web.extractor.output.blockgzip";
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets whether the output files are written as blocks of gzip (see
+   * {@link BlockGzipOutputStream}) instead of using the compression of the
+   * {@link FileOutputFormat}.
+   */
+  public static void setBlockGzipOutput(
+      final Job job, final boolean blockGzipOutput) {
+    job.getConfiguration().setBoolean(
+        PARAM_BLOCK_GZIP_OUTPUT, blockGzipOutput);
+  }
+
+  /**
+   * Gets whether the output files are written as blocks of gzip.
+   */
+  public static boolean getBlockGzipOutput(final JobContext job) {
+    return job.getConfiguration().getBoolean(PARAM_BLOCK_GZIP_OUTPUT, false);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public RecordWriter<NullWritable, BytesWritable> getRecordWriter(
+      final TaskAttemptContext context)
+  throws IOException {
+    final Configuration configuration = context.getConfiguration();
+    if (DocumentOutputFormat.getBlockGzipOutput(context)) {
+      final Path file = this.getDefaultWorkFile(context, ".gz");
+      final Path indexFile = new Path(file.getParent(),
+          BlockGzipOutputStream.getIndexFileName(file.getName()));
+      final FileSystem fileSystem = file.getFileSystem(configuration);
+      return new BytesRecordWriter(new BlockGzipOutputStream(
+          fileSystem.create(file, false), fileSystem.create(indexFile, false)));
+    }
+
+    CompressionCodec codec = null;
+    String extension = "";
+    if (FileOutputFormat.getCompressOutput(context)) {
+      final Class<? extends CompressionCodec> codecClass =
+          FileOutputFormat.getOutputCompressorClass(context, GzipCodec.class);
+      codec = ReflectionUtils.newInstance(codecClass, configuration);
+      extension = codec.getDefaultExtension();
+    }
+    final Path file = this.getDefaultWorkFile(context, extension);
+    final OutputStream output =
+        file.getFileSystem(configuration).create(file, false);
+    if (codec == null) {
+      return new BytesRecordWriter(output);
+    } else {
+      return new BytesRecordWriter(codec.createOutputStream(output));
+    }
+  }
+
+  /**
+   * Writer for the bytes of the values.
+   */
+  private static class BytesRecordWriter
+  extends RecordWriter<NullWritable, BytesWritable> {
+
+    private final OutputStream output;
+
+    private BytesRecordWriter(final OutputStream output) {
+      this.output = output;
+    }
+
+    @Override
+    public synchronized void write(
+        final NullWritable key, final BytesWritable value)
+    throws IOException {
+      this.output.write(value.getBytes(), 0, value.getLength());
+      if (this.output instanceof BlockGzipOutputStream) {
+        ((BlockGzipOutputStream) this.output).endRecord();
+      }
+    }
+
+    @Override
+    public synchronized void close(final TaskAttemptContext context)
+    throws IOException {
+      this.output.close();
+    }
+
+  }
+
+}
@@ -0,0 +1,436 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes extracted documents to an output stream in one of several
+ * {@link Format}s.
+ *
+ * <p>
+ * Both the {@link LocalHtmlSentenceExtractionTool} and the
+ * {@link HadoopHtmlSentenceExtractionTool} write their output through a
+ * document writer, so both produce the same format. The writers stream the
+ * sentences to the output (in UTF-8) without building intermediate strings.
+ * Documents without sentences are not written.
+ * </p><p>
+ * The {@link Format#BINARY} format is a sequence of documents, each written
+ * as its length in bytes followed by:
+ * </p><ol>
+ * <li>the URI, TREC-ID, and source file (as strings);</li>
+ * <li>the offset of the record plus one (as varint, 0 if not known);</li>
+ * <li>the number of paragraphs (as varint); and</li>
+ * <li>for each paragraph, its language as IETF language tag (as string), the
+ * number of its sentences (as varint), and the sentences (as strings).</li>
+ * </ol><p>
+ * Varints are unsigned LEB128: seven bits per byte, least significant bits
+ * first, with the highest bit set in all but the last byte. Strings are
+ * written as their length in bytes plus one (as varint, 0 for <tt>null</tt>)
+ * followed by their UTF-8 bytes.
+ * </p>
+ */
+public abstract class DocumentWriter implements Closeable, Flushable {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The output formats.
+   */
+  public static enum Format {
+    /**
+     * One sentence per line. If names are written, the sentences of each
+     * document are preceded by two empty lines and a line with the URI,
+     * TREC-ID, and source file (if known), separated by spaces.
+     */
+    LINES,
+    /**
+     * One JSON object per line and document, with the fields <tt>uri</tt>,
+     * <tt>trec_id</tt>, <tt>source_file</tt>, <tt>offset</tt>,
+     * <tt>language</tt> (the language of most sentences), and
+     * <tt>paragraphs</tt> (a list of objects with the fields
+     * <tt>language</tt> and <tt>sentences</tt>).
+     */
+    JSONL,
+    /**
+     * Length-prefixed binary records, see {@link DocumentWriter}.
+     */
+    BINARY;
+
+    /**
+     * Checks whether this format stores the paragraphs and their languages.
+     * If not, the extractors put all sentences in a single paragraph (see
+     * {@link HtmlSentenceExtractor#extractSentences(CharSequence)}).
+     */
+    public boolean hasParagraphs() {
+      return this != LINES;
+    }
+
+    /**
+     * Gets the format of given name (ignoring case).
+     * @throws IllegalArgumentException If there is no such format
+     */
+    public static Format parse(final String name) {
+      try {
+        return Format.valueOf(name.toUpperCase(Locale.ROOT));
+      } catch (final IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown output format: " + name);
+      }
+    }
+  }
+
+  /**
+   * The default output format.
+   */
+  public static final Format DEFAULT_FORMAT = Format.LINES;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new writer for given format. Closing the writer closes the
+   * output stream.
+   * @param format The output format
+   * @param output The stream to write to
+   * @param writeNames Whether to write the URI, TREC-ID, and source file of
+   * each document in the {@link Format#LINES} format (the other formats always
+   * contain them)
+   */
+  public static DocumentWriter create(final Format format,
+      final OutputStream output, final boolean writeNames) {
+    if (output == null) { throw new NullPointerException(); }
+    switch (format) {
+    case LINES:
+      return new LinesWriter(output, writeNames);
+    case JSONL:
+      return new JsonLinesWriter(output);
+    case BINARY:
+      return new BinaryWriter(output);
+    default:
+      throw new IllegalArgumentException("Unknown output format: " + format);
+    }
+  }
+
+  /**
+   * Writes given document, unless it has no sentences.
+   */
+  public abstract void write(final ExtractedDocument document)
+  throws IOException;
+
+  private static Writer newWriter(final OutputStream output) {
+    return new BufferedWriter(
+        new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+  }
+
+  /**
+   * Writer for the {@link Format#LINES} format.
+   */
+  private static class LinesWriter extends DocumentWriter {
+
+    private final Writer writer;
+
+    private final boolean writeNames;
+
+    private LinesWriter(final OutputStream output, final boolean writeNames) {
+      this.writer = DocumentWriter.newWriter(output);
+      this.writeNames = writeNames;
+    }
+
+    @Override
+    public void write(final ExtractedDocument document) throws IOException {
+      if (document.getNumSentences() == 0) { return; }
+      if (this.writeNames) {
+        this.writer.write("\n\n");
+        if (document.getUri() != null) {
+          this.writer.write(document.getUri());
+        }
+        this.writer.write(' ');
+        if (document.getTrecId() != null) {
+          this.writer.write(document.getTrecId());
+        }
+        if (document.getSourceFile() != null) {
+          this.writer.write(' ');
+          this.writer.write(document.getSourceFile());
+        }
+        this.writer.write('\n');
+      }
+      for (final Paragraph paragraph : document.getParagraphs()) {
+        for (final String sentence : paragraph.getSentences()) {
+          this.writer.write(String.valueOf(sentence));
+          this.writer.write('\n');
+        }
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      this.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.writer.close();
+    }
+
+  }
+
+  /**
+   * Writer for the {@link Format#JSONL} format.
+   */
+  private static class JsonLinesWriter extends DocumentWriter {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Writer writer;
+
+    private JsonLinesWriter(final OutputStream output) {
+      this.writer = DocumentWriter.newWriter(output);
+    }
+
+    @Override
+    public void write(final ExtractedDocument document) throws IOException {
+      if (document.getNumSentences() == 0) { return; }
+      this.writer.write("{\"uri\":");
+      this.writeString(document.getUri());
+      this.writer.write(",\"trec_id\":");
+      this.writeString(document.getTrecId());
+      this.writer.write(",\"source_file\":");
+      this.writeString(document.getSourceFile());
+      this.writer.write(",\"offset\":");
+      if (document.getOffset() == ExtractedDocument.NO_OFFSET) {
+        this.writer.write("null");
+      } else {
+        this.writer.write(Long.toString(document.getOffset()));
+      }
+      this.writer.write(",\"language\":");
+      this.writeLanguage(document.getLanguage());
+      this.writer.write(",\"paragraphs\":[");
+      boolean firstParagraph = true;
+      for (final Paragraph paragraph : document.getParagraphs()) {
+        if (!firstParagraph) { this.writer.write(','); }
+        firstParagraph = false;
+        this.writer.write("{\"language\":");
+        this.writeLanguage(paragraph.getLanguage());
+        this.writer.write(",\"sentences\":[");
+        boolean firstSentence = true;
+        for (final String sentence : paragraph.getSentences()) {
+          if (!firstSentence) { this.writer.write(','); }
+          firstSentence = false;
+          this.writeString(sentence);
+        }
+        this.writer.write("]}");
+      }
+      this.writer.write("]}\n");
+    }
+
+    private void writeLanguage(final Locale language) throws IOException {
+      this.writeString(language == null ? null : language.toLanguageTag());
+    }
+
+    /**
+     * Writes given string as JSON string, writing the runs of characters that
+     * need no escaping directly from the string.
+     */
+    private void writeString(final String string) throws IOException {
+      if (string == null) {
+        this.writer.write("null");
+        return;
+      }
+      this.writer.write('"');
+      int runStart = 0;
+      for (int c = 0; c < string.length(); ++c) {
+        final char character = string.charAt(c);
+        if (character < 0x20 || character == '"' || character == '\\') {
+          this.writer.write(string, runStart, c - runStart);
+          runStart = c + 1;
+          this.writer.write('\\');
+          switch (character) {
+          case '"': this.writer.write('"'); break;
+          case '\\': this.writer.write('\\'); break;
+          case '\n': this.writer.write('n'); break;
+          case '\r': this.writer.write('r'); break;
+          case '\t': this.writer.write('t'); break;
+          case '\b': this.writer.write('b'); break;
+          case '\f': this.writer.write('f'); break;
+          default:
+            this.writer.write("u00");
+            this.writer.write(HEX_DIGITS[character >> 4]);
+            this.writer.write(HEX_DIGITS[character & 0xF]);
+            break;
+          }
+        }
+      }
+      this.writer.write(string, runStart, string.length() - runStart);
+      this.writer.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+      this.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.writer.close();
+    }
+
+  }
+
+  /**
+   * Writer for the {@link Format#BINARY} format, which encodes each document
+   * into a reused buffer to know its length before writing it.
+   */
+  private static class BinaryWriter extends DocumentWriter {
+
+    private static final int INITIAL_BUFFER_SIZE = 1 << 12;
+
+    private static final int MAX_VARINT_LENGTH = 10;
+
+    private final OutputStream output;
+
+    private byte[] buffer;
+
+    private int length;
+
+    private BinaryWriter(final OutputStream output) {
+      this.output = new BufferedOutputStream(output, BUFFER_SIZE);
+      this.buffer = new byte[INITIAL_BUFFER_SIZE];
+      this.length = 0;
+    }
+
+    @Override
+    public void write(final ExtractedDocument document) throws IOException {
+      if (document.getNumSentences() == 0) { return; }
+      this.length = 0;
+      this.writeString(document.getUri());
+      this.writeString(document.getTrecId());
+      this.writeString(document.getSourceFile());
+      this.writeVarint(document.getOffset() + 1);
+      final List<Paragraph> paragraphs = document.getParagraphs();
+      this.writeVarint(paragraphs.size());
+      for (final Paragraph paragraph : paragraphs) {
+        final Locale language = paragraph.getLanguage();
+        this.writeString(language == null ? null : language.toLanguageTag());
+        final List<String> sentences = paragraph.getSentences();
+        this.writeVarint(sentences.size());
+        for (final String sentence : sentences) {
+          this.writeString(sentence);
+        }
+      }
+
+      // encode the length behind the document, but write it before it
+      final int documentLength = this.length;
+      this.writeVarint(documentLength);
+      this.output.write(this.buffer, documentLength,
+          this.length - documentLength);
+      this.output.write(this.buffer, 0, documentLength);
+    }
+
+    private void writeVarint(final long value) {
+      this.ensureCapacity(MAX_VARINT_LENGTH);
+      long remaining = value;
+      while ((remaining & ~0x7FL) != 0) {
+        this.buffer[this.length++] = (byte) ((remaining & 0x7F) | 0x80);
+        remaining >>>= 7;
+      }
+      this.buffer[this.length++] = (byte) remaining;
+    }
+
+    /**
+     * Writes the length and UTF-8 bytes of given string, encoding unpaired
+     * surrogates as <tt>?</tt> like {@link String#getBytes(
+     * java.nio.charset.Charset)}.
+     */
+    private void writeString(final String string) {
+      if (string == null) {
+        this.writeVarint(0);
+        return;
+      }
+      final int numChars = string.length();
+      int numBytes = 0;
+      for (int c = 0; c < numChars; ++c) {
+        final char character = string.charAt(c);
+        if (character < 0x80) {
+          numBytes += 1;
+        } else if (character < 0x800) {
+          numBytes += 2;
+        } else if (Character.isHighSurrogate(character) && c + 1 < numChars
+            && Character.isLowSurrogate(string.charAt(c + 1))) {
+          numBytes += 4;
+          ++c;
+        } else if (Character.isSurrogate(character)) {
+          numBytes += 1;
+        } else {
+          numBytes += 3;
+        }
+      }
+      this.writeVarint(numBytes + 1L);
+
+      this.ensureCapacity(numBytes);
+      final byte[] buffer = this.buffer;
+      int b = this.length;
+      for (int c = 0; c < numChars; ++c) {
+        final char character = string.charAt(c);
+        if (character < 0x80) {
+          buffer[b++] = (byte) character;
+        } else if (character < 0x800) {
+          buffer[b++] = (byte) (0xC0 | (character >> 6));
+          buffer[b++] = (byte) (0x80 | (character & 0x3F));
+        } else if (Character.isHighSurrogate(character) && c + 1 < numChars
+            && Character.isLowSurrogate(string.charAt(c + 1))) {
+          final int codePoint =
+              Character.toCodePoint(character, string.charAt(++c));
+          buffer[b++] = (byte) (0xF0 | (codePoint >> 18));
+          buffer[b++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          buffer[b++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          buffer[b++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(character)) {
+          buffer[b++] = '?';
+        } else {
+          buffer[b++] = (byte) (0xE0 | (character >> 12));
+          buffer[b++] = (byte) (0x80 | ((character >> 6) & 0x3F));
+          buffer[b++] = (byte) (0x80 | (character & 0x3F));
+        }
+      }
+      this.length = b;
+    }
+
+    private void ensureCapacity(final int numBytes) {
+      final long required = (long) this.length + numBytes;
+      if (required > this.buffer.length) {
+        if (required > Integer.MAX_VALUE - MAX_VARINT_LENGTH) {
+          throw new IllegalArgumentException("Document too large");
+        }
+        this.buffer = Arrays.copyOf(this.buffer,
+            (int) Math.min(Integer.MAX_VALUE - MAX_VARINT_LENGTH,
+                Math.max(required, 2L * this.buffer.length)));
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      this.output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.output.close();
+    }
+
+  }
+
+}
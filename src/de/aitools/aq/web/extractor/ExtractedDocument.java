@@ -0,0 +1,140 @@
+package de.aitools.aq.web.extractor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The paragraphs extracted from one web page, together with the metadata that
+ * identifies the page, as written by a {@link DocumentWriter}.
+ */
+public class ExtractedDocument {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Value to use as offset for web pages that are not read from a WARC file or
+   * whose offset is not known.
+   */
+  public static final long NO_OFFSET = -1;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final String uri;
+
+  private final String trecId;
+
+  private final String sourceFile;
+
+  private final long offset;
+
+  private final List<Paragraph> paragraphs;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new document.
+   * @param uri The URI of the web page, or <tt>null</tt>
+   * @param trecId The TREC-ID of the web page, or <tt>null</tt>
+   * @param sourceFile The name of the file the web page was read from, or
+   * <tt>null</tt>
+   * @param offset The offset of the WARC record of the web page in the source
+   * file, or {@link #NO_OFFSET}
+   * @param paragraphs The paragraphs extracted from the web page
+   */
+  public ExtractedDocument(final String uri, final String trecId,
+      final String sourceFile, final long offset,
+      final List<Paragraph> paragraphs) {
+    if (paragraphs == null) { throw new NullPointerException(); }
+    if (offset < 0 && offset != NO_OFFSET) {
+      throw new IllegalArgumentException("Negative offset: " + offset);
+    }
+    this.uri = uri;
+    this.trecId = trecId;
+    this.sourceFile = sourceFile;
+    this.offset = offset;
+    this.paragraphs = Collections.unmodifiableList(paragraphs);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the URI of the web page, or <tt>null</tt>.
+   */
+  public String getUri() {
+    return this.uri;
+  }
+
+  /**
+   * Gets the TREC-ID of the web page, or <tt>null</tt>.
+   */
+  public String getTrecId() {
+    return this.trecId;
+  }
+
+  /**
+   * Gets the name of the file the web page was read from, or <tt>null</tt>.
+   */
+  public String getSourceFile() {
+    return this.sourceFile;
+  }
+
+  /**
+   * Gets the offset of the WARC record of the web page in the source file, or
+   * {@link #NO_OFFSET}.
+   */
+  public long getOffset() {
+    return this.offset;
+  }
+
+  /**
+   * Gets the paragraphs extracted from the web page.
+   */
+  public List<Paragraph> getParagraphs() {
+    return this.paragraphs;
+  }
+
+  /**
+   * Gets the number of sentences in all paragraphs.
+   */
+  public int getNumSentences() {
+    int numSentences = 0;
+    for (final Paragraph paragraph : this.paragraphs) {
+      numSentences += paragraph.getSentences().size();
+    }
+    return numSentences;
+  }
+
+  /**
+   * Gets the language of the most sentences of the web page, or <tt>null</tt>
+   * if no paragraph has a known language.
+   */
+  public Locale getLanguage() {
+    final Map<Locale, Integer> numSentences = new HashMap<>();
+    Locale language = null;
+    int maxNumSentences = -1;
+    for (final Paragraph paragraph : this.paragraphs) {
+      final Locale paragraphLanguage = paragraph.getLanguage();
+      if (paragraphLanguage != null) {
+        final int languageNumSentences = numSentences.merge(paragraphLanguage,
+            paragraph.getSentences().size(), Integer::sum);
+        if (languageNumSentences > maxNumSentences) {
+          language = paragraphLanguage;
+          maxNumSentences = languageNumSentences;
+        }
+      }
+    }
+    return language;
+  }
+
+}
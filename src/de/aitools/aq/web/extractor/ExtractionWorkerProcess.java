@@ -0,0 +1,504 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+
+import net.htmlparser.jericho.Config;
+import net.htmlparser.jericho.LoggerProvider;
+
+/**
+ * An {@link HtmlSentenceExtractor} running in a separate Java process.
+ *
+ * <p>
+ * Some web pages make the extraction libraries recurse very deeply or allocate
+ * very much memory. Running the extractor in a child process contains the
+ * resulting {@link StackOverflowError}s and {@link OutOfMemoryError}s, as well
+ * as extractions that never stop: the child process is killed and a new one is
+ * started, and only the documents that caused the problem fail.
+ * </p><p>
+ * The parent sends documents in batches through the standard input of the
+ * child process and reads the results from its standard output, one per
+ * document, using a compact length-prefixed binary framing:
+ * </p><ul>
+ * <li>Batch: <tt>int</tt> number of documents (0 to shut down), then for each
+ * document an <tt>int</tt> length and the UTF-8 bytes of the HTML.</li>
+ * <li>Result: a status byte, then for {@link #STATUS_OK} an <tt>int</tt>
+ * number of paragraphs and for each its language tag, an <tt>int</tt> number
+ * of sentences, and the sentences, or for other status the error message.
+ * Each string is written as an <tt>int</tt> length (-1 for <tt>null</tt>) and
+ * its UTF-8 bytes.</li>
+ * </ul><p>
+ * The child process uses the same command line arguments as the parent, so it
+ * applies the same timeout and extracts the paragraphs only if the output
+ * format needs them (see
+ * {@link HtmlSentenceExtractor#extractSentences(CharSequence,
+ * DocumentWriter.Format)}). Additionally, the parent kills the child process if
+ * the result for a document does not arrive within the timeout plus
+ * {@link #TIMEOUT_GRACE_IN_SECONDS}. Since the extraction libraries do not stop
+ * on timeouts, a child that reported a timeout is also restarted to free the
+ * thread that is still running in it.
+ * </p>
+ */
+public class ExtractionWorkerProcess implements AutoCloseable {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final Logger LOGGER =
+      Logger.getLogger(ExtractionWorkerProcess.class.getName());
+
+  /**
+   * Status of a result for which the extraction succeeded.
+   */
+  public static final byte STATUS_OK = 0;
+
+  /**
+   * Status of a result for which the extraction failed.
+   */
+  public static final byte STATUS_ERROR = 1;
+
+  /**
+   * Status of a result for which the extraction timed out.
+   */
+  public static final byte STATUS_TIMEOUT = 2;
+
+  /**
+   * Status of a result for which the extraction crashed the worker process.
+   */
+  public static final byte STATUS_CRASH = 3;
+
+  /**
+   * Default maximum heap size of a worker process.
+   */
+  public static final int DEFAULT_MEMORY_IN_MB = 1024;
+
+  /**
+   * Number of seconds a worker process is given in addition to the timeout of
+   * the extractor before it is killed.
+   */
+  public static final int TIMEOUT_GRACE_IN_SECONDS = 5;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static final long WATCHDOG_INTERVAL_IN_MILLIS = 100;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final List<String> command;
+
+  private final long timeoutInNanos;
+
+  private Process process;
+
+  private DataOutputStream toWorker;
+
+  private DataInputStream fromWorker;
+
+  private Thread watchdog;
+
+  private volatile long deadline;
+
+  private volatile boolean watched;
+
+  private volatile boolean killed;
+
+  private long numRestarts;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new worker for an extractor of given class that is configured
+   * using given command line arguments. The process is started on first use.
+   * @param extractorClass The class of the extractor
+   * @param args The command line arguments (without the mode)
+   * @param timeoutInSeconds The timeout of the extractor or
+   * {@link HtmlSentenceExtractor#NO_TIMEOUT}
+   * @param memoryInMb The maximum heap size of the worker process
+   */
+  public ExtractionWorkerProcess(
+      final Class<? extends HtmlSentenceExtractor> extractorClass,
+      final String[] args, final int timeoutInSeconds, final int memoryInMb) {
+    if (memoryInMb <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive memory budget: " + memoryInMb);
+    }
+    this.command = new ArrayList<>();
+    this.command.add(System.getProperty("java.home")
+        + File.separator + "bin" + File.separator + "java");
+    this.command.add("-Xmx" + memoryInMb + "m");
+    this.command.add("-cp");
+    this.command.add(System.getProperty("java.class.path"));
+    this.command.add(ExtractionWorkerProcess.class.getName());
+    this.command.add(extractorClass.getName());
+    this.command.addAll(Arrays.asList(args));
+
+    if (timeoutInSeconds == HtmlSentenceExtractor.NO_TIMEOUT) {
+      this.timeoutInNanos = -1;
+    } else {
+      this.timeoutInNanos = TimeUnit.SECONDS.toNanos(
+          timeoutInSeconds + TIMEOUT_GRACE_IN_SECONDS);
+    }
+    this.process = null;
+    this.deadline = 0;
+    this.watched = false;
+    this.killed = false;
+    this.numRestarts = 0;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of times the worker process was restarted after a crash or
+   * a timeout.
+   */
+  public long getNumRestarts() {
+    return this.numRestarts;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Extracts the sentences from each of the given HTML documents in the worker
+   * process.
+   * <p>
+   * If the worker process crashes or is killed because of a timeout, the
+   * document that was processed fails, and the remaining documents are sent to
+   * a newly started worker process.
+   * </p>
+   * @param htmlInputs The HTML documents
+   * @return For each document either its extracted paragraphs or an
+   * {@link ExecutionException} if the extraction failed (with a
+   * {@link TimeoutException} as cause if it timed out)
+   * @throws IOException If the worker process can not be started
+   */
+  public List<Object> extract(final List<String> htmlInputs)
+  throws IOException {
+    final List<Object> results = new ArrayList<>(htmlInputs.size());
+    while (results.size() < htmlInputs.size()) {
+      final List<String> remaining =
+          htmlInputs.subList(results.size(), htmlInputs.size());
+      this.start();
+      // send in parallel, as the results may fill the pipe buffer before all
+      // documents are sent
+      final DataOutputStream toWorker = this.toWorker;
+      final Thread sender = new Thread(
+          () -> ExtractionWorkerProcess.send(toWorker, remaining),
+          "worker-sender");
+      sender.setDaemon(true);
+      sender.start();
+      boolean restart = false;
+      for (int d = 0; d < remaining.size() && !restart; ++d) {
+        if (this.timeoutInNanos >= 0) {
+          this.deadline = System.nanoTime() + this.timeoutInNanos;
+          this.watched = true;
+        }
+        Object result;
+        try {
+          result = this.receive();
+          restart = result instanceof ExecutionException
+              && ((ExecutionException) result).getCause()
+                instanceof TimeoutException;
+        } catch (final IOException e) {
+          final String message = this.killed
+              ? "Worker process killed after timeout"
+              : "Worker process crashed: " + e.getMessage();
+          result = this.killed
+              ? new ExecutionException(new TimeoutException(message))
+              : new ExecutionException(new IOException(message, e));
+          restart = true;
+        } finally {
+          this.watched = false;
+        }
+        if (result instanceof CrashResult) {
+          result = ((CrashResult) result).exception;
+          restart = true;
+        }
+        results.add(result);
+      }
+      if (restart) {
+        this.stop();
+        ++this.numRestarts;
+      }
+      try {
+        sender.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.stop();
+        throw new IOException(e);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Shuts the worker process down.
+   */
+  @Override
+  public void close() {
+    if (this.process != null) {
+      try {
+        this.toWorker.writeInt(0);
+        this.toWorker.flush();
+        this.process.waitFor(TIMEOUT_GRACE_IN_SECONDS, TimeUnit.SECONDS);
+      } catch (final IOException e) {
+        // Already dead
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      this.stop();
+    }
+  }
+
+  private void start() throws IOException {
+    if (this.process == null) {
+      LOGGER.fine("Starting " + this.command);
+      this.killed = false;
+      this.process = new ProcessBuilder(this.command)
+          .redirectError(ProcessBuilder.Redirect.INHERIT)
+          .start();
+      this.toWorker = new DataOutputStream(new BufferedOutputStream(
+          this.process.getOutputStream(), BUFFER_SIZE));
+      this.fromWorker = new DataInputStream(new BufferedInputStream(
+          this.process.getInputStream(), BUFFER_SIZE));
+      final Process process = this.process;
+      this.watchdog = new Thread(() -> {
+        try {
+          while (process.isAlive()) {
+            if (this.watched && System.nanoTime() - this.deadline > 0) {
+              this.killed = true;
+              process.destroyForcibly();
+            }
+            Thread.sleep(WATCHDOG_INTERVAL_IN_MILLIS);
+          }
+        } catch (final InterruptedException e) {
+          // Stopped
+        }
+      }, "worker-watchdog");
+      this.watchdog.setDaemon(true);
+      this.watchdog.start();
+    }
+  }
+
+  private void stop() {
+    if (this.process != null) {
+      this.process.destroyForcibly();
+      this.watchdog.interrupt();
+      this.process = null;
+      this.toWorker = null;
+      this.fromWorker = null;
+      this.watchdog = null;
+    }
+  }
+
+  private static void send(
+      final DataOutputStream toWorker, final List<String> htmlInputs) {
+    try {
+      toWorker.writeInt(htmlInputs.size());
+      for (final String htmlInput : htmlInputs) {
+        ExtractionWorkerProcess.writeString(toWorker, htmlInput);
+      }
+      toWorker.flush();
+    } catch (final IOException e) {
+      // worker died, the error is reported when reading the result
+    }
+  }
+
+  private Object receive() throws IOException {
+    final byte status = this.fromWorker.readByte();
+    if (status == STATUS_OK) {
+      final int numParagraphs = this.fromWorker.readInt();
+      final List<Paragraph> paragraphs = new ArrayList<>(numParagraphs);
+      for (int p = 0; p < numParagraphs; ++p) {
+        final String language =
+            ExtractionWorkerProcess.readString(this.fromWorker);
+        final int numSentences = this.fromWorker.readInt();
+        final List<String> sentences = new ArrayList<>(numSentences);
+        for (int s = 0; s < numSentences; ++s) {
+          sentences.add(ExtractionWorkerProcess.readString(this.fromWorker));
+        }
+        paragraphs.add(new Paragraph(
+            language == null ? null : Locale.forLanguageTag(language),
+            sentences));
+      }
+      return paragraphs;
+    } else {
+      final String message =
+          ExtractionWorkerProcess.readString(this.fromWorker);
+      switch (status) {
+      case STATUS_TIMEOUT:
+        return new ExecutionException(new TimeoutException(message));
+      case STATUS_CRASH:
+        return new CrashResult(new ExecutionException(new Error(message)));
+      default:
+        return new ExecutionException(new Exception(message));
+      }
+    }
+  }
+
+  private static void writeString(
+      final DataOutputStream output, final String string)
+  throws IOException {
+    if (string == null) {
+      output.writeInt(-1);
+    } else {
+      final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  private static String readString(final DataInputStream input)
+  throws IOException {
+    final int length = input.readInt();
+    if (length < 0) { return null; }
+    final byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Result for a document after which the worker process has to be restarted.
+   */
+  private static class CrashResult {
+
+    private final ExecutionException exception;
+
+    public CrashResult(final ExecutionException exception) {
+      this.exception = exception;
+    }
+
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   PROGRAM                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Runs a worker process.
+   * <p>
+   * The first argument is the class name of the extractor, the remaining ones
+   * are the command line arguments for it (without the mode).
+   * </p>
+   */
+  public static void main(final String[] args) throws Exception {
+    Config.LoggerProvider = LoggerProvider.DISABLED;
+    // only the results may be written to the standard output
+    final DataOutputStream output = new DataOutputStream(
+        new BufferedOutputStream(
+            new FileOutputStream(FileDescriptor.out), BUFFER_SIZE));
+    System.setOut(System.err);
+    final DataInputStream input = new DataInputStream(
+        new BufferedInputStream(
+            new FileInputStream(FileDescriptor.in), BUFFER_SIZE));
+
+    final HtmlSentenceExtractor extractor;
+    try {
+      @SuppressWarnings("unchecked")
+      final Class<? extends HtmlSentenceExtractor> extractorClass =
+          (Class<? extends HtmlSentenceExtractor>) Class.forName(args[0]);
+      extractor = extractorClass.getDeclaredConstructor().newInstance();
+    } catch (final ReflectiveOperationException e) {
+      throw new RuntimeException(e);
+    }
+    final String[] extractorArgs = Arrays.copyOfRange(args, 1, args.length);
+    final CommandLine config =
+        new GnuParser().parse(extractor.getOptions(), extractorArgs);
+    extractor.configure(config);
+    final DocumentWriter.Format format = DocumentWriter.Format.parse(
+        config.getOptionValue(HtmlSentenceExtractor.FLAG_OUTPUT_FORMAT,
+            DocumentWriter.DEFAULT_FORMAT.name()));
+    try {
+      for (int numDocuments = input.readInt(); numDocuments > 0;
+          numDocuments = input.readInt()) {
+        for (int d = 0; d < numDocuments; ++d) {
+          final String htmlInput = ExtractionWorkerProcess.readString(input);
+          final boolean crashed =
+              ExtractionWorkerProcess.extract(
+                  extractor, format, htmlInput, output);
+          output.flush();
+          if (crashed) { System.exit(1); }
+        }
+      }
+    } catch (final EOFException e) {
+      // Parent is gone
+    }
+    System.exit(0);
+  }
+
+  private static boolean extract(
+      final HtmlSentenceExtractor extractor,
+      final DocumentWriter.Format format, final String htmlInput,
+      final DataOutputStream output)
+  throws IOException {
+    List<Paragraph> paragraphs = Collections.emptyList();
+    byte status = STATUS_OK;
+    String message = null;
+    try {
+      paragraphs = extractor.extractSentences(htmlInput, format);
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof TimeoutException) {
+        status = STATUS_TIMEOUT;
+      } else if (cause instanceof VirtualMachineError) {
+        status = STATUS_CRASH;
+      } else {
+        status = STATUS_ERROR;
+      }
+      message = String.valueOf(cause);
+    } catch (final VirtualMachineError e) {
+      status = STATUS_CRASH;
+      message = e.toString();
+    } catch (final RuntimeException e) {
+      status = STATUS_ERROR;
+      message = e.toString();
+    }
+
+    output.writeByte(status);
+    if (status == STATUS_OK) {
+      output.writeInt(paragraphs.size());
+      for (final Paragraph paragraph : paragraphs) {
+        final Locale language = paragraph.getLanguage();
+        ExtractionWorkerProcess.writeString(output,
+            language == null ? null : language.toLanguageTag());
+        output.writeInt(paragraph.getSentences().size());
+        for (final String sentence : paragraph.getSentences()) {
+          ExtractionWorkerProcess.writeString(output, sentence);
+        }
+      }
+    } else {
+      ExtractionWorkerProcess.writeString(output, message);
+    }
+    return status == STATUS_CRASH;
+  }
+
+}
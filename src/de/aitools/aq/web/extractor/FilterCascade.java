@@ -0,0 +1,263 @@
+package de.aitools.aq.web.extractor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * A sequence of checks on paragraphs or sentences that are run from the
+ * cheapest to the most expensive one, so that most texts are rejected before
+ * the expensive checks are run.
+ *
+ * <p>
+ * Each check declares whether it needs the language of the text and roughly
+ * what it costs (see {@link #add(String, boolean, Cost, BiPredicate)}). When
+ * the language is not known yet (see {@link #test(String, Function)}), the
+ * checks that do not need it run first, then the language is detected, and
+ * then the checks that need it run. Checks of the same cost run in the order
+ * in which they were added.
+ * </p><p>
+ * For each check (and the language detection, see {@link #LANGUAGE}), the
+ * cascade counts how many texts it tested and rejected, and how much time it
+ * took (see {@link #getStatistics()}). The counts are thread-safe, so one
+ * cascade can be used by several extraction threads.
+ * </p>
+ */
+public class FilterCascade {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Name of the language detection in the statistics, which rejects the texts
+   * that are not in a target language.
+   */
+  public static final String LANGUAGE = "language";
+
+  private static final String TESTED = ".tested";
+
+  private static final String REJECTED = ".rejected";
+
+  private static final String MILLIS = ".millis";
+
+  /**
+   * Rough cost of a check.
+   */
+  public static enum Cost {
+
+    /**
+     * The check takes constant time, like comparing the length of the text.
+     */
+    CHEAP,
+
+    /**
+     * The check looks at each character of the text once, like matching a
+     * simple pattern.
+     */
+    MODERATE,
+
+    /**
+     * The check segments the text or uses a model, like counting stop words.
+     */
+    EXPENSIVE
+
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final List<Filter> languageIndependentFilters;
+
+  private final Filter languageDetection;
+
+  private final List<Filter> languageDependentFilters;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new cascade without checks.
+   */
+  public FilterCascade() {
+    this.languageIndependentFilters = new CopyOnWriteArrayList<>();
+    this.languageDetection = new Filter(LANGUAGE, Cost.EXPENSIVE, null);
+    this.languageDependentFilters = new CopyOnWriteArrayList<>();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the names of the checks in the order in which they are run when the
+   * language is not known yet.
+   */
+  public synchronized List<String> getNames() {
+    final List<String> names = new ArrayList<>();
+    for (final Filter filter : this.languageIndependentFilters) {
+      names.add(filter.name);
+    }
+    for (final Filter filter : this.languageDependentFilters) {
+      names.add(filter.name);
+    }
+    return names;
+  }
+
+  /**
+   * Gets for each check and the language detection (if it was used) the number
+   * of tested and rejected texts and the time it took, with keys
+   * <tt>&lt;name&gt;.tested</tt>, <tt>&lt;name&gt;.rejected</tt>, and
+   * <tt>&lt;name&gt;.millis</tt>.
+   */
+  public synchronized Map<String, Long> getStatistics() {
+    final Map<String, Long> statistics = new TreeMap<>();
+    for (final Filter filter : this.languageIndependentFilters) {
+      filter.addStatistics(statistics);
+    }
+    if (this.languageDetection.numTested.sum() > 0) {
+      this.languageDetection.addStatistics(statistics);
+    }
+    for (final Filter filter : this.languageDependentFilters) {
+      filter.addStatistics(statistics);
+    }
+    return statistics;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Adds a check to this cascade.
+   * @param name The name of the check in the statistics
+   * @param needsLanguage Whether the check needs the language of the text; if
+   * not, it gets <tt>null</tt> as language when the language is not known yet
+   * @param cost The rough cost of the check
+   * @param check The check, which gets the text and its language and returns
+   * whether the text is accepted
+   * @return This cascade
+   * @throws IllegalArgumentException If there is already a check of given name
+   */
+  public synchronized FilterCascade add(
+      final String name, final boolean needsLanguage, final Cost cost,
+      final BiPredicate<String, Locale> check) {
+    if (name == null) { throw new NullPointerException(); }
+    if (cost == null) { throw new NullPointerException(); }
+    if (check == null) { throw new NullPointerException(); }
+    if (name.equals(LANGUAGE) || this.getNames().contains(name)) {
+      throw new IllegalArgumentException("Duplicate filter name: " + name);
+    }
+
+    final List<Filter> filters = needsLanguage
+        ? this.languageDependentFilters
+        : this.languageIndependentFilters;
+    int index = filters.size();
+    while (index > 0 && filters.get(index - 1).cost.compareTo(cost) > 0) {
+      --index;
+    }
+    filters.add(index, new Filter(name, cost, check));
+    return this;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Runs the checks that do not need the language, detects the language of the
+   * text, and runs the checks that need it.
+   * @param text The text to check
+   * @param languageDetector Detects the language of the text, returning
+   * <tt>null</tt> if the text is not in a target language
+   * @return The language of the text if all checks accepted it, or
+   * <tt>null</tt> if it was rejected
+   */
+  public Locale test(
+      final String text, final Function<String, Locale> languageDetector) {
+    for (final Filter filter : this.languageIndependentFilters) {
+      if (!filter.test(text, null)) { return null; }
+    }
+
+    final long start = System.nanoTime();
+    final Locale language = languageDetector.apply(text);
+    this.languageDetection.count(language != null, start);
+    if (language == null) { return null; }
+
+    for (final Filter filter : this.languageDependentFilters) {
+      if (!filter.test(text, language)) { return null; }
+    }
+    return language;
+  }
+
+  /**
+   * Runs all checks on given text of given language.
+   * @return Whether all checks accepted the text
+   */
+  public boolean test(final String text, final Locale language) {
+    for (final Filter filter : this.languageIndependentFilters) {
+      if (!filter.test(text, language)) { return false; }
+    }
+    for (final Filter filter : this.languageDependentFilters) {
+      if (!filter.test(text, language)) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * A check of a cascade with its counts.
+   */
+  private static class Filter {
+
+    private final String name;
+
+    private final Cost cost;
+
+    private final BiPredicate<String, Locale> check;
+
+    private final LongAdder numTested;
+
+    private final LongAdder numRejected;
+
+    private final LongAdder nanos;
+
+    private Filter(final String name, final Cost cost,
+        final BiPredicate<String, Locale> check) {
+      this.name = name;
+      this.cost = cost;
+      this.check = check;
+      this.numTested = new LongAdder();
+      this.numRejected = new LongAdder();
+      this.nanos = new LongAdder();
+    }
+
+    private boolean test(final String text, final Locale language) {
+      final long start = System.nanoTime();
+      final boolean accepted = this.check.test(text, language);
+      this.count(accepted, start);
+      return accepted;
+    }
+
+    private void count(final boolean accepted, final long start) {
+      this.nanos.add(System.nanoTime() - start);
+      this.numTested.increment();
+      if (!accepted) { this.numRejected.increment(); }
+    }
+
+    private void addStatistics(final Map<String, Long> statistics) {
+      statistics.put(this.name + TESTED, this.numTested.sum());
+      statistics.put(this.name + REJECTED, this.numRejected.sum());
+      statistics.put(this.name + MILLIS, this.nanos.sum() / 1000000);
+    }
+
+  }
+
+}
@@ -0,0 +1,366 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader for WARC files that are compressed with one gzip member per record,
+ * like the WARC files of the CommonCrawl or ClueWeb.
+ *
+ * <p>
+ * Unlike a <tt>GZIPInputStream</tt>, this reader keeps track of the gzip
+ * member boundaries: the offset of each record is the position of its gzip
+ * member in the compressed file, and {@link #getPosition()} is the position of
+ * the next member. A reader can thus start at the offset of any record, which
+ * is what {@link WarcInputFormat} uses to start reading within a file, and
+ * what the offsets of a {@link WarcIndex} are for. The CRC-32 and size in the
+ * trailer of each member are checked.
+ * </p><p>
+ * If a member contains several records, all of them get the offset of the
+ * member. Members are decompressed completely, so files that consist of a
+ * single large gzip member should be read with a {@link StreamWarcReader}
+ * instead.
+ * </p>
+ */
+public class GzipWarcReader implements WarcReader {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Maximum number of decompressed bytes of a single gzip member.
+   */
+  public static final int MAX_MEMBER_LENGTH = 1 << 30;
+
+  private static final int INPUT_BUFFER_SIZE = 1 << 16;
+
+  private static final int INITIAL_OUTPUT_BUFFER_SIZE = 1 << 20;
+
+  private static final int GZIP_MAGIC_1 = 0x1F;
+
+  private static final int GZIP_MAGIC_2 = 0x8B;
+
+  private static final int GZIP_FLAG_HEADER_CRC = 0x02;
+
+  private static final int GZIP_FLAG_EXTRA = 0x04;
+
+  private static final int GZIP_FLAG_NAME = 0x08;
+
+  private static final int GZIP_FLAG_COMMENT = 0x10;
+
+  private static final int GZIP_TRAILER_LENGTH = 8;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final ReadableByteChannel channel;
+
+  private final ByteBuffer input;
+
+  private long inputStart;
+
+  private final Inflater inflater;
+
+  private final CRC32 checksum;
+
+  private int maxMemberLength;
+
+  private byte[] output;
+
+  private final Deque<RawWarcRecord> records;
+
+  private WarcRecordFilter filter;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new reader for the given compressed WARC file.
+   */
+  public GzipWarcReader(final File input) throws IOException {
+    this(input, 0);
+  }
+
+  /**
+   * Creates a new reader for the given compressed WARC file that starts
+   * reading at given position, which has to be the start of a gzip member.
+   */
+  public GzipWarcReader(final File input, final long position)
+  throws IOException {
+    this(FileChannel.open(input.toPath(), StandardOpenOption.READ)
+        .position(position), position);
+  }
+
+  /**
+   * Creates a new reader for the given compressed input, which has to be at
+   * the start of a gzip member. The position is the one of the input in the
+   * compressed file, from which the offsets of the records are counted.
+   */
+  public GzipWarcReader(final InputStream input, final long position) {
+    this(Channels.newChannel(input), position);
+  }
+
+  private GzipWarcReader(
+      final ReadableByteChannel channel, final long position) {
+    if (position < 0) {
+      throw new IllegalArgumentException("Negative position: " + position);
+    }
+    this.channel = channel;
+    this.input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+    this.input.flip();
+    this.inputStart = position;
+    this.inflater = new Inflater(true);
+    this.checksum = new CRC32();
+    this.maxMemberLength = MAX_MEMBER_LENGTH;
+    this.output = new byte[INITIAL_OUTPUT_BUFFER_SIZE];
+    this.records = new ArrayDeque<>();
+    this.filter = null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the position in the compressed file of the gzip member from which the
+   * next record is read.
+   */
+  public long getPosition() {
+    if (!this.records.isEmpty()) {
+      return this.records.peekFirst().getOffset();
+    }
+    return this.inputStart + this.input.position();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the filter for the records to read, or <tt>null</tt> to read all
+   * records. Rejected records are decompressed, but their content is not
+   * copied.
+   */
+  public void setFilter(final WarcRecordFilter filter) {
+    this.filter = filter;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public RawWarcRecord read() throws IOException {
+    while (this.records.isEmpty()) {
+      final long offset = this.inputStart + this.input.position();
+      final int length = this.readMember();
+      if (length < 0) { return null; }
+      this.parseRecords(offset, length);
+    }
+    return this.records.pollFirst();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.inflater.end();
+    this.channel.close();
+  }
+
+  /**
+   * Checks whether the compressed WARC file that is read by the given input
+   * consists of several gzip members, which is the case if its first member
+   * ends within the given number of decompressed bytes and is followed by
+   * another one. Returns <tt>false</tt> if the first member can not be
+   * decompressed. The input is not closed.
+   */
+  public static boolean isCompressedPerRecord(
+      final InputStream input, final int maxMemberLength)
+  throws IOException {
+    final GzipWarcReader reader = new GzipWarcReader(input, 0);
+    reader.maxMemberLength = maxMemberLength;
+    try {
+      if (reader.readMember() < 0) { return false; }
+      return reader.ensureInput(2)
+          && (reader.input.get() & 0xFF) == GZIP_MAGIC_1
+          && (reader.input.get() & 0xFF) == GZIP_MAGIC_2;
+    } catch (final IOException e) {
+      return false;
+    } finally {
+      reader.inflater.end();
+    }
+  }
+
+  /**
+   * Decompresses the next gzip member into {@link #output}.
+   * @return The number of decompressed bytes or -1 at the end of the file
+   */
+  private int readMember() throws IOException {
+    if (!this.ensureInput(1)) { return -1; }
+    final long offset = this.inputStart + this.input.position();
+    this.readGzipHeader(offset);
+
+    this.inflater.reset();
+    int length = 0;
+    try {
+      while (!this.inflater.finished()) {
+        if (this.inflater.needsInput()) {
+          if (!this.ensureInput(1)) {
+            throw new EOFException("Truncated gzip member at " + offset);
+          }
+          this.inflater.setInput(this.input.array(),
+              this.input.arrayOffset() + this.input.position(),
+              this.input.remaining());
+          this.input.position(this.input.limit());
+        }
+        if (length == this.output.length) {
+          if (length >= this.maxMemberLength) {
+            throw new IOException("Gzip member at " + offset + " is larger "
+                + "than " + this.maxMemberLength + " bytes; is the file not "
+                + "compressed per record?");
+          }
+          this.output = Arrays.copyOf(this.output,
+              (int) Math.min((long) length * 2, this.maxMemberLength));
+        }
+        length += this.inflater.inflate(
+            this.output, length, this.output.length - length);
+        if (this.inflater.needsDictionary()) {
+          throw new IOException("Invalid gzip member at " + offset);
+        }
+      }
+    } catch (final DataFormatException e) {
+      throw new IOException(
+          "Invalid gzip member at " + offset + ": " + e.getMessage(), e);
+    }
+    // give back the input that belongs to the next member
+    this.input.position(this.input.position() - this.inflater.getRemaining());
+
+    if (!this.ensureInput(GZIP_TRAILER_LENGTH)) {
+      throw new EOFException("Truncated gzip member at " + offset);
+    }
+    final int crc = Integer.reverseBytes(this.input.getInt());
+    final int size = Integer.reverseBytes(this.input.getInt());
+    if (size != length) {
+      throw new IOException("Corrupt gzip member at " + offset
+          + ": wrong size " + size + " instead of " + length);
+    }
+    this.checksum.reset();
+    this.checksum.update(this.output, 0, length);
+    if (crc != (int) this.checksum.getValue()) {
+      throw new IOException("Corrupt gzip member at " + offset
+          + ": wrong CRC-32");
+    }
+    return length;
+  }
+
+  private void readGzipHeader(final long offset) throws IOException {
+    if (!this.ensureInput(10)) {
+      throw new EOFException("Truncated gzip header at " + offset);
+    }
+    final int magic1 = this.input.get() & 0xFF;
+    final int magic2 = this.input.get() & 0xFF;
+    if (magic1 != GZIP_MAGIC_1 || magic2 != GZIP_MAGIC_2) {
+      throw new IOException("No gzip member at " + offset);
+    }
+    this.input.get(); // compression method
+    final int flags = this.input.get() & 0xFF;
+    this.skipInput(6); // time, extra flags, operating system
+    if ((flags & GZIP_FLAG_EXTRA) != 0) {
+      if (!this.ensureInput(2)) {
+        throw new EOFException("Truncated gzip header at " + offset);
+      }
+      final int length =
+          (this.input.get() & 0xFF) | ((this.input.get() & 0xFF) << 8);
+      this.skipInput(length);
+    }
+    if ((flags & GZIP_FLAG_NAME) != 0) { this.skipZeroTerminated(offset); }
+    if ((flags & GZIP_FLAG_COMMENT) != 0) { this.skipZeroTerminated(offset); }
+    if ((flags & GZIP_FLAG_HEADER_CRC) != 0) { this.skipInput(2); }
+  }
+
+  private void parseRecords(final long offset, final int length)
+  throws IOException {
+    final ByteBuffer member = ByteBuffer.wrap(this.output, 0, length);
+    while (true) {
+      // skip the line breaks after the previous record
+      while (member.hasRemaining()
+          && (member.get(member.position()) == '\r'
+            || member.get(member.position()) == '\n')) {
+        member.get();
+      }
+      if (!member.hasRemaining()) { return; }
+
+      final WarcHeader header;
+      try {
+        header = WarcHeader.parse(member);
+      } catch (final IllegalArgumentException e) {
+        throw new IOException(e.getMessage() + " at " + offset, e);
+      }
+      if (header == null
+          || header.getContentLength() > member.remaining()) {
+        throw new IOException("Truncated WARC record at " + offset);
+      }
+      final int contentStart = member.position();
+      final int contentEnd = contentStart + (int) header.getContentLength();
+      if (this.filter == null || this.filter.accept(header)) {
+        // copy, as the output buffer is reused for the next member
+        final byte[] content =
+            Arrays.copyOfRange(this.output, contentStart, contentEnd);
+        this.records.addLast(
+            new RawWarcRecord(header, ByteBuffer.wrap(content), offset));
+      }
+      member.position(contentEnd);
+    }
+  }
+
+  /**
+   * Makes sure that at least the given number of bytes is in the input buffer.
+   * @return Whether there are enough bytes before the end of the file
+   */
+  private boolean ensureInput(final int length) throws IOException {
+    if (this.input.remaining() >= length) { return true; }
+    this.inputStart += this.input.position();
+    this.input.compact();
+    while (this.input.position() < length) {
+      if (this.channel.read(this.input) < 0) { break; }
+    }
+    this.input.flip();
+    return this.input.remaining() >= length;
+  }
+
+  private void skipInput(final int length) throws IOException {
+    int remaining = length;
+    while (remaining > 0) {
+      if (!this.ensureInput(1)) {
+        throw new EOFException("Truncated gzip header");
+      }
+      final int skipped = Math.min(remaining, this.input.remaining());
+      this.input.position(this.input.position() + skipped);
+      remaining -= skipped;
+    }
+  }
+
+  private void skipZeroTerminated(final long offset) throws IOException {
+    do {
+      if (!this.ensureInput(1)) {
+        throw new EOFException("Truncated gzip header at " + offset);
+      }
+    } while (this.input.get() != 0);
+  }
+
+}
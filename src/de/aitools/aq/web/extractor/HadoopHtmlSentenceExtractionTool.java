@@ -3,6 +3,7 @@ package de.aitools.aq.web.extractor;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.cli.CommandLine;
@@ -12,18 +13,18 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
-import edu.cmu.lemurproject.WarcFileInputFormat;
 import edu.cmu.lemurproject.WarcHTMLResponseRecord;
 import edu.cmu.lemurproject.WarcRecord;
 import edu.cmu.lemurproject.WritableWarcRecord;
@@ -39,9 +40,18 @@ import edu.cmu.lemurproject.WritableWarcRecord;
  * When an extraction fails, this is just recorded in the counters of the job,
  * but the mappers will continue and ignore this particular WARC record.
  * </p><p>
- * Currently, this only supports reading WARCs. Each mapper will write all
- * extracted sentences line-by-line to an own gzipped file in the output
- * directory.
+ * The input can be WARC and HTML files. Large WARC files are split so that
+ * several mappers read them in parallel (see {@link WarcInputFormat}), and
+ * many small files can be packed into one split (see
+ * {@link CombineWarcInputFormat}). Each mapper will write all extracted
+ * sentences in the output format (see {@link DocumentWriter}) to an own
+ * file in the output directory, which is gzipped unless another
+ * {@link OutputCompression} is configured.
+ * </p><p>
+ * As extraction is CPU-bound, each mapper can extract several web pages in
+ * parallel (using a <tt>MultithreadedMapper</tt>). Each thread then uses an own
+ * {@link WarcMapper} with an own extractor, while the language models and
+ * stop word lists are loaded once and shared by all threads.
  * </p>
  *
  * @author johannes.kiesel@uni-weimar.de
@@ -126,16 +136,39 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
     
     job.setJobName(extractorClass.getName() + " " + Arrays.toString(args));
     job.setJarByClass(extractorClass);
-    job.setMapperClass(WarcMapper.class);
+    final int numThreads = Integer.parseInt(config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_NUM_THREADS, "1"));
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of threads: " + numThreads);
+    }
+    if (numThreads == 1) {
+      job.setMapperClass(WarcMapper.class);
+    } else {
+      job.setMapperClass(MultithreadedMapper.class);
+      MultithreadedMapper.setMapperClass(job, WarcMapper.class);
+      MultithreadedMapper.setNumberOfThreads(job, numThreads);
+    }
     job.setNumReduceTasks(0);
 
-    job.setOutputKeyClass(Text.class);
-    job.setOutputValueClass(Text.class);
-    job.setInputFormatClass(WarcFileInputFormat.class);
-    job.setOutputFormatClass(TextOutputFormat.class);
-
-    TextOutputFormat.setCompressOutput(job, true);
-    TextOutputFormat.setOutputCompressorClass(job, GzipCodec.class);
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(BytesWritable.class);
+    if (config.hasOption(HtmlSentenceExtractor.FLAG_COMBINE_SPLIT_SIZE)) {
+      final long combineSplitSize = Long.parseLong(config.getOptionValue(
+          HtmlSentenceExtractor.FLAG_COMBINE_SPLIT_SIZE));
+      if (combineSplitSize <= 0) {
+        throw new IllegalArgumentException(
+            "Non-positive split size: " + combineSplitSize);
+      }
+      job.setInputFormatClass(CombineWarcInputFormat.class);
+      CombineWarcInputFormat.setMaxInputSplitSize(job, combineSplitSize);
+    } else {
+      job.setInputFormatClass(WarcInputFormat.class);
+    }
+    job.setOutputFormatClass(DocumentOutputFormat.class);
+    OutputCompression.forName(config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_OUTPUT_COMPRESSION, OutputCompression.GZIP))
+      .configure(job);
     
 
     final String[] inputFileNames =
@@ -154,31 +187,54 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
 
   /**
    * Mapper to extract sentences from WARC files.
+   * <p>
+   * Several instances of this mapper can run in parallel in the threads of a
+   * <tt>MultithreadedMapper</tt>. The output for one record is written by a
+   * {@link DocumentWriter} into a reused buffer and then as one value with a
+   * <tt>NullWritable</tt> key (see {@link DocumentOutputFormat}), so that the
+   * output of different records is not interleaved.
+   * </p>
    *
    * @author johannes.kiesel@uni-weimar.de
    * @version $Date: 2016/11/17 16:36:00 $
    *
    */
-  public static class WarcMapper
-  extends Mapper<LongWritable, WritableWarcRecord, Text, Text> {
-
-    private static final Text EMPTY_TEXT = new Text("");
+  public static class WarcMapper extends
+  Mapper<LongWritable, WritableWarcRecord, NullWritable, BytesWritable> {
 
     public static enum COUNTERS {
       VALID_FILES,
       VALID_ZERO_SENTENCE_FILES,
       EXTRACTION_ERRORS,
       EXTRACTION_TIMEOUT_ERRORS,
+      EXTRACTION_TIMEOUT_THREADS_FINISHED,
+      EXTRACTION_TIMEOUT_THREADS_STILL_RUNNING,
       OUTPUT_NUM_SENTENCES,
     }
+
+    /**
+     * Counter group of the statistics of the extractor (see
+     * {@link HtmlSentenceExtractor#getStatistics()}).
+     */
+    public static final String STATISTICS_COUNTER_GROUP =
+        "EXTRACTOR_STATISTICS";
     
     private HtmlSentenceExtractor extractor;
     
-    private boolean writeNames;
+    private DocumentWriter.Format outputFormat;
+    
+    private DocumentWriter writer;
+    
+    private final DataOutputBuffer buffer;
+    
+    private final BytesWritable value;
     
     public WarcMapper() {
       this.extractor = null;
-      this.writeNames = false;
+      this.outputFormat = DocumentWriter.DEFAULT_FORMAT;
+      this.writer = null;
+      this.buffer = new DataOutputBuffer();
+      this.value = new BytesWritable();
     }
     
     @Override
@@ -202,8 +258,13 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
       final CommandLineParser parser = new GnuParser();
       try {
         final CommandLine config = parser.parse(options, args);
-        this.writeNames =
-            config.hasOption(HtmlSentenceExtractor.FLAG_WRITE_NAMES);
+        final String outputFormat = config.getOptionValue(
+            HtmlSentenceExtractor.FLAG_OUTPUT_FORMAT);
+        if (outputFormat != null) {
+          this.outputFormat = DocumentWriter.Format.parse(outputFormat);
+        }
+        this.writer = DocumentWriter.create(this.outputFormat, this.buffer,
+            config.hasOption(HtmlSentenceExtractor.FLAG_WRITE_NAMES));
         this.extractor.configure(config);
       } catch (final ParseException e) {
         throw new RuntimeException(e);
@@ -215,10 +276,10 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
         final Context context)
     throws IOException, InterruptedException {
       final WarcRecord warcRecord = value.getRecord();
-      List<String> sentences = null;
+      List<Paragraph> paragraphs = null;
       try {
         final String html = Warcs.getHtml(warcRecord);
-        sentences = this.extractor.extractSentences(html);
+        paragraphs = this.extractor.extractSentences(html, this.outputFormat);
       } catch (final Throwable e) {
         final Throwable cause = e.getCause();
         if (cause != null && cause instanceof TimeoutException) {
@@ -227,41 +288,56 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
         context.getCounter(COUNTERS.EXTRACTION_ERRORS).increment(1);
       }
 
-      if (sentences != null) {
+      if (paragraphs != null) {
         context.getCounter(COUNTERS.VALID_FILES).increment(1);
 
-        if (sentences.isEmpty()) {
+        final WarcHTMLResponseRecord htmlWarcRecord =
+            new WarcHTMLResponseRecord(warcRecord);
+        // like before, the lines format names only URI and TREC-ID
+        final String sourceFile = this.outputFormat.hasParagraphs()
+            ? warcRecord.getWarcFilePath() : null;
+        final ExtractedDocument document = new ExtractedDocument(
+            htmlWarcRecord.getTargetURI(), htmlWarcRecord.getTargetTrecID(),
+            sourceFile, key.get(), paragraphs);
+        final int numSentences = document.getNumSentences();
+        if (numSentences == 0) {
           context.getCounter(COUNTERS.VALID_ZERO_SENTENCE_FILES).increment(1);
         } else {
-          final WarcHTMLResponseRecord htmlWarcRecord =
-              new WarcHTMLResponseRecord(warcRecord);
-
-          if (this.writeNames) {
-            context.write(EMPTY_TEXT, EMPTY_TEXT);
-            context.write(EMPTY_TEXT, EMPTY_TEXT);
-            final StringBuilder names = new StringBuilder();
-            final String uri = htmlWarcRecord.getTargetURI();
-            if (uri != null) { names.append(uri); }
-            names.append(' ');
-            final String trecId = htmlWarcRecord.getTargetTrecID();
-            if (trecId != null) { names.append(trecId); }
-            this.writeSentence(names.toString(), context);
-          }
-
-          for (final String sentence : sentences) {
-            this.writeSentence(sentence, context);
-          }
+          this.write(document, context);
           context.getCounter(COUNTERS.OUTPUT_NUM_SENTENCES).increment(
-              sentences.size());
+              numSentences);
         }
       }
       context.progress();
     }
 
-    protected void writeSentence(final String sentence, final Context context)
+    @Override
+    protected void cleanup(final Context context) {
+      if (this.extractor.hasTimeout()) {
+        final TimeoutExecutor timeoutExecutor =
+            this.extractor.getTimeoutExecutor();
+        context.getCounter(COUNTERS.EXTRACTION_TIMEOUT_THREADS_FINISHED)
+          .increment(timeoutExecutor.getNumThreadsFinishedAfterTimeout());
+        context.getCounter(COUNTERS.EXTRACTION_TIMEOUT_THREADS_STILL_RUNNING)
+          .increment(timeoutExecutor.getNumThreadsRunningAfterTimeout());
+      }
+      for (final Map.Entry<String, Long> statistic
+          : this.extractor.getStatistics().entrySet()) {
+        context.getCounter(STATISTICS_COUNTER_GROUP, statistic.getKey())
+          .increment(statistic.getValue());
+      }
+    }
+
+    /**
+     * Writes given document as one value.
+     */
+    private void write(final ExtractedDocument document, final Context context)
     throws IOException, InterruptedException {
-      final Text text = new Text(sentence);
-      context.write(text, EMPTY_TEXT);
+      this.buffer.reset();
+      this.writer.write(document);
+      this.writer.flush();
+      this.value.set(this.buffer.getData(), 0, this.buffer.getLength());
+      context.write(NullWritable.get(), this.value);
     }
     
   }
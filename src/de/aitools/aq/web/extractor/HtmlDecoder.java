@@ -0,0 +1,408 @@
+package de.aitools.aq.web.extractor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+
+import com.ibm.icu.text.CharsetDetector;
+import com.ibm.icu.text.CharsetMatch;
+
+/**
+ * Decodes the bytes of HTML documents into characters.
+ *
+ * <p>
+ * The charset of a document is resolved in this order:
+ * </p><ol>
+ * <li>A byte order mark at the start of the document.</li>
+ * <li>The charset declared outside of the document (e.g., in the
+ * <tt>Content-Type</tt> header of the HTTP response).</li>
+ * <li>The charset declared in a <tt>&lt;meta&gt;</tt> tag in the first
+ * {@value #PRESCAN_LENGTH} bytes of the document (like the prescan of the HTML
+ * standard).</li>
+ * <li>If enabled (see {@link #setDetectCharset(boolean)}), the charset
+ * detected by ICU's {@link CharsetDetector}.</li>
+ * <li>The given default charset.</li>
+ * </ol><p>
+ * The byte order mark goes first as it can not be wrong, like in the HTML
+ * standard. Malformed input is replaced rather than rejected.
+ * </p><p>
+ * The methods of this class are thread-safe. Documents are decoded straight
+ * into a string, which Jericho uses without a further copy.
+ * </p>
+ */
+public class HtmlDecoder {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Number of bytes at the start of a document that are searched for a
+   * <tt>&lt;meta&gt;</tt> charset declaration.
+   */
+  public static final int PRESCAN_LENGTH = 1024;
+
+  /**
+   * Maximum number of bytes at the start of a document that are used for
+   * charset detection.
+   */
+  public static final int DETECTION_LENGTH = 1 << 13;
+
+  /**
+   * Minimum confidence (0 to 100) of the {@link CharsetDetector} for its
+   * result to be used.
+   */
+  public static final int DEFAULT_MIN_DETECTION_CONFIDENCE = 30;
+
+  private static final byte[] META = { '<', 'm', 'e', 't', 'a' };
+
+  private static final byte[] TAG_END = { '>' };
+
+  private static final byte[] COMMENT_START = { '<', '!', '-', '-' };
+
+  private static final byte[] COMMENT_END = { '-', '-', '>' };
+
+  private static final String CHARSET_PARAMETER = "charset";
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private boolean detectCharset;
+
+  private int minDetectionConfidence;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new decoder that does not detect charsets.
+   */
+  public HtmlDecoder() {
+    this.setDetectCharset(false);
+    this.setMinDetectionConfidence(DEFAULT_MIN_DETECTION_CONFIDENCE);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Checks whether this decoder detects the charset of documents that have no
+   * byte order mark or charset declaration.
+   */
+  public boolean detectsCharset() {
+    return this.detectCharset;
+  }
+
+  /**
+   * Gets the minimum confidence (0 to 100) of the {@link CharsetDetector} for
+   * its result to be used.
+   */
+  public int getMinDetectionConfidence() {
+    return this.minDetectionConfidence;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets whether this decoder detects the charset of documents that have no
+   * byte order mark or charset declaration using ICU's
+   * {@link CharsetDetector}, instead of using the default charset.
+   */
+  public void setDetectCharset(final boolean detectCharset) {
+    this.detectCharset = detectCharset;
+  }
+
+  /**
+   * Sets the minimum confidence (0 to 100) of the {@link CharsetDetector} for
+   * its result to be used.
+   */
+  public void setMinDetectionConfidence(final int minDetectionConfidence) {
+    if (minDetectionConfidence < 0 || minDetectionConfidence > 100) {
+      throw new IllegalArgumentException(
+          "Confidence not in [0, 100]: " + minDetectionConfidence);
+    }
+    this.minDetectionConfidence = minDetectionConfidence;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Decodes the HTML document (from the position to the limit of the buffer)
+   * into a new string. The position of the given buffer is not changed.
+   * @param html The bytes of the document
+   * @param declaredCharset The charset declared outside of the document, or
+   * <tt>null</tt> for none
+   * @param defaultCharset The charset to use when no other is found
+   */
+  public String decodeToString(
+      final ByteBuffer html,
+      final Charset declaredCharset, final Charset defaultCharset) {
+    final ByteBuffer input = html.duplicate();
+    final Charset charset =
+        this.getCharset(input, declaredCharset, defaultCharset);
+    HtmlDecoder.skipByteOrderMark(input, charset);
+    if (input.hasArray()) {
+      return new String(input.array(), input.arrayOffset() + input.position(),
+          input.remaining(), charset);
+    } else {
+      return charset.decode(input).toString();
+    }
+  }
+
+  /**
+   * Resolves the charset of the HTML document (from the position to the limit
+   * of the buffer). The position of the buffer is not changed.
+   * @param html The bytes of the document
+   * @param declaredCharset The charset declared outside of the document, or
+   * <tt>null</tt> for none
+   * @param defaultCharset The charset to use when no other is found
+   */
+  public Charset getCharset(
+      final ByteBuffer html,
+      final Charset declaredCharset, final Charset defaultCharset) {
+    if (defaultCharset == null) { throw new NullPointerException(); }
+    final Charset byteOrderMarkCharset = HtmlDecoder.getByteOrderMark(html);
+    if (byteOrderMarkCharset != null) { return byteOrderMarkCharset; }
+    if (declaredCharset != null) { return declaredCharset; }
+    final Charset metaCharset = HtmlDecoder.getMetaCharset(html);
+    if (metaCharset != null) { return metaCharset; }
+    if (this.detectCharset) {
+      final Charset detectedCharset = this.detectCharset(html);
+      if (detectedCharset != null) { return detectedCharset; }
+    }
+    return defaultCharset;
+  }
+
+  /**
+   * Gets the charset indicated by the byte order mark at the position of the
+   * buffer, or <tt>null</tt> if there is none.
+   */
+  public static Charset getByteOrderMark(final ByteBuffer html) {
+    final int start = html.position();
+    final int length = html.remaining();
+    if (length >= 3 && (html.get(start) & 0xFF) == 0xEF
+        && (html.get(start + 1) & 0xFF) == 0xBB
+        && (html.get(start + 2) & 0xFF) == 0xBF) {
+      return StandardCharsets.UTF_8;
+    }
+    if (length >= 2) {
+      final int first = html.get(start) & 0xFF;
+      final int second = html.get(start + 1) & 0xFF;
+      if (first == 0xFE && second == 0xFF) { return StandardCharsets.UTF_16BE; }
+      if (first == 0xFF && second == 0xFE) { return StandardCharsets.UTF_16LE; }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the charset declared by a <tt>&lt;meta&gt;</tt> tag in the first
+   * {@value #PRESCAN_LENGTH} bytes from the position of the buffer, or
+   * <tt>null</tt> if there is no such declaration of a supported charset.
+   */
+  public static Charset getMetaCharset(final ByteBuffer html) {
+    final int start = html.position();
+    final int end = start + Math.min(html.remaining(), PRESCAN_LENGTH);
+    int p = start;
+    while (p < end) {
+      if (HtmlDecoder.startsWith(html, p, end, COMMENT_START)) {
+        p = HtmlDecoder.indexOf(html, p + COMMENT_START.length, end,
+            COMMENT_END);
+        if (p < 0) { return null; }
+        p += COMMENT_END.length;
+      } else if (HtmlDecoder.startsWith(html, p, end, META)
+          && p + META.length < end
+          && HtmlDecoder.isSpaceOrSlash(html.get(p + META.length))) {
+        final int tagEnd = HtmlDecoder.indexOf(html, p, end, TAG_END);
+        if (tagEnd < 0) { return null; }
+        final Charset charset =
+            HtmlDecoder.getMetaTagCharset(html, p + META.length, tagEnd);
+        if (charset != null) { return charset; }
+        p = tagEnd + 1;
+      } else {
+        ++p;
+      }
+    }
+    return null;
+  }
+
+  private Charset detectCharset(final ByteBuffer html) {
+    final byte[] sample = new byte[Math.min(html.remaining(), DETECTION_LENGTH)];
+    html.duplicate().get(sample);
+    final CharsetDetector detector = new CharsetDetector();
+    detector.setText(sample);
+    final CharsetMatch match = detector.detect();
+    if (match == null
+        || match.getConfidence() < this.minDetectionConfidence) {
+      return null;
+    }
+    return HtmlDecoder.forName(match.getName());
+  }
+
+  private static void skipByteOrderMark(
+      final ByteBuffer html, final Charset charset) {
+    final Charset byteOrderMarkCharset = HtmlDecoder.getByteOrderMark(html);
+    if (byteOrderMarkCharset != null
+        && byteOrderMarkCharset.equals(charset)) {
+      final int length =
+          byteOrderMarkCharset.equals(StandardCharsets.UTF_8) ? 3 : 2;
+      html.position(html.position() + length);
+    }
+  }
+
+  /**
+   * Gets the charset of the <tt>&lt;meta&gt;</tt> tag whose attributes are
+   * between the given positions.
+   */
+  private static Charset getMetaTagCharset(
+      final ByteBuffer html, final int start, final int end) {
+    final String attributes =
+        HtmlDecoder.toLowerCaseAscii(html, start, end);
+    String charset = HtmlDecoder.getAttribute(attributes, CHARSET_PARAMETER);
+    if (charset == null) {
+      final String httpEquiv = HtmlDecoder.getAttribute(attributes, "http-equiv");
+      if (httpEquiv == null || !httpEquiv.trim().equals("content-type")) {
+        return null;
+      }
+      final String content = HtmlDecoder.getAttribute(attributes, "content");
+      if (content == null) { return null; }
+      final int parameter = content.indexOf(CHARSET_PARAMETER);
+      if (parameter < 0) { return null; }
+      int p = parameter + CHARSET_PARAMETER.length();
+      while (p < content.length() && content.charAt(p) == ' ') { ++p; }
+      if (p >= content.length() || content.charAt(p) != '=') { return null; }
+      charset = content.substring(p + 1).trim();
+      final int parameterEnd = charset.indexOf(';');
+      if (parameterEnd >= 0) { charset = charset.substring(0, parameterEnd); }
+      charset = HtmlDecoder.unquote(charset.trim());
+    }
+
+    final Charset resolved = HtmlDecoder.forName(charset.trim());
+    if (resolved == null) { return null; }
+    // the document is already read as ASCII-compatible bytes
+    if (resolved.equals(StandardCharsets.UTF_16)
+        || resolved.equals(StandardCharsets.UTF_16BE)
+        || resolved.equals(StandardCharsets.UTF_16LE)) {
+      return StandardCharsets.UTF_8;
+    }
+    return resolved;
+  }
+
+  /**
+   * Gets the value of the attribute of given name from the lower-cased
+   * attributes of a tag, or <tt>null</tt> if the tag has no such attribute.
+   */
+  private static String getAttribute(
+      final String attributes, final String name) {
+    int p = 0;
+    final int length = attributes.length();
+    while (p < length) {
+      while (p < length && HtmlDecoder.isSpaceOrSlash(attributes.charAt(p))) {
+        ++p;
+      }
+      final int nameStart = p;
+      while (p < length && attributes.charAt(p) != '='
+          && !HtmlDecoder.isSpaceOrSlash(attributes.charAt(p))) {
+        ++p;
+      }
+      final String attributeName = attributes.substring(nameStart, p);
+      while (p < length && attributes.charAt(p) == ' ') { ++p; }
+      String value = "";
+      if (p < length && attributes.charAt(p) == '=') {
+        ++p;
+        while (p < length && attributes.charAt(p) == ' ') { ++p; }
+        if (p < length
+            && (attributes.charAt(p) == '"' || attributes.charAt(p) == '\'')) {
+          final char quote = attributes.charAt(p);
+          final int valueEnd = attributes.indexOf(quote, p + 1);
+          final int end = valueEnd < 0 ? length : valueEnd;
+          value = attributes.substring(p + 1, end);
+          p = end + 1;
+        } else {
+          final int valueStart = p;
+          while (p < length
+              && !HtmlDecoder.isSpaceOrSlash(attributes.charAt(p))) {
+            ++p;
+          }
+          value = attributes.substring(valueStart, p);
+        }
+      }
+      if (attributeName.equals(name)) { return value; }
+      if (attributeName.isEmpty() && p < length) { ++p; }
+    }
+    return null;
+  }
+
+  private static String unquote(final String value) {
+    if (value.length() >= 2
+        && (value.charAt(0) == '"' || value.charAt(0) == '\'')
+        && value.charAt(value.length() - 1) == value.charAt(0)) {
+      return value.substring(1, value.length() - 1);
+    }
+    return value;
+  }
+
+  private static Charset forName(final String name) {
+    if (name == null || name.isEmpty()) { return null; }
+    try {
+      return Charset.forName(name);
+    } catch (final IllegalCharsetNameException | UnsupportedCharsetException e) {
+      return null;
+    }
+  }
+
+  private static String toLowerCaseAscii(
+      final ByteBuffer html, final int start, final int end) {
+    final char[] chars = new char[end - start];
+    for (int c = 0; c < chars.length; ++c) {
+      char character = (char) (html.get(start + c) & 0xFF);
+      if (character >= 'A' && character <= 'Z') {
+        character = (char) (character + ('a' - 'A'));
+      } else if (character == '\t' || character == '\n'
+          || character == '\f' || character == '\r') {
+        character = ' ';
+      }
+      chars[c] = character;
+    }
+    return new String(chars);
+  }
+
+  private static boolean isSpaceOrSlash(final int character) {
+    return character == ' ' || character == '\t' || character == '\n'
+        || character == '\f' || character == '\r' || character == '/';
+  }
+
+  /**
+   * Checks whether the bytes at the position are the given ASCII bytes
+   * (ignoring case).
+   */
+  private static boolean startsWith(final ByteBuffer html,
+      final int position, final int end, final byte[] prefix) {
+    if (position + prefix.length > end) { return false; }
+    for (int b = 0; b < prefix.length; ++b) {
+      int character = html.get(position + b);
+      if (character >= 'A' && character <= 'Z') {
+        character += 'a' - 'A';
+      }
+      if (character != prefix[b]) { return false; }
+    }
+    return true;
+  }
+
+  private static int indexOf(final ByteBuffer html,
+      final int start, final int end, final byte[] bytes) {
+    for (int p = start; p < end; ++p) {
+      if (HtmlDecoder.startsWith(html, p, end, bytes)) { return p; }
+    }
+    return -1;
+  }
+
+}
@@ -1,22 +1,16 @@
 package de.aitools.aq.web.extractor;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.logging.Logger;
 
 import org.apache.commons.cli.AlreadySelectedException;
 import org.apache.commons.cli.CommandLine;
@@ -27,11 +21,9 @@ import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.UnrecognizedOptionException;
-import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.util.ToolRunner;
 
-import edu.cmu.lemurproject.WarcHTMLResponseRecord;
 import net.htmlparser.jericho.Config;
 import net.htmlparser.jericho.LoggerProvider;
 
@@ -88,15 +80,18 @@ public abstract class HtmlSentenceExtractor {
   //                                  CONSTANTS                               //
   //////////////////////////////////////////////////////////////////////////////
   
-  private static final Logger LOGGER =
-      Logger.getLogger(HtmlSentenceExtractor.class.getName());
-  
   /**
    * Value to use in {@link #setTimeoutInSeconds(int)} to specify that the
    * extractor should not timeout extraction attempts.
    */
   public static final int NO_TIMEOUT = -1;
   
+  /**
+   * Default maximum number of threads used for extraction attempts with a
+   * timeout (see {@link #setMaxTimeoutThreads(int)}).
+   */
+  public static final int DEFAULT_MAX_TIMEOUT_THREADS = 64;
+  
 
   
   private static final String MODE_LOCAL = "local";
@@ -121,19 +116,113 @@ public abstract class HtmlSentenceExtractor {
   
   public static String FLAG_NUM_THREADS = "threads";
 
+  public static String SHORT_FLAG_NUM_READER_THREADS = "tr";
+  
+  public static String FLAG_NUM_READER_THREADS = "threads-read";
+
+  public static String SHORT_FLAG_NUM_WRITER_THREADS = "tw";
+  
+  public static String FLAG_NUM_WRITER_THREADS = "threads-write";
+
+  public static String SHORT_FLAG_QUEUE_SIZE = "q";
+  
+  public static String FLAG_QUEUE_SIZE = "queue-size";
+
+  public static String SHORT_FLAG_STATUS_INTERVAL = "si";
+  
+  public static String FLAG_STATUS_INTERVAL = "status-interval-in-seconds";
+
   public static String SHORT_FLAG_TIMEOUT = "s";
 
   public static String FLAG_TIMEOUT = "timeout-in-seconds";
 
+  public static String SHORT_FLAG_MAX_TIMEOUT_THREADS = "st";
+
+  public static String FLAG_MAX_TIMEOUT_THREADS = "timeout-max-threads";
+
   public static String SHORT_FLAG_WRITE_NAMES = "n";
 
   public static String FLAG_WRITE_NAMES = "write-names";
 
+  public static String SHORT_FLAG_DETECT_CHARSET = "cd";
+
+  public static String FLAG_DETECT_CHARSET = "charset-detect";
+
+  public static String SHORT_FLAG_FILTER_PAYLOAD_TYPE = "fp";
+
+  public static String FLAG_FILTER_PAYLOAD_TYPE = "filter-payload-type";
+
+  public static String SHORT_FLAG_FILTER_MIN_LENGTH = "fmin";
+
+  public static String FLAG_FILTER_MIN_LENGTH = "filter-min-length";
+
+  public static String SHORT_FLAG_FILTER_MAX_LENGTH = "fmax";
+
+  public static String FLAG_FILTER_MAX_LENGTH = "filter-max-length";
+
+  public static String SHORT_FLAG_FILTER_URI = "fu";
+
+  public static String FLAG_FILTER_URI = "filter-uri";
+
+  public static String SHORT_FLAG_FILTER_URI_EXCLUDE = "fux";
+
+  public static String FLAG_FILTER_URI_EXCLUDE = "filter-uri-exclude";
+
+  public static String SHORT_FLAG_ISOLATE_PROCESSES = "ip";
+
+  public static String FLAG_ISOLATE_PROCESSES = "isolate-processes";
+
+  public static String SHORT_FLAG_ISOLATE_BATCH_SIZE = "ib";
+
+  public static String FLAG_ISOLATE_BATCH_SIZE = "isolate-batch-size";
+
+  public static String SHORT_FLAG_ISOLATE_MEMORY = "im";
+
+  public static String FLAG_ISOLATE_MEMORY = "isolate-memory-in-mb";
+
+  public static String SHORT_FLAG_OUTPUT_FORMAT = "of";
+
+  public static String FLAG_OUTPUT_FORMAT = "output-format";
+
+  public static String SHORT_FLAG_OUTPUT_COMPRESSION = "oc";
+
+  public static String FLAG_OUTPUT_COMPRESSION = "output-compression";
+
+  public static String SHORT_FLAG_ROLL_BYTES = "rb";
+
+  public static String FLAG_ROLL_BYTES = "roll-bytes";
+
+  public static String SHORT_FLAG_ROLL_RECORDS = "rr";
+
+  public static String FLAG_ROLL_RECORDS = "roll-records";
+
+  public static String SHORT_FLAG_RESUME = "re";
+
+  public static String FLAG_RESUME = "resume";
+
+  public static String SHORT_FLAG_SHARD = "sh";
+
+  public static String FLAG_SHARD = "shard";
+
+  public static String SHORT_FLAG_COORDINATE = "co";
+
+  public static String FLAG_COORDINATE = "coordinate";
+
+  public static String SHORT_FLAG_LEASE_TIMEOUT = "lt";
+
+  public static String FLAG_LEASE_TIMEOUT = "lease-timeout";
+
+  public static String SHORT_FLAG_COMBINE_SPLIT_SIZE = "cs";
+
+  public static String FLAG_COMBINE_SPLIT_SIZE = "combine-split-size";
+
   //////////////////////////////////////////////////////////////////////////////
   //                                   MEMBERS                                //
   //////////////////////////////////////////////////////////////////////////////
   
-  private final ExecutorService executor;
+  private TimeoutExecutor timeoutExecutor;
+  
+  private int maxTimeoutThreads;
   
   private int timeoutInSeconds;
 
@@ -145,7 +234,8 @@ public abstract class HtmlSentenceExtractor {
    * Create a new extractor that does not timeout extraction attempts.
    */
   public HtmlSentenceExtractor() {
-    this.executor = Executors.newCachedThreadPool();
+    this.timeoutExecutor = null;
+    this.setMaxTimeoutThreads(DEFAULT_MAX_TIMEOUT_THREADS);
     this.setNoTimeout();
   }
 
@@ -174,6 +264,36 @@ public abstract class HtmlSentenceExtractor {
     return this.timeoutInSeconds;
   }
 
+  /**
+   * Gets the maximum number of threads used for extraction attempts with a
+   * timeout.
+   * @see #setMaxTimeoutThreads(int)
+   */
+  public int getMaxTimeoutThreads() {
+    return this.maxTimeoutThreads;
+  }
+
+  /**
+   * Gets the executor that runs the extraction attempts with a timeout, for
+   * example to get the number of threads that are still running after their
+   * timeout.
+   */
+  public synchronized TimeoutExecutor getTimeoutExecutor() {
+    if (this.timeoutExecutor == null) {
+      this.timeoutExecutor = new TimeoutExecutor(this.maxTimeoutThreads);
+    }
+    return this.timeoutExecutor;
+  }
+
+  /**
+   * Gets counts that this extractor collected during the extraction, like how
+   * many paragraphs its filters rejected, by name. The default implementation
+   * returns an empty map.
+   */
+  public Map<String, Long> getStatistics() {
+    return Collections.emptyMap();
+  }
+
   //////////////////////////////////////////////////////////////////////////////
   //                                CONFIGURATION                             //
   //////////////////////////////////////////////////////////////////////////////
@@ -192,6 +312,11 @@ public abstract class HtmlSentenceExtractor {
     if (timeout != null) {
       this.setTimeoutInSeconds(Integer.parseInt(timeout));
     }
+    final String maxTimeoutThreads =
+        config.getOptionValue(FLAG_MAX_TIMEOUT_THREADS);
+    if (maxTimeoutThreads != null) {
+      this.setMaxTimeoutThreads(Integer.parseInt(maxTimeoutThreads));
+    }
   }
   
   /**
@@ -216,6 +341,29 @@ public abstract class HtmlSentenceExtractor {
     }
     this.timeoutInSeconds = timeoutInSeconds;
   }
+  
+  /**
+   * Sets the maximum number of threads used for extraction attempts with a
+   * timeout.
+   * <p>
+   * Since the extraction libraries do not necessarily stop when they are
+   * interrupted, threads of timed out attempts may continue to run for some
+   * time. This is a hard limit on the number of threads, including those that
+   * still run after their timeout, so it should be larger than the number of
+   * threads that call {@link #extractSentences(String)} concurrently. See
+   * {@link TimeoutExecutor} for details.
+   * </p>
+   */
+  public synchronized void setMaxTimeoutThreads(final int maxTimeoutThreads) {
+    if (maxTimeoutThreads <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of threads: " + maxTimeoutThreads);
+    }
+    if (maxTimeoutThreads != this.maxTimeoutThreads) {
+      this.maxTimeoutThreads = maxTimeoutThreads;
+      this.timeoutExecutor = null;
+    }
+  }
 
   //////////////////////////////////////////////////////////////////////////////
   //                               FUNCTIONALITY                              //
@@ -235,6 +383,26 @@ public abstract class HtmlSentenceExtractor {
   protected abstract List<String> extract(final String htmlInput)
   throws IllegalArgumentException;
   
+  /**
+   * Extracts sentences from given HTML.
+   * <p>
+   * This method does not implement the timeout functionality, but will be
+   * called by {@link #extractSentences(CharSequence)}, which does. The default
+   * implementation copies the HTML to a string and calls
+   * {@link #extract(String)}. Extractors that can work on any character
+   * sequence should override this method to avoid the copy.
+   * </p>
+   * @param htmlInput The HTML input to extract sentences from, which must not
+   * be used after the method returns
+   * @return The extracted sentences
+   * @throws IllegalArgumentException If the HTML can not be used for some
+   * reason
+   */
+  protected List<String> extract(final CharSequence htmlInput)
+  throws IllegalArgumentException {
+    return this.extract(htmlInput.toString());
+  }
+  
   /**
    * Extracts sentences from given HTML.
    * @param htmlInput The HTML to extract sentences from
@@ -245,28 +413,133 @@ public abstract class HtmlSentenceExtractor {
    * {@link TimeoutException} as its cause
    */
   public List<String> extractSentences(final String htmlInput)
+  throws NullPointerException, ExecutionException {
+    return this.extractSentences((CharSequence) htmlInput);
+  }
+  
+  /**
+   * Extracts sentences from given HTML, like
+   * {@link #extractSentences(String)}, but without requiring a copy of the
+   * HTML as a string if the extractor can work on any character sequence.
+   * <p>
+   * If the extraction times out, it may still read the HTML until it notices
+   * the cancellation. Callers that reuse the character sequence should thus
+   * not reuse it after a timeout.
+   * </p>
+   * @param htmlInput The HTML to extract sentences from
+   * @return The extracted sentences
+   * @throws NullPointerException If the HTML is <tt>null</tt>
+   * @throws ExecutionException If the extraction failed. When it fails due to a
+   * timeout (see {@link #setTimeoutInSeconds(int)}), the exception will have a
+   * {@link TimeoutException} as its cause
+   */
+  public List<String> extractSentences(final CharSequence htmlInput)
+  throws NullPointerException, ExecutionException {
+    if (htmlInput == null) { throw new NullPointerException(); }
+    
+    if (this.timeoutInSeconds == NO_TIMEOUT) {
+      return this.extract(htmlInput);
+    } else {
+      try {
+        return this.getTimeoutExecutor().call(
+            () -> this.extract(htmlInput),
+            this.timeoutInSeconds, TimeUnit.SECONDS);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ExecutionException(e);
+      }
+    }
+  }
+  
+  /**
+   * Extracts sentences from given HTML, grouped by the paragraphs they come
+   * from.
+   * <p>
+   * This method does not implement the timeout functionality, but will be
+   * called by {@link #extractSentencesByParagraph(CharSequence)}, which does.
+   * The default implementation puts all sentences of
+   * {@link #extract(CharSequence)} in a single paragraph of unknown language.
+   * Extractors that know the paragraphs should override this method.
+   * </p>
+   * @param htmlInput The HTML input to extract sentences from, which must not
+   * be used after the method returns
+   * @return The extracted paragraphs
+   * @throws IllegalArgumentException If the HTML can not be used for some
+   * reason
+   */
+  protected List<Paragraph> extractByParagraph(final CharSequence htmlInput)
+  throws IllegalArgumentException {
+    return Collections.singletonList(
+        new Paragraph(null, this.extract(htmlInput)));
+  }
+  
+  /**
+   * Extracts sentences from given HTML, grouped by the paragraphs they come
+   * from, like {@link #extractSentences(CharSequence)}.
+   * @param htmlInput The HTML to extract sentences from
+   * @return The extracted paragraphs
+   * @throws NullPointerException If the HTML is <tt>null</tt>
+   * @throws ExecutionException If the extraction failed. When it fails due to a
+   * timeout (see {@link #setTimeoutInSeconds(int)}), the exception will have a
+   * {@link TimeoutException} as its cause
+   */
+  public List<Paragraph> extractSentencesByParagraph(
+      final CharSequence htmlInput)
   throws NullPointerException, ExecutionException {
     if (htmlInput == null) { throw new NullPointerException(); }
-    final HtmlSentenceExtractor extractor = this;
     
     if (this.timeoutInSeconds == NO_TIMEOUT) {
-      return extractor.extract(htmlInput);
+      return this.extractByParagraph(htmlInput);
     } else {
-      final Callable<List<String>> task = new Callable<List<String>>() {
-         public List<String> call() throws IOException {
-            return extractor.extract(htmlInput);
-         }
-      };
-      final Future<List<String>> future = this.executor.submit(task);
       try {
-        return future.get(this.timeoutInSeconds, TimeUnit.SECONDS);
-      } catch (final Throwable e) {
-        future.cancel(true);
+        return this.getTimeoutExecutor().call(
+            () -> this.extractByParagraph(htmlInput),
+            this.timeoutInSeconds, TimeUnit.SECONDS);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
         throw new ExecutionException(e);
       }
     }
   }
   
+  /**
+   * Extracts sentences from given HTML, either grouped by paragraphs (see
+   * {@link #extractSentencesByParagraph(CharSequence)}) or all in a single
+   * paragraph of unknown language (see
+   * {@link #extractSentences(CharSequence)}), depending on whether the output
+   * format has paragraphs.
+   * @param htmlInput The HTML to extract sentences from
+   * @param format The output format
+   * @return The extracted paragraphs
+   * @throws NullPointerException If the HTML is <tt>null</tt>
+   * @throws ExecutionException If the extraction failed
+   */
+  public List<Paragraph> extractSentences(
+      final CharSequence htmlInput, final DocumentWriter.Format format)
+  throws NullPointerException, ExecutionException {
+    if (format.hasParagraphs()) {
+      return this.extractSentencesByParagraph(htmlInput);
+    } else {
+      return Collections.singletonList(
+          new Paragraph(null, this.extractSentences(htmlInput)));
+    }
+  }
+  
+  /**
+   * Throws a {@link CancellationException} if the current thread has been
+   * interrupted.
+   * <p>
+   * Extractors should call this method regularly during
+   * {@link #extract(String)}, so that attempts that timed out stop as soon as
+   * possible instead of blocking a thread of the {@link TimeoutExecutor}.
+   * </p>
+   */
+  protected static void checkCancelled() throws CancellationException {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("Extraction was cancelled");
+    }
+  }
+  
   //////////////////////////////////////////////////////////////////////////////
   //                                   PROGRAM                                //
   //////////////////////////////////////////////////////////////////////////////
@@ -292,7 +565,7 @@ public abstract class HtmlSentenceExtractor {
         "Sets the input files to extract the sentences from. In case of a "
         + "directory, the directory is traversed recursively and all HTML "
         + "files are extracted. Currently supports .html, .htm, .warc and "
-        + ".warc.gz in local mode and .warc and .warc.gz files in hadoop mode");
+        + ".warc.gz files");
     inputOption.setLongOpt(FLAG_INPUT);
     inputOption.setArgName("file,file,...");
     inputOption.setArgs(Option.UNLIMITED_VALUES);
@@ -302,7 +575,7 @@ public abstract class HtmlSentenceExtractor {
     
     final Option outputOption = new Option(SHORT_FLAG_OUTPUT, true,
         "Sets the directory to which extracted sentences are written (one file "
-        + "named 'part-m-<id>' per local thread or hadoop mapper)");
+        + "named 'part-m-<id>' per local writer thread or hadoop mapper)");
     outputOption.setLongOpt(FLAG_OUTPUT);
     outputOption.setArgName("dir");
     outputOption.setRequired(true);
@@ -319,13 +592,62 @@ public abstract class HtmlSentenceExtractor {
     timeoutOption.setArgName("sec");
     options.addOption(timeoutOption);
 
+    final Option maxTimeoutThreadsOption = new Option(
+        SHORT_FLAG_MAX_TIMEOUT_THREADS, true,
+        "Sets the maximum number of threads used for extraction with a timeout, "
+        + "including threads that still run after their timeout (Current: "
+        + this.maxTimeoutThreads + ")");
+    maxTimeoutThreadsOption.setLongOpt(FLAG_MAX_TIMEOUT_THREADS);
+    maxTimeoutThreadsOption.setArgName("num");
+    options.addOption(maxTimeoutThreadsOption);
+
     final Option numThreadsOption = new Option(SHORT_FLAG_NUM_THREADS, true,
-        "Sets the number of web pages to extract in parallel (only used for "
-        + MODE_LOCAL + " mode; Current: 1)");
+        "Sets the number of web pages to extract in parallel (in "
+        + MODE_HADOOP + " mode: per mapper, each thread with an own extractor; "
+        + "Current: 1)");
     numThreadsOption.setLongOpt(FLAG_NUM_THREADS);
     numThreadsOption.setArgName("num");
     options.addOption(numThreadsOption);
 
+    final Option numReaderThreadsOption = new Option(
+        SHORT_FLAG_NUM_READER_THREADS, true,
+        "Sets the number of threads that read and decode the input files (only "
+        + "used for " + MODE_LOCAL + " mode; Current: same as --"
+        + FLAG_NUM_THREADS + ")");
+    numReaderThreadsOption.setLongOpt(FLAG_NUM_READER_THREADS);
+    numReaderThreadsOption.setArgName("num");
+    options.addOption(numReaderThreadsOption);
+
+    final Option numWriterThreadsOption = new Option(
+        SHORT_FLAG_NUM_WRITER_THREADS, true,
+        "Sets the number of threads that write the extracted sentences, each "
+        + "to an own file (only used for " + MODE_LOCAL + " mode; Current: "
+        + "same as --" + FLAG_NUM_THREADS + ")");
+    numWriterThreadsOption.setLongOpt(FLAG_NUM_WRITER_THREADS);
+    numWriterThreadsOption.setArgName("num");
+    options.addOption(numWriterThreadsOption);
+
+    final Option queueSizeOption = new Option(SHORT_FLAG_QUEUE_SIZE, true,
+        "Sets the number of documents that may wait between reading and "
+        + "extraction and between extraction and writing (only used for "
+        + MODE_LOCAL + " mode; Current: "
+        + LocalHtmlSentenceExtractionTool.DEFAULT_QUEUE_SIZE_PER_THREAD
+        + " times --" + FLAG_NUM_THREADS + ")");
+    queueSizeOption.setLongOpt(FLAG_QUEUE_SIZE);
+    queueSizeOption.setArgName("num");
+    options.addOption(queueSizeOption);
+
+    final Option statusIntervalOption = new Option(
+        SHORT_FLAG_STATUS_INTERVAL, true,
+        "Sets the number of seconds between two status messages on the queue "
+        + "depths and progress, or 0 for no messages (only used for "
+        + MODE_LOCAL + " mode; Current: "
+        + LocalHtmlSentenceExtractionTool.DEFAULT_STATUS_INTERVAL_IN_SECONDS
+        + ")");
+    statusIntervalOption.setLongOpt(FLAG_STATUS_INTERVAL);
+    statusIntervalOption.setArgName("sec");
+    options.addOption(statusIntervalOption);
+
     final Option writeFileNamesOption = new Option(SHORT_FLAG_WRITE_NAMES,
         "Configures this extractor to separate the sentences from different "
         + "pages by two empty lines and adds a line containing the file name "
@@ -333,6 +655,178 @@ public abstract class HtmlSentenceExtractor {
         + "the first extracted sentence");
     writeFileNamesOption.setLongOpt(FLAG_WRITE_NAMES);
     options.addOption(writeFileNamesOption);
+
+    final Option outputFormatOption = new Option(SHORT_FLAG_OUTPUT_FORMAT, true,
+        "Sets the format of the output files: 'lines' (one sentence per line, "
+        + "see --" + FLAG_WRITE_NAMES + "), 'jsonl' (one JSON object per page "
+        + "with URI, TREC-ID, source file, record offset, language, and "
+        + "paragraphs), or 'binary' (the same as length-prefixed binary "
+        + "records) (Current: "
+        + DocumentWriter.DEFAULT_FORMAT.name().toLowerCase(Locale.ROOT) + ")");
+    outputFormatOption.setLongOpt(FLAG_OUTPUT_FORMAT);
+    outputFormatOption.setArgName("format");
+    options.addOption(outputFormatOption);
+
+    final Option outputCompressionOption = new Option(
+        SHORT_FLAG_OUTPUT_COMPRESSION, true,
+        "Sets the compression of the output files: '" + OutputCompression.NONE
+        + "', '" + OutputCompression.GZIP + "', '"
+        + OutputCompression.BLOCK_GZIP + "' (gzip in independent blocks "
+        + "with an index file), or the class name of a Hadoop compression "
+        + "codec (e.g., org.apache.hadoop.io.compress.BZip2Codec) "
+        + "(Current: " + OutputCompression.NONE + " for " + MODE_LOCAL
+        + " mode, " + OutputCompression.GZIP + " for " + MODE_HADOOP
+        + " mode)");
+    outputCompressionOption.setLongOpt(FLAG_OUTPUT_COMPRESSION);
+    outputCompressionOption.setArgName("codec");
+    options.addOption(outputCompressionOption);
+
+    final Option rollBytesOption = new Option(SHORT_FLAG_ROLL_BYTES, true,
+        "Starts a new output file once the current one has at least this many "
+        + "(compressed) bytes, checked after each page (only used for "
+        + MODE_LOCAL + " mode; Current: no limit)");
+    rollBytesOption.setLongOpt(FLAG_ROLL_BYTES);
+    rollBytesOption.setArgName("bytes");
+    options.addOption(rollBytesOption);
+
+    final Option rollRecordsOption = new Option(SHORT_FLAG_ROLL_RECORDS, true,
+        "Starts a new output file once this many pages have been written to "
+        + "the current one (only used for " + MODE_LOCAL + " mode; Current: "
+        + "no limit)");
+    rollRecordsOption.setLongOpt(FLAG_ROLL_RECORDS);
+    rollRecordsOption.setArgName("pages");
+    options.addOption(rollRecordsOption);
+
+    final Option resumeOption = new Option(SHORT_FLAG_RESUME,
+        "Keeps a journal of the progress in the output directory, and resumes "
+        + "from it if it exists: skips the input files and pages that are "
+        + "already in the output, and finishes or discards the output files "
+        + "of the aborted run. Progress is recorded each time an output file "
+        + "is complete, so it requires " + FLAG_ROLL_BYTES + " or "
+        + FLAG_ROLL_RECORDS + " (only used for " + MODE_LOCAL + " mode)");
+    resumeOption.setLongOpt(FLAG_RESUME);
+    options.addOption(resumeOption);
+
+    final Option shardOption = new Option(SHORT_FLAG_SHARD, true,
+        "Processes only the input files of shard i of n (by a hash of their "
+        + "path) and writes to the subdirectory shard-i-of-n of the output "
+        + "directory, so that n machines that share a file system can process "
+        + "the input together. Merge the outputs with "
+        + ShardMerger.class.getName() + " once all shards are complete (only "
+        + "used for " + MODE_LOCAL + " mode; Current: all input files)");
+    shardOption.setLongOpt(FLAG_SHARD);
+    shardOption.setArgName("i/n");
+    options.addOption(shardOption);
+
+    final Option coordinateOption = new Option(SHORT_FLAG_COORDINATE, true,
+        "Shares the input files with other processes that use the same output "
+        + "directory on a shared file system, as node of given unique name: "
+        + "each input file is claimed through a lease file in the "
+        + LeaseCoordinator.DIRECTORY_NAME + " subdirectory of the output "
+        + "directory, and leases of nodes that died are taken over. Writes to "
+        + "the subdirectory " + LeaseCoordinator.getNodeDirectoryName("<node>")
+        + " of the output directory and implies " + FLAG_RESUME + ". Merge "
+        + "the outputs with " + ShardMerger.class.getName() + " once all "
+        + "nodes are complete (only used for " + MODE_LOCAL + " mode)");
+    coordinateOption.setLongOpt(FLAG_COORDINATE);
+    coordinateOption.setArgName("node");
+    options.addOption(coordinateOption);
+
+    final Option leaseTimeoutOption = new Option(SHORT_FLAG_LEASE_TIMEOUT, true,
+        "Sets the number of seconds after which the lease of a node that did "
+        + "not renew it expires (only used with " + FLAG_COORDINATE
+        + "; Current: " + LeaseCoordinator.DEFAULT_LEASE_TIMEOUT_IN_SECONDS
+        + ")");
+    leaseTimeoutOption.setLongOpt(FLAG_LEASE_TIMEOUT);
+    leaseTimeoutOption.setArgName("seconds");
+    options.addOption(leaseTimeoutOption);
+
+    final Option detectCharsetOption = new Option(SHORT_FLAG_DETECT_CHARSET,
+        "Configures this extractor to detect the charset of web pages that "
+        + "declare none (neither in the HTTP header, nor by a byte order mark, "
+        + "nor in a meta tag) from their bytes, instead of using the default "
+        + "charset (only used for " + MODE_LOCAL + " mode)");
+    detectCharsetOption.setLongOpt(FLAG_DETECT_CHARSET);
+    options.addOption(detectCharsetOption);
+
+    final Option filterPayloadTypeOption = new Option(
+        SHORT_FLAG_FILTER_PAYLOAD_TYPE, true,
+        "Skips WARC records with a WARC-Identified-Payload-Type that does not "
+        + "match this regular expression, without reading their content (only "
+        + "used for " + MODE_LOCAL + " mode; Current: any)");
+    filterPayloadTypeOption.setLongOpt(FLAG_FILTER_PAYLOAD_TYPE);
+    filterPayloadTypeOption.setArgName("regex");
+    options.addOption(filterPayloadTypeOption);
+
+    final Option filterMinLengthOption = new Option(
+        SHORT_FLAG_FILTER_MIN_LENGTH, true,
+        "Skips WARC records with less content bytes, without reading their "
+        + "content (only used for " + MODE_LOCAL + " mode; Current: 0)");
+    filterMinLengthOption.setLongOpt(FLAG_FILTER_MIN_LENGTH);
+    filterMinLengthOption.setArgName("bytes");
+    options.addOption(filterMinLengthOption);
+
+    final Option filterMaxLengthOption = new Option(
+        SHORT_FLAG_FILTER_MAX_LENGTH, true,
+        "Skips WARC records with more content bytes, without reading their "
+        + "content (only used for " + MODE_LOCAL + " mode; Current: any)");
+    filterMaxLengthOption.setLongOpt(FLAG_FILTER_MAX_LENGTH);
+    filterMaxLengthOption.setArgName("bytes");
+    options.addOption(filterMaxLengthOption);
+
+    final Option filterUriOption = new Option(
+        SHORT_FLAG_FILTER_URI, true,
+        "Skips WARC records with a WARC-Target-URI that does not match this "
+        + "regular expression, without reading their content (only used for "
+        + MODE_LOCAL + " mode; Current: any)");
+    filterUriOption.setLongOpt(FLAG_FILTER_URI);
+    filterUriOption.setArgName("regex");
+    options.addOption(filterUriOption);
+
+    final Option filterUriExcludeOption = new Option(
+        SHORT_FLAG_FILTER_URI_EXCLUDE, true,
+        "Skips WARC records with a WARC-Target-URI that matches this regular "
+        + "expression, without reading their content (only used for "
+        + MODE_LOCAL + " mode; Current: none)");
+    filterUriExcludeOption.setLongOpt(FLAG_FILTER_URI_EXCLUDE);
+    filterUriExcludeOption.setArgName("regex");
+    options.addOption(filterUriExcludeOption);
+
+    final Option isolateProcessesOption = new Option(
+        SHORT_FLAG_ISOLATE_PROCESSES,
+        "Configures this extractor to extract in child processes, one per "
+        + "extraction thread, which are killed and restarted when they crash or "
+        + "exceed the timeout (only used for " + MODE_LOCAL + " mode)");
+    isolateProcessesOption.setLongOpt(FLAG_ISOLATE_PROCESSES);
+    options.addOption(isolateProcessesOption);
+
+    final Option isolateBatchSizeOption = new Option(
+        SHORT_FLAG_ISOLATE_BATCH_SIZE, true,
+        "Sets the number of web pages sent to a child process at once (only "
+        + "used with --" + FLAG_ISOLATE_PROCESSES + "; Current: "
+        + LocalHtmlSentenceExtractionTool.DEFAULT_WORKER_BATCH_SIZE + ")");
+    isolateBatchSizeOption.setLongOpt(FLAG_ISOLATE_BATCH_SIZE);
+    isolateBatchSizeOption.setArgName("num");
+    options.addOption(isolateBatchSizeOption);
+
+    final Option isolateMemoryOption = new Option(
+        SHORT_FLAG_ISOLATE_MEMORY, true,
+        "Sets the maximum heap size of each child process in megabytes (only "
+        + "used with --" + FLAG_ISOLATE_PROCESSES + "; Current: "
+        + ExtractionWorkerProcess.DEFAULT_MEMORY_IN_MB + ")");
+    isolateMemoryOption.setLongOpt(FLAG_ISOLATE_MEMORY);
+    isolateMemoryOption.setArgName("mb");
+    options.addOption(isolateMemoryOption);
+
+    final Option combineSplitSizeOption = new Option(
+        SHORT_FLAG_COMBINE_SPLIT_SIZE, true,
+        "Packs small input files into splits of up to this many bytes, "
+        + "preferring files on the same node or rack, so that each mapper "
+        + "processes several files (only used for " + MODE_HADOOP + " mode; "
+        + "Current: one split per file or block)");
+    combineSplitSizeOption.setLongOpt(FLAG_COMBINE_SPLIT_SIZE);
+    combineSplitSizeOption.setArgName("bytes");
+    options.addOption(combineSplitSizeOption);
     
     return options;
   }
@@ -371,7 +865,7 @@ public abstract class HtmlSentenceExtractor {
 
       switch (mode) {
       case MODE_LOCAL:
-        HtmlSentenceExtractor.extractLocal(extractor, config);
+        HtmlSentenceExtractor.extractLocal(extractor, config, reducedArgs);
         System.exit(0);
         break;
         
@@ -395,132 +889,20 @@ public abstract class HtmlSentenceExtractor {
     }
   }
   
-  private static void addInputRecursive(
-      final Queue<String> inputFileNames, final String inputFileName)
-  throws IOException {
-    final File inputFile = new File(inputFileName);
-    if (inputFile.isDirectory()) {
-      for (final String child : inputFile.list()) {
-        HtmlSentenceExtractor.addInputRecursive(
-            inputFileNames, inputFileName + File.separatorChar + child);
-      }
-    } else {
-      if (inputFileName.endsWith(".html")
-          || inputFileName.endsWith(".htm")) {
-        LOGGER.fine("Add text/html " + inputFileName);
-        inputFileNames.add(inputFileName);
-      } else if (inputFileName.endsWith(".warc")) {
-        LOGGER.fine("Add warc " + inputFileName);
-        inputFileNames.add(inputFileName);
-      } else if (inputFileName.endsWith(".warc.gz")) {
-        LOGGER.fine("Add warc.gz " + inputFileName);
-        inputFileNames.add(inputFileName);
-      } else {
-        LOGGER.finer("Unsupported file ending for " + inputFileName);
-      }
-    }
-  }
-  
   private static void extractLocal(
       final HtmlSentenceExtractor extractor,
-      final CommandLine config)
-  throws InterruptedException, InstantiationException,
-  IllegalAccessException, IOException {
+      final CommandLine config, final String[] args)
+  throws InterruptedException, IOException {
     extractor.configure(config);
 
-    final int numThreads =
-        Integer.parseInt(config.getOptionValue(FLAG_NUM_THREADS, "1"));
-    final boolean writeNames =
-        config.hasOption(HtmlSentenceExtractor.FLAG_WRITE_NAMES);
-    final Queue<String> inputFileNames = new ConcurrentLinkedQueue<>();
-    for (final String inputFileName : config.getOptionValues(FLAG_INPUT)) {
-      HtmlSentenceExtractor.addInputRecursive(inputFileNames, inputFileName);
-    }
-    final File outputDirectory = new File(config.getOptionValue(FLAG_OUTPUT));
-    outputDirectory.mkdirs();
-
-    final Thread[] threads = new Thread[numThreads];
-    for (int t = 0; t < numThreads; ++t) {
-      final int tId = t;
-      threads[t] = new Thread() {
-        private final int threadId = tId;
-        @Override
-        public void run() {
-          final File outputFile =  new File(
-              outputDirectory, String.format("part-m-%05d", this.threadId));
-          try (final BufferedWriter writer =
-              new BufferedWriter(new FileWriter(outputFile))) {
-            for (String inputFileName = inputFileNames.poll();
-                inputFileName != null;
-                inputFileName = inputFileNames.poll()) {
-              HtmlSentenceExtractor.extractLocalFile(
-                  inputFileName, extractor, writer, writeNames);
-            }
-          } catch (final IOException e) {
-            throw new UncheckedIOException(e);
-          }
-        }
-      };
-      threads[t].start();
-    }
-    
-    for (final Thread thread : threads) {
-      thread.join();
-    }
-  }
-  
-  private static void extractLocalFile(
-      final String inputFileName, final HtmlSentenceExtractor extractor,
-      final BufferedWriter writer, final boolean writeNames)
-  throws NullPointerException, IOException {
-    final File inputFile = new File(inputFileName);
-    System.err.println("Extracting " + inputFileName);
-    try {
-      if (inputFileName.endsWith(".html") || inputFileName.endsWith(".htm")) {
-        HtmlSentenceExtractor.extractLocalHtml(
-            FileUtils.readFileToString(inputFile), inputFileName, null, null,
-            extractor, writer, writeNames);
-      } else {
-        Warcs.getRecords(inputFile).forEachOrdered(record -> {
-          try {
-            final String html = Warcs.getHtml(record);
-            final WarcHTMLResponseRecord htmlRecord =
-                new WarcHTMLResponseRecord(record);
-            HtmlSentenceExtractor.extractLocalHtml(
-                html, inputFileName,
-                htmlRecord.getTargetURI(), htmlRecord.getTargetTrecID(),
-                extractor, writer, writeNames);
-          } catch (final Exception e) {}
-        });
-      }
-    } catch (final ExecutionException e) {
-      // Continue with next
-      System.err.println("EXTRACTION ERROR on parsing " + inputFile
-          + ": " + e.getMessage());
-    }
-  }
-  
-  private static void extractLocalHtml(
-      final String html, final String inputFileName,
-      final String uri, final String trecId,
-      final HtmlSentenceExtractor extractor, 
-      final BufferedWriter writer, final boolean writeNames)
-  throws NullPointerException, ExecutionException, IOException {
-    final List<String> sentences = extractor.extractSentences(html);
-    if (!sentences.isEmpty()) {
-      if (writeNames) {
-        writer.append("\n\n");
-        if (uri != null) { writer.append(uri); }
-        writer.append(' ');
-        if (trecId != null) { writer.append(trecId); }
-        writer.append(' ');
-        if (inputFileName != null) { writer.append(inputFileName); }
-        writer.append("\n");
-      }
-    }
-    for (final String sentence: sentences) {
-      writer.append(sentence).append('\n');
+    final LocalHtmlSentenceExtractionTool tool =
+        new LocalHtmlSentenceExtractionTool(extractor);
+    tool.configure(config);
+    if (config.hasOption(FLAG_ISOLATE_PROCESSES)) {
+      tool.setIsolateProcesses(args);
     }
+    tool.run(config.getOptionValues(FLAG_INPUT),
+        new File(config.getOptionValue(FLAG_OUTPUT)));
   }
   
   private static void printHelp(
@@ -1,13 +1,20 @@
 package de.aitools.aq.web.extractor;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.apache.commons.cli.CommandLine;
@@ -17,10 +24,20 @@ import org.apache.commons.cli.Options;
 
 import com.ibm.icu.text.BreakIterator;
 
+import de.aitools.aq.text.Segmenters;
 import de.aitools.ie.languagedetection.LanguageDetector;
+import net.htmlparser.jericho.CharacterReference;
+import net.htmlparser.jericho.EndTag;
+import net.htmlparser.jericho.EndTagType;
+import net.htmlparser.jericho.HTMLElementName;
+import net.htmlparser.jericho.HTMLElements;
 import net.htmlparser.jericho.Renderer;
 import net.htmlparser.jericho.Segment;
 import net.htmlparser.jericho.Source;
+import net.htmlparser.jericho.StartTag;
+import net.htmlparser.jericho.StartTagType;
+import net.htmlparser.jericho.StreamedSource;
+import net.htmlparser.jericho.Tag;
 
 /**
  * A basic sentence extractor based on the Jericho extraction library.
@@ -32,8 +49,16 @@ import net.htmlparser.jericho.Source;
  * In case you need to know whether sentences are from the same paragraph, you
  * can use {@link #setParagraphSeparator(String)}.
  * </p><p>
+ * Pages of at least {@link #getStreamingThreshold()} characters are not
+ * rendered with a full Jericho {@link Source}, which builds an index of all
+ * elements of the page, but walked through sequentially with a
+ * {@link StreamedSource} (see {@link #setStreamingThreshold(int)}).
+ * </p><p>
  * This class is designed to be extended further. This should be done by
- * overriding the {@link #isValidParagraph(String, Locale)} and
+ * adding checks to the {@link #getParagraphFilters()} and
+ * {@link #getSentenceFilters()}, which run cheap checks before the language
+ * detection and count how many paragraphs and sentences each check rejected,
+ * or by overriding the {@link #isValidParagraph(String, Locale)} and
  * {@link #isValidSentence(String, Locale)} checks (both of which always return
  * just <tt>true</tt> for this extractor).
  * </p><p>
@@ -71,6 +96,44 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
   private static String SHORT_FLAG_PARAGRAPH_SEPARATOR = "pw";
   
   private static String FLAG_PARAGRAPH_SEPARATOR = "separate-paragraphs-with";
+  
+  private static String SHORT_FLAG_STREAMING_THRESHOLD = "ps";
+  
+  private static String FLAG_STREAMING_THRESHOLD = "parse-streamed-from";
+
+  /**
+   * Default number of characters from which on pages are parsed with a
+   * {@link StreamedSource}.
+   */
+  public static final int DEFAULT_STREAMING_THRESHOLD = 1 << 20;
+
+  /**
+   * Streaming threshold for never parsing pages with a {@link StreamedSource}.
+   */
+  public static final int NO_STREAMING = Integer.MAX_VALUE;
+
+  private static final int NON_BREAKING_SPACE = 0xA0;
+
+  private static final char[] LIST_BULLETS = { '*', 'o', '+', '#' };
+
+  private static final int UNORDERED_LIST = -1;
+
+  /**
+   * Elements that end the current paragraph when streaming.
+   */
+  private static final Set<String> STREAMED_BLOCK_ELEMENTS =
+      JerichoHtmlSentenceExtractor.createStreamedBlockElements();
+
+  /**
+   * Elements whose content is skipped when streaming, like the
+   * {@link Renderer} does.
+   */
+  private static final Set<String> STREAMED_SKIPPED_ELEMENTS =
+      new HashSet<>(Arrays.asList(
+          HTMLElementName.SCRIPT, HTMLElementName.STYLE,
+          HTMLElementName.NOSCRIPT, HTMLElementName.TITLE,
+          HTMLElementName.SELECT, HTMLElementName.TEXTAREA,
+          HTMLElementName.BUTTON));
 
   //////////////////////////////////////////////////////////////////////////////
   //                                   MEMBERS                                //
@@ -83,6 +146,18 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
   private String paragraphSeparator;
   
   private boolean separateParagraphs;
+  
+  private int streamingThreshold;
+  
+  private final FilterCascade paragraphFilters;
+  
+  private final FilterCascade sentenceFilters;
+
+  private final boolean overridesExtractParagraphsFromString;
+
+  private final boolean overridesExtractParagraphs;
+
+  private final boolean overridesExtractSentencesFromParagraph;
 
   //////////////////////////////////////////////////////////////////////////////
   //                                CONSTRUCTORS                              //
@@ -93,8 +168,21 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
    * separate the output sentences by the paragraphs they came from. 
    */
   public JerichoHtmlSentenceExtractor() {
+    this.paragraphFilters = new FilterCascade().add(
+        "valid", true, FilterCascade.Cost.EXPENSIVE, this::isValidParagraph);
+    this.sentenceFilters = new FilterCascade().add(
+        "valid", true, FilterCascade.Cost.EXPENSIVE, this::isValidSentence);
     this.setExtractLanguage(Locale.ENGLISH);
     this.setDoNotSeparateParagraphs();
+    this.setStreamingThreshold(DEFAULT_STREAMING_THRESHOLD);
+
+    // subclasses written against the list hooks keep working through them
+    this.overridesExtractParagraphsFromString = this.overrides(
+        "extractParagraphs", String.class);
+    this.overridesExtractParagraphs = this.overridesExtractParagraphsFromString
+        || this.overrides("extractParagraphs", CharSequence.class);
+    this.overridesExtractSentencesFromParagraph = this.overrides(
+        "extractSentencesFromParagraph", String.class);
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -149,6 +237,62 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
   public String getParagraphSeparator() {
     return this.paragraphSeparator;
   }
+  
+  /**
+   * Gets the number of characters from which on pages are parsed with a
+   * {@link StreamedSource}.
+   * @see #setStreamingThreshold(int)
+   */
+  public int getStreamingThreshold() {
+    return this.streamingThreshold;
+  }
+  
+  /**
+   * Gets the checks that each paragraph must pass to be extracted.
+   * <p>
+   * Initially, it contains the language detection and a check named
+   * <tt>valid</tt> that calls {@link #isValidParagraph(String, Locale)}.
+   * Subclasses can add further checks. The checks that do not need the
+   * language run before the language detection.
+   * </p>
+   */
+  public FilterCascade getParagraphFilters() {
+    return this.paragraphFilters;
+  }
+  
+  /**
+   * Gets the checks that each sentence must pass to be extracted.
+   * <p>
+   * Initially, it contains a check named <tt>valid</tt> that calls
+   * {@link #isValidSentence(String, Locale)}. Subclasses can add further
+   * checks. The checks get the language of the paragraph of the sentence.
+   * </p>
+   */
+  public FilterCascade getSentenceFilters() {
+    return this.sentenceFilters;
+  }
+  
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Contains the statistics of the paragraph and sentence filters (see
+   * {@link FilterCascade#getStatistics()}), prefixed with <tt>paragraph.</tt>
+   * and <tt>sentence.</tt>, respectively.
+   * </p>
+   */
+  @Override
+  public Map<String, Long> getStatistics() {
+    final Map<String, Long> statistics = new TreeMap<>(super.getStatistics());
+    for (final Map.Entry<String, Long> statistic
+        : this.paragraphFilters.getStatistics().entrySet()) {
+      statistics.put("paragraph." + statistic.getKey(), statistic.getValue());
+    }
+    for (final Map.Entry<String, Long> statistic
+        : this.sentenceFilters.getStatistics().entrySet()) {
+      statistics.put("sentence." + statistic.getKey(), statistic.getValue());
+    }
+    return statistics;
+  }
 
   //////////////////////////////////////////////////////////////////////////////
   //                                CONFIGURATION                             //
@@ -300,6 +444,30 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     this.separateParagraphs = true;
   }
   
+  
+  /**
+   * Sets the number of characters from which on pages are parsed with a
+   * {@link StreamedSource} instead of being rendered from a {@link Source}.
+   * <p>
+   * A source parses all tags of the page and keeps them in memory, which for
+   * pages of several megabytes takes more time and memory than the rest of the
+   * extraction. Streaming only keeps the current paragraph in memory, but
+   * assembles the paragraphs itself: block-level elements, <tt>br</tt>, and
+   * <tt>tr</tt> end a paragraph, and the content of <tt>script</tt>,
+   * <tt>style</tt>, <tt>noscript</tt>, <tt>title</tt>, and form controls is
+   * skipped. The paragraphs are thus mostly, but not always, the same as
+   * those of the renderer. Use 0 to always stream and {@link #NO_STREAMING}
+   * to never stream.
+   * </p>
+   */
+  public void setStreamingThreshold(final int streamingThreshold) {
+    if (streamingThreshold < 0) {
+      throw new IllegalArgumentException(
+          "Negative streaming threshold: " + streamingThreshold);
+    }
+    this.streamingThreshold = streamingThreshold;
+  }
+  
   @Override
   public void configure(final CommandLine config) {
     super.configure(config);
@@ -313,6 +481,8 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
         config.getOptionValue(FLAG_PARAGRAPH_SEPARATOR);
     final boolean doNotSeparateParagraphs =
         config.hasOption(FLAG_DO_NOT_SEPARATE_PARAGRAPHS);
+    final String streamingThreshold =
+        config.getOptionValue(FLAG_STREAMING_THRESHOLD);
     
     if (detectAll) {
       this.setExtractAllLanguages();
@@ -327,93 +497,335 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     } else if (paragraphSeparator != null) {
       this.setParagraphSeparator(paragraphSeparator);
     }
+
+    if (streamingThreshold != null) {
+      this.setStreamingThreshold(Integer.parseInt(streamingThreshold));
+    }
   }
 
   //////////////////////////////////////////////////////////////////////////////
   //                               FUNCTIONALITY                              //
   //////////////////////////////////////////////////////////////////////////////
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Same as {@link #extract(CharSequence)}.
+   * </p>
+   */
   @Override
   protected List<String> extract(final String htmlInput)
-  throws NullPointerException, IllegalArgumentException {
+  throws NullPointerException, IllegalArgumentException,
+  CancellationException {
+    return this.extract((CharSequence) htmlInput);
+  }
+
+  /**
+   * Extracts sentences from given HTML.
+   * <p>
+   * Jericho copies the HTML before parsing it: {@link Source} copies character
+   * sequences other than strings into a string, and {@link StreamedSource}
+   * copies any character sequence into an array. Checks whether the attempt
+   * was cancelled (see {@link #checkCancelled()}) before each paragraph and
+   * sentence.
+   * </p>
+   * @param htmlInput The HTML input to extract sentences from
+   * @return The extracted sentences
+   * @throws IllegalArgumentException If the HTML can not be parsed
+   */
+  @Override
+  protected List<String> extract(final CharSequence htmlInput)
+  throws NullPointerException, IllegalArgumentException,
+  CancellationException {
+    final List<String> sentences = new ArrayList<>();
+    boolean firstParagraph = true;
+    for (final Paragraph paragraph : this.extractByParagraph(htmlInput)) {
+      if (firstParagraph) {
+        firstParagraph = false;
+      } else if (this.separateParagraphs) {
+        sentences.add(this.paragraphSeparator);
+      }
+      sentences.addAll(paragraph.getSentences());
+    }
+    return sentences;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Returns the paragraphs that have sentences, with their detected language.
+   * </p>
+   */
+  @Override
+  protected List<Paragraph> extractByParagraph(final CharSequence htmlInput)
+  throws NullPointerException, IllegalArgumentException,
+  CancellationException {
     if (htmlInput == null) {
       throw new NullPointerException();
     }
 
-    final List<String> paragraphs = this.extractParagraphs(htmlInput);
-    if (paragraphs == null) {
-      throw new IllegalArgumentException("Could not parse: " + htmlInput);
-    }
-    final List<String> sentences = new ArrayList<>();
-    boolean firstParagraph = true;
-    for (final String paragraph : paragraphs) {
-      final List<String> paragraphSentences =
-          this.extractSentencesFromParagraph(paragraph);
-      if (!paragraphSentences.isEmpty()) {
-        if (firstParagraph) {
-          firstParagraph = false;
-        } else if (this.separateParagraphs) {
-          sentences.add(this.paragraphSeparator);
+    final List<Paragraph> extracted = new ArrayList<>();
+    final Consumer<String> consumer = paragraph -> {
+      HtmlSentenceExtractor.checkCancelled();
+      if (this.overridesExtractSentencesFromParagraph) {
+        final List<String> paragraphSentences =
+            this.extractSentencesFromParagraph(paragraph);
+        if (!paragraphSentences.isEmpty()) {
+          extracted.add(new Paragraph(null, paragraphSentences));
         }
-        sentences.addAll(paragraphSentences);
+        return;
       }
+      final Locale paragraphLanguage =
+          this.paragraphFilters.test(paragraph, this::detectLanguage);
+      if (paragraphLanguage != null) {
+        final List<String> paragraphSentences =
+            this.extractSentencesFromParagraph(paragraph, paragraphLanguage);
+        if (!paragraphSentences.isEmpty()) {
+          extracted.add(new Paragraph(paragraphLanguage, paragraphSentences));
+        }
+      }
+    };
+
+    final boolean parsed;
+    if (this.overridesExtractParagraphs) {
+      final List<String> paragraphs = this.overridesExtractParagraphsFromString
+          ? this.extractParagraphs(htmlInput.toString())
+          : this.extractParagraphs(htmlInput);
+      parsed = paragraphs != null;
+      if (parsed) {
+        for (final String paragraph : paragraphs) {
+          if (!paragraph.isEmpty()) { consumer.accept(paragraph); }
+        }
+      }
+    } else {
+      parsed = this.extractParagraphs(htmlInput, consumer);
     }
-    return sentences;
+    if (!parsed) {
+      throw new IllegalArgumentException("Could not parse: " + htmlInput);
+    }
+    return extracted;
   }
   
   /**
    * Renders the HTML page with Jericho {@link Renderer}, normalizes sequences
    * of whitespace characters to a single whitespace, and returns the list of
-   * paragraphs. Return <tt>null</tt> on a fatal rendering error.
+   * non-empty paragraphs. Return <tt>null</tt> on a fatal rendering error.
+   * <p>
+   * The extraction only calls this method if a subclass overrides it, as it
+   * otherwise processes each paragraph while the page is rendered (see
+   * {@link #extractParagraphs(CharSequence, Consumer)}); an override of
+   * this method takes precedence over one of
+   * {@link #extractParagraphs(CharSequence)}.
+   * </p>
    */
   protected List<String> extractParagraphs(final String htmlInput) {
+    return this.extractParagraphs((CharSequence) htmlInput);
+  }
+
+  /**
+   * Renders the HTML page with Jericho {@link Renderer}, normalizes sequences
+   * of whitespace characters to a single whitespace, and returns the list of
+   * non-empty paragraphs. Return <tt>null</tt> on a fatal rendering error.
+   * <p>
+   * The extraction only calls this method if a subclass overrides it, as it
+   * otherwise processes each paragraph while the page is rendered (see
+   * {@link #extractParagraphs(CharSequence, Consumer)}).
+   * </p>
+   */
+  protected List<String> extractParagraphs(final CharSequence htmlInput) {
+    final List<String> paragraphs = new ArrayList<>();
+    if (!this.extractParagraphs(htmlInput, paragraphs::add)) {
+      return null;
+    }
+    return paragraphs;
+  }
+
+  /**
+   * Renders the HTML page with Jericho {@link Renderer}, normalizes sequences
+   * of whitespace characters to a single whitespace (see
+   * {@link #normalizeWhitespace(String)}), and passes each non-empty paragraph
+   * to given consumer while rendering. Returns <tt>false</tt> on a fatal
+   * rendering error. Pages of at least {@link #getStreamingThreshold()}
+   * characters are streamed instead (see
+   * {@link #extractParagraphsStreamed(CharSequence, Consumer)}).
+   * <p>
+   * The rendered text is cut into paragraphs at its line breaks as it is
+   * produced, so that only one paragraph is in memory at a time instead of the
+   * text of the whole page. Empty paragraphs are skipped, as they contain no
+   * sentences. Errors thrown by the consumer are passed on, as only errors
+   * thrown by Jericho mean that the page could not be rendered.
+   * </p>
+   */
+  protected boolean extractParagraphs(
+      final CharSequence htmlInput, final Consumer<String> paragraphs) {
+    if (htmlInput.length() >= this.streamingThreshold) {
+      return this.extractParagraphsStreamed(htmlInput, paragraphs);
+    }
+    final ParagraphAppender appender = new ParagraphAppender(
+        line -> {
+          final String paragraph = this.normalizeWhitespace(line);
+          if (!paragraph.isEmpty()) { paragraphs.accept(paragraph); }
+        });
     try {
       final Source source = new Source(htmlInput);
       final Segment segment = new Segment(source, 0, htmlInput.length());
       final Renderer renderer = new Renderer(segment);
       renderer.setMaxLineLength(0);
       renderer.setIncludeHyperlinkURLs(false);
-      final String[] paragraphsArray = renderer.toString().split("\n");
-      final List<String> paragraphs = new ArrayList<>(paragraphsArray.length);
-      for (final String paragraph : paragraphsArray) {
-        paragraphs.add(this.normalizeWhitespace(paragraph));
+      renderer.appendTo(appender);
+      appender.endParagraph();
+      return true;
+    } catch (final IOException e) {
+      // the appender does not throw them
+      throw new AssertionError(e);
+    } catch (final Error error) {
+      appender.rethrowIfFromConsumer(error);
+      return false;
+    }
+  }
+
+  /**
+   * Walks through the HTML page with a Jericho {@link StreamedSource},
+   * assembles the paragraphs from the text between block-level elements (see
+   * {@link #setStreamingThreshold(int)}), normalizes sequences of whitespace
+   * characters to a single whitespace (see
+   * {@link #normalizeWhitespace(String)}), and passes each non-empty paragraph
+   * to given consumer. Returns <tt>false</tt> on a fatal parsing error, but
+   * passes on errors thrown by the consumer.
+   * <p>
+   * Like the {@link Renderer}, line breaks in the source only end paragraphs
+   * within <tt>pre</tt> elements, and list items start with a bullet or their
+   * number, so that common markup gives the same paragraphs as when rendered.
+   * </p>
+   */
+  protected boolean extractParagraphsStreamed(
+      final CharSequence htmlInput, final Consumer<String> paragraphs) {
+    final Consumer<String> lines = line -> {
+      final String paragraph = this.normalizeWhitespace(line);
+      if (!paragraph.isEmpty()) { paragraphs.accept(paragraph); }
+    };
+    final ParagraphAppender appender = new ParagraphAppender(lines);
+    String skippedElement = null;
+    // like the renderer, line breaks only end paragraphs in preformatted text
+    int preformattedDepth = 0;
+    // like the renderer, list items start with a bullet by nesting level in
+    // unordered lists and with their number otherwise, so each list has the
+    // number of its last item or UNORDERED_LIST
+    final Deque<int[]> lists = new ArrayDeque<>();
+    lists.push(new int[] { 0 });
+    try (final StreamedSource source = new StreamedSource(htmlInput)) {
+      for (final Segment segment : source) {
+        if (segment instanceof Tag) {
+          final String name = ((Tag) segment).getName();
+          if (skippedElement != null) {
+            if (segment instanceof EndTag && name.equals(skippedElement)) {
+              skippedElement = null;
+            }
+          } else if (segment instanceof StartTag) {
+            final StartTag startTag = (StartTag) segment;
+            if (startTag.getStartTagType() == StartTagType.NORMAL) {
+              if (STREAMED_SKIPPED_ELEMENTS.contains(name)) {
+                if (!startTag.isSyntacticalEmptyElementTag()) {
+                  skippedElement = name;
+                }
+              } else if (STREAMED_BLOCK_ELEMENTS.contains(name)) {
+                appender.endParagraph();
+                if (startTag.isSyntacticalEmptyElementTag()) {
+                  // has no content
+                } else if (name.equals(HTMLElementName.PRE)) {
+                  ++preformattedDepth;
+                } else if (name.equals(HTMLElementName.UL)) {
+                  lists.push(new int[] { UNORDERED_LIST });
+                } else if (name.equals(HTMLElementName.OL)) {
+                  lists.push(new int[] { 0 });
+                } else if (name.equals(HTMLElementName.LI)) {
+                  final int[] list = lists.peek();
+                  if (list[0] == UNORDERED_LIST) {
+                    appender.append(LIST_BULLETS[
+                        (lists.size() - 2) % LIST_BULLETS.length]);
+                  } else {
+                    appender.append(Integer.toString(++list[0])).append('.');
+                  }
+                  appender.append(' ');
+                }
+              } else if (name.equals(HTMLElementName.TD)
+                  || name.equals(HTMLElementName.TH)) {
+                // like the renderer separates table cells
+                appender.append(' ');
+              }
+            }
+          } else if (((EndTag) segment).getEndTagType() == EndTagType.NORMAL
+              && STREAMED_BLOCK_ELEMENTS.contains(name)) {
+            appender.endParagraph();
+            if (name.equals(HTMLElementName.PRE) && preformattedDepth > 0) {
+              --preformattedDepth;
+            } else if ((name.equals(HTMLElementName.UL)
+                || name.equals(HTMLElementName.OL)) && lists.size() > 1) {
+              lists.pop();
+            }
+          }
+        } else if (skippedElement == null) {
+          if (segment instanceof CharacterReference) {
+            final int codePoint =
+                ((CharacterReference) segment).getCodePoint();
+            // like the renderer converts non-breaking spaces
+            appender.appendCodePoint(
+                codePoint == NON_BREAKING_SPACE ? ' ' : codePoint);
+          } else if (preformattedDepth > 0) {
+            appender.append(segment);
+          } else {
+            appender.appendCollapsed(segment);
+          }
+        }
       }
-      return paragraphs;
+      appender.endParagraph();
+      return true;
+    } catch (final IOException e) {
+      // a streamed source on a character sequence does not throw them
+      throw new AssertionError(e);
     } catch (final Error error) {
-      return null;
+      appender.rethrowIfFromConsumer(error);
+      return false;
     }
   }
 
   /**
    * Detects the language of the paragraph, checks whether it is a target
-   * language and it {@link #isValidParagraph(String, Locale)}, and returns the
+   * language and it passes the {@link #getParagraphFilters()}, and returns the
    * sentences from it. Returns an empty list when the paragraph is empty, from
    * a non-target language, or not valid.
+   * <p>
+   * The extraction only calls this method if a subclass overrides it, as it
+   * otherwise keeps the language that is detected here with the sentences.
+   * The paragraphs extracted through an override have no language.
+   * </p>
    */
   protected List<String> extractSentencesFromParagraph(final String paragraph) {
-    final Locale paragraphLanguage = this.detectLanguage(paragraph);
-    if (paragraphLanguage == null
-        || !this.isValidParagraph(paragraph, paragraphLanguage)) {
+    final Locale paragraphLanguage =
+        this.paragraphFilters.test(paragraph, this::detectLanguage);
+    if (paragraphLanguage == null) {
       return Collections.emptyList();
     }
     return this.extractSentencesFromParagraph(paragraph, paragraphLanguage);
   }
 
   /**
-   * Extract sentence from the given paragraph of given language. This is
-   * called after it was checked that the paragraph is in a target language and
-   * valid.
+   * Extract sentence from the given paragraph of given language that pass the
+   * {@link #getSentenceFilters()}. This is called after it was checked that the
+   * paragraph is in a target language and valid.
    */
   protected List<String> extractSentencesFromParagraph(
       final String paragraph, final Locale paragraphLanguage) {
-    // they are not thread-safe, so we create a new one each time
+    // they are not thread-safe, so each thread reuses its own one; the
+    // segments are collected before the sentence filters use a word segmenter
     final BreakIterator segmenter =
-        BreakIterator.getSentenceInstance(paragraphLanguage);
+        Segmenters.getSentenceInstance(paragraphLanguage);
 
     final List<String> sentences = new ArrayList<String>();
     for (final String sentence : this.getSegments(paragraph, segmenter)) {
+      HtmlSentenceExtractor.checkCancelled();
       if (!sentence.isEmpty()) {
-        if (this.isValidSentence(sentence, paragraphLanguage)) {
+        if (this.sentenceFilters.test(sentence, paragraphLanguage)) {
           sentences.add(sentence);
         }
       }
@@ -496,6 +908,35 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     return segments;
   }
 
+  /**
+   * Checks whether the class of this extractor or one of its superclasses
+   * below this class declares the method of given name and parameter types.
+   */
+  private boolean overrides(
+      final String name, final Class<?>... parameterTypes) {
+    for (Class<?> type = this.getClass();
+        type != JerichoHtmlSentenceExtractor.class;
+        type = type.getSuperclass()) {
+      try {
+        type.getDeclaredMethod(name, parameterTypes);
+        return true;
+      } catch (final NoSuchMethodException e) {
+        // not declared in this class
+      }
+    }
+    return false;
+  }
+
+  private static Set<String> createStreamedBlockElements() {
+    final Set<String> elements =
+        new HashSet<>(HTMLElements.getBlockLevelElementNames());
+    elements.addAll(Arrays.asList(
+        HTMLElementName.BR, HTMLElementName.HR, HTMLElementName.LI,
+        HTMLElementName.DD, HTMLElementName.DT, HTMLElementName.TR,
+        HTMLElementName.CAPTION, HTMLElementName.LEGEND));
+    return elements;
+  }
+
   //////////////////////////////////////////////////////////////////////////////
   //                                   PROGRAM                                //
   //////////////////////////////////////////////////////////////////////////////
@@ -552,6 +993,16 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     paragraphs.addOption(paragraphNotSeparateOption);
     options.addOptionGroup(paragraphs);
 
+    final Option streamingThresholdOption = new Option(
+        SHORT_FLAG_STREAMING_THRESHOLD, true,
+        "Configures this extractor to parse pages of at least <chars> "
+        + "characters sequentially, which needs less memory for large pages "
+        + "but assembles the paragraphs in a simpler way (Current: "
+        + DEFAULT_STREAMING_THRESHOLD + ")");
+    streamingThresholdOption.setLongOpt(FLAG_STREAMING_THRESHOLD);
+    streamingThresholdOption.setArgName("chars");
+    options.addOption(streamingThresholdOption);
+
     return options;
   }
   
@@ -559,4 +1010,107 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     HtmlSentenceExtractor.main(args, JerichoHtmlSentenceExtractor.class);
   }
 
+  /**
+   * Appendable that cuts the appended text into lines and passes each line to
+   * a consumer as soon as it is complete, reusing its buffer for the next one.
+   */
+  private static class ParagraphAppender implements Appendable {
+
+    private final Consumer<String> lines;
+
+    private final StringBuilder line;
+
+    private Error consumerError;
+
+    private ParagraphAppender(final Consumer<String> lines) {
+      this.lines = lines;
+      this.line = new StringBuilder();
+      this.consumerError = null;
+    }
+
+    @Override
+    public Appendable append(final CharSequence text) {
+      return this.append(text, 0, text.length());
+    }
+
+    @Override
+    public Appendable append(
+        final CharSequence text, final int start, final int end) {
+      int lineStart = start;
+      for (int i = start; i < end; ++i) {
+        if (text.charAt(i) == '\n') {
+          this.line.append(text, lineStart, i);
+          this.endParagraph();
+          lineStart = i + 1;
+        }
+      }
+      this.line.append(text, lineStart, end);
+      return this;
+    }
+
+    /**
+     * Appends given text with each sequence of whitespace characters (as
+     * matched by <tt>\\s</tt>) collapsed to a single space, so that line
+     * breaks in it do not end the paragraph.
+     */
+    private void appendCollapsed(final CharSequence text) {
+      for (int i = 0; i < text.length(); ++i) {
+        final char c = text.charAt(i);
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+            || c == '\f' || c == '\r') {
+          final int length = this.line.length();
+          if (length > 0 && this.line.charAt(length - 1) != ' ') {
+            this.line.append(' ');
+          }
+        } else {
+          this.line.append(c);
+        }
+      }
+    }
+
+    private Appendable appendCodePoint(final int codePoint) {
+      if (codePoint == '\n') {
+        this.endParagraph();
+      } else {
+        this.line.appendCodePoint(codePoint);
+      }
+      return this;
+    }
+
+    @Override
+    public Appendable append(final char c) {
+      if (c == '\n') {
+        this.endParagraph();
+      } else {
+        this.line.append(c);
+      }
+      return this;
+    }
+
+    /**
+     * Passes the current line to the consumer, if it is not empty.
+     */
+    private void endParagraph() {
+      if (this.line.length() > 0) {
+        final String paragraph = this.line.toString();
+        this.line.setLength(0);
+        try {
+          this.lines.accept(paragraph);
+        } catch (final Error error) {
+          this.consumerError = error;
+          throw error;
+        }
+      }
+    }
+
+    /**
+     * Throws given error again if the consumer threw it, as it then does not
+     * come from Jericho.
+     */
+    private void rethrowIfFromConsumer(final Error error) {
+      if (error == this.consumerError) { throw error; }
+    }
+
+  }
+
 }
@@ -0,0 +1,476 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Coordinates several local extraction runs that share the input files through
+ * lease files in a shared directory, so that each input file is processed by
+ * only one of them.
+ *
+ * <p>
+ * Each run (a <i>node</i>) has a unique name and adds the same input files to
+ * its coordinator. Its readers then take the next input file using
+ * {@link #acquire()}, which claims the file by creating a lease file for it.
+ * Lease files are created with {@link StandardOpenOption#CREATE_NEW}, which
+ * is atomic, so only one node gets each lease. The lease files of the node are
+ * touched every {@link #getHeartbeatIntervalInMillis()} milliseconds, and a
+ * lease whose file has not been touched for the lease timeout is expired. This
+ * happens when its node died, in which case another node can take the input
+ * file over.
+ * </p><p>
+ * The lease files of an input file are numbered by generation, starting at 0.
+ * To take over an expired lease, a node creates the lease file of the next
+ * generation, so that again only one node can win. A node that is restarted
+ * with the same name takes the leases it held back without waiting for them to
+ * expire. Once an input file has been processed completely,
+ * {@link #markDone(String)} creates a done file for it, which other nodes
+ * check before they try to acquire it. A node only takes each input file once.
+ * When it got no input file, it can wait for the leases of other nodes to end
+ * or expire using {@link #awaitInputs()}, so that all nodes end when all input
+ * files are done (or failed for each node that tried them).
+ * </p><p>
+ * The lease and done files are named by the SHA-1 hash of the input file name,
+ * so that all nodes must use the same path for each input file. The expiration
+ * compares the modification time set by one node with the clock of another, so
+ * that the clocks of the nodes must not differ by much compared to the lease
+ * timeout.
+ * </p><p>
+ * A node that takes an input file over gets the names of the nodes that held
+ * it before using {@link #getPreviousNodeNames(String)}, so that it can skip
+ * the documents for which they committed output already (see
+ * {@link ProgressJournal#adopt(String, File)}). Dead nodes can also be
+ * restarted with the same name to continue where they stopped. Note that a
+ * node whose lease expired while it was not dead but stalled, for example by
+ * a long pause of its machine, can still commit output for the input file
+ * afterwards, which then duplicates output of the node that took it over. The
+ * lease timeout should thus be well above the longest pause expected.
+ * </p>
+ */
+public class LeaseCoordinator implements Closeable {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final Logger LOGGER =
+      Logger.getLogger(LeaseCoordinator.class.getName());
+
+  /**
+   * Name of the lease directory in the output directory.
+   */
+  public static final String DIRECTORY_NAME = "_leases";
+
+  /**
+   * Default number of seconds after which a lease that was not renewed
+   * expires.
+   */
+  public static final int DEFAULT_LEASE_TIMEOUT_IN_SECONDS = 600;
+
+  /**
+   * Number of heartbeats within the lease timeout.
+   */
+  public static final int HEARTBEATS_PER_LEASE_TIMEOUT = 4;
+
+  private static final String NODE_DIRECTORY_PREFIX = "node-";
+
+  private static final String LEASE_FILE_FORMAT = "%s.%d.lease";
+
+  private static final String DONE_FILE_SUFFIX = ".done";
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final File directory;
+
+  private final String nodeName;
+
+  private final long leaseTimeoutInMillis;
+
+  private final Deque<String> pending;
+
+  private final Map<String, File> leases;
+
+  private int numAcquired;
+
+  private final Thread heartbeat;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new coordinator that uses given lease directory and starts its
+   * heartbeat.
+   * @param directory The lease directory, which is created if it does not
+   * exist
+   * @param nodeName The unique name of this node
+   * @param leaseTimeoutInSeconds The number of seconds after which a lease
+   * that was not renewed expires
+   */
+  public LeaseCoordinator(final File directory, final String nodeName,
+      final int leaseTimeoutInSeconds)
+  throws IOException {
+    if (directory == null) { throw new NullPointerException(); }
+    if (nodeName == null) { throw new NullPointerException(); }
+    if (nodeName.isEmpty() || nodeName.contains(File.separator)) {
+      throw new IllegalArgumentException("Invalid node name: " + nodeName);
+    }
+    if (leaseTimeoutInSeconds <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive lease timeout: " + leaseTimeoutInSeconds);
+    }
+    Files.createDirectories(directory.toPath());
+    this.directory = directory;
+    this.nodeName = nodeName;
+    this.leaseTimeoutInMillis = leaseTimeoutInSeconds * 1000L;
+    this.pending = new ArrayDeque<>();
+    this.leases = new HashMap<>();
+    this.numAcquired = 0;
+
+    this.heartbeat = new Thread(this::runHeartbeat, "lease-heartbeat");
+    this.heartbeat.setDaemon(true);
+    this.heartbeat.start();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the name of the output subdirectory of the node of given name.
+   */
+  public static String getNodeDirectoryName(final String nodeName) {
+    return NODE_DIRECTORY_PREFIX + nodeName;
+  }
+
+  /**
+   * Checks whether given name is the one of an output subdirectory of a node.
+   */
+  public static boolean isNodeDirectoryName(final String name) {
+    return name.startsWith(NODE_DIRECTORY_PREFIX)
+        && name.length() > NODE_DIRECTORY_PREFIX.length();
+  }
+
+  /**
+   * Gets the number of milliseconds between two renewals of the leases of this
+   * node.
+   */
+  public long getHeartbeatIntervalInMillis() {
+    return this.leaseTimeoutInMillis / HEARTBEATS_PER_LEASE_TIMEOUT;
+  }
+
+  /**
+   * Gets the number of input files that this node acquired.
+   */
+  public synchronized int getNumAcquired() {
+    return this.numAcquired;
+  }
+
+  /**
+   * Gets the names of the nodes other than this one that held the lease of the
+   * input file of given name before this node acquired it, in the order in
+   * which they held it.
+   */
+  public List<String> getPreviousNodeNames(final String inputFileName)
+  throws IOException {
+    final File lease;
+    synchronized (this) {
+      lease = this.leases.get(inputFileName);
+    }
+    if (lease == null) {
+      throw new IllegalStateException("No lease for " + inputFileName);
+    }
+    final String key = LeaseCoordinator.getKey(inputFileName);
+    final int generation = LeaseCoordinator.getGeneration(lease);
+    final Set<String> nodeNames = new LinkedHashSet<>();
+    for (int g = 0; g < generation; ++g) {
+      try {
+        nodeNames.add(new String(Files.readAllBytes(
+            this.getLeaseFile(key, g).toPath()), StandardCharsets.UTF_8));
+      } catch (final NoSuchFileException e) {
+        // removed as the node marked it done before it was taken over
+      }
+    }
+    nodeNames.remove(this.nodeName);
+    return new ArrayList<>(nodeNames);
+  }
+
+  /**
+   * Checks whether the input file of given name has been processed completely
+   * by any node.
+   */
+  public boolean isDone(final String inputFileName) {
+    return this.getDoneFile(LeaseCoordinator.getKey(inputFileName)).exists();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Adds given input files to the ones to acquire.
+   */
+  public synchronized void addInputs(final Collection<String> inputFileNames) {
+    this.pending.addAll(inputFileNames);
+  }
+
+  /**
+   * Acquires the lease of the next input file that is neither done nor leased
+   * by another node.
+   * @return The name of the input file, or <tt>null</tt> if there is none
+   * right now
+   * @see #awaitInputs()
+   */
+  public synchronized String acquire() throws IOException {
+    for (int i = this.pending.size(); i > 0; --i) {
+      final String inputFileName = this.pending.pollFirst();
+      if (!this.isDone(inputFileName)) {
+        if (this.tryAcquire(inputFileName)) {
+          ++this.numAcquired;
+          return inputFileName;
+        }
+        this.pending.addLast(inputFileName);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Waits until an input file that this node did not acquire yet is neither
+   * done nor leased by another node, or until all are done.
+   * @return Whether there is an input file to acquire
+   */
+  public boolean awaitInputs() throws IOException, InterruptedException {
+    while (true) {
+      synchronized (this) {
+        this.pending.removeIf(this::isDone);
+        if (this.pending.isEmpty()) { return false; }
+        for (final String inputFileName : this.pending) {
+          if (this.isAvailable(inputFileName)) { return true; }
+        }
+      }
+      Thread.sleep(this.getHeartbeatIntervalInMillis());
+    }
+  }
+
+  /**
+   * Marks the input file of given name as done and removes its lease.
+   */
+  public void markDone(final String inputFileName) throws IOException {
+    final String key = LeaseCoordinator.getKey(inputFileName);
+    try {
+      Files.createFile(this.getDoneFile(key).toPath());
+    } catch (final FileAlreadyExistsException e) {
+      // Done by a node that took over, keep it
+    }
+    final File lease;
+    synchronized (this) {
+      lease = this.leases.remove(inputFileName);
+    }
+    if (lease != null) {
+      Files.deleteIfExists(lease.toPath());
+    }
+  }
+
+  /**
+   * Marks the input files that this node did not acquire yet as done if given
+   * predicate holds for them, like when the node processed them in an earlier
+   * run but died before it could mark them.
+   */
+  public synchronized void markDone(final Predicate<String> isDone)
+  throws IOException {
+    for (final String inputFileName : this.pending) {
+      if (isDone.test(inputFileName)) { this.markDone(inputFileName); }
+    }
+  }
+
+  /**
+   * Expires the lease of the input file of given name without marking it as
+   * done, like when it could not be read, so that other nodes can take it over
+   * without waiting for the lease to expire. The lease file is kept so that
+   * they know that this node held it (see
+   * {@link #getPreviousNodeNames(String)}).
+   */
+  public void release(final String inputFileName) throws IOException {
+    final File lease;
+    synchronized (this) {
+      lease = this.leases.remove(inputFileName);
+    }
+    if (lease != null && lease.exists() && !lease.setLastModified(
+        System.currentTimeMillis() - 2 * this.leaseTimeoutInMillis)) {
+      LOGGER.warning("Could not expire lease " + lease);
+    }
+  }
+
+  /**
+   * Stops the heartbeat. Leases of input files that are not done expire
+   * afterwards, so that other nodes can take them over.
+   */
+  @Override
+  public void close() throws IOException {
+    this.heartbeat.interrupt();
+    try {
+      this.heartbeat.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean isAvailable(final String inputFileName) throws IOException {
+    final File lease = this.getCurrentLeaseFile(inputFileName);
+    final long lastModified = lease.lastModified();
+    return lastModified == 0 || this.isOwnLease(lease)
+        || this.isExpired(lastModified);
+  }
+
+  private boolean isExpired(final long lastModified) {
+    final long age = System.currentTimeMillis() - lastModified;
+    return age > this.leaseTimeoutInMillis;
+  }
+
+  private boolean tryAcquire(final String inputFileName) throws IOException {
+    final File lease = this.getCurrentLeaseFile(inputFileName);
+    final long lastModified = lease.lastModified();
+    if (lastModified == 0) {
+      // no lease yet, or removed as the input file was done meanwhile
+      if (this.tryCreateLease(lease)) {
+        if (this.isDone(inputFileName)) {
+          Files.delete(lease.toPath());
+          return false;
+        }
+        this.leases.put(inputFileName, lease);
+        return true;
+      }
+      return false;
+    }
+
+    if (this.isOwnLease(lease)) {
+      LOGGER.info("Taking back lease for " + inputFileName);
+      lease.setLastModified(System.currentTimeMillis());
+      this.leases.put(inputFileName, lease);
+      return true;
+    }
+
+    if (this.isExpired(lastModified)) {
+      final File next = this.getNextLeaseFile(lease);
+      if (this.tryCreateLease(next)) {
+        LOGGER.info("Taking over expired lease for " + inputFileName);
+        this.leases.put(inputFileName, next);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean tryCreateLease(final File lease) throws IOException {
+    try (final OutputStream output = Files.newOutputStream(lease.toPath(),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      output.write(this.nodeName.getBytes(StandardCharsets.UTF_8));
+      return true;
+    } catch (final FileAlreadyExistsException e) {
+      return false;
+    }
+  }
+
+  private boolean isOwnLease(final File lease) throws IOException {
+    try {
+      return new String(Files.readAllBytes(lease.toPath()),
+          StandardCharsets.UTF_8).equals(this.nodeName);
+    } catch (final NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  private void runHeartbeat() {
+    try {
+      while (true) {
+        Thread.sleep(this.getHeartbeatIntervalInMillis());
+        final Map<String, File> leases;
+        synchronized (this) {
+          leases = new HashMap<>(this.leases);
+        }
+        final long now = System.currentTimeMillis();
+        for (final Map.Entry<String, File> entry : leases.entrySet()) {
+          final File lease = entry.getValue();
+          if (!lease.setLastModified(now) && lease.exists()) {
+            LOGGER.warning("Could not renew lease " + lease);
+          }
+          if (this.getNextLeaseFile(lease).exists()) {
+            LOGGER.warning("Lease for " + entry.getKey()
+                + " was taken over by another node");
+            synchronized (this) {
+              this.leases.remove(entry.getKey());
+            }
+          }
+        }
+      }
+    } catch (final InterruptedException e) {
+      // closed
+    }
+  }
+
+  private File getCurrentLeaseFile(final String inputFileName) {
+    final String key = LeaseCoordinator.getKey(inputFileName);
+    int generation = 0;
+    while (this.getLeaseFile(key, generation + 1).exists()) {
+      ++generation;
+    }
+    return this.getLeaseFile(key, generation);
+  }
+
+  private File getNextLeaseFile(final File lease) {
+    final String key = lease.getName().split("\\.", 2)[0];
+    return this.getLeaseFile(key, LeaseCoordinator.getGeneration(lease) + 1);
+  }
+
+  private static int getGeneration(final File lease) {
+    return Integer.parseInt(lease.getName().split("\\.", 3)[1]);
+  }
+
+  private File getLeaseFile(final String key, final int generation) {
+    return new File(this.directory,
+        String.format(LEASE_FILE_FORMAT, key, generation));
+  }
+
+  private File getDoneFile(final String key) {
+    return new File(this.directory, key + DONE_FILE_SUFFIX);
+  }
+
+  private static String getKey(final String inputFileName) {
+    try {
+      final byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+          inputFileName.getBytes(StandardCharsets.UTF_8));
+      final StringBuilder key = new StringBuilder();
+      for (final byte b : hash) {
+        key.append(String.format("%02x", b));
+      }
+      return key.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-1
+      throw new AssertionError(e);
+    }
+  }
+
+}
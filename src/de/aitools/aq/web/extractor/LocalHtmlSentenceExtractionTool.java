@@ -0,0 +1,1399 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Class that runs an {@link HtmlSentenceExtractor} on the local machine.
+ *
+ * <p>
+ * If you want to write a new extractor, you don't have to care about this
+ * class, as the {@link HtmlSentenceExtractor} base class does the interfacing
+ * for you.
+ * </p><p>
+ * Extraction runs as a pipeline of three stages that are connected by bounded
+ * queues:
+ * </p><ol>
+ * <li>Reader threads take input files from a queue, read and decompress them,
+ * parse the HTTP responses of the WARC records in them, and put the bytes of
+ * the HTML documents on the document queue.</li>
+ * <li>Extraction threads take single documents from the document queue,
+ * decode them (see {@link HtmlDecoder}), extract the sentences, and put them
+ * on the result queue. As work is
+ * distributed on the level of documents, all extraction threads are busy even
+ * if the input consists of a single large WARC file.</li>
+ * <li>Writer threads take the results from the result queue and write them to
+ * the output directory in the output format (see {@link DocumentWriter}), one
+ * file named <tt>part-m-&lt;id&gt;</tt> per writer thread. The files can be
+ * compressed (see {@link OutputCompression}) and rolled over to a new file
+ * after a number of bytes or documents (see {@link RollingDocumentWriter}).
+ * </li>
+ * </ol><p>
+ * The number of threads can be set for each stage separately, so that reading,
+ * extracting, and writing happen at the same time. When a queue is full, the
+ * stage before it waits for the next stage to catch up, so the number of
+ * documents in memory stays bounded. The depth of each queue and the progress
+ * of each stage are printed to standard error in regular intervals (see
+ * {@link #setStatusIntervalInSeconds(int)}).
+ * </p><p>
+ * Optionally, the extraction threads can run the extractor in child processes
+ * (see {@link #setIsolateProcesses(String[])}) to contain crashes of the
+ * extraction libraries. Each extraction thread then sends the documents in
+ * batches to an own {@link ExtractionWorkerProcess}.
+ * </p><p>
+ * Long runs can be made resumable (see {@link #setResume(boolean)}): the
+ * progress is then recorded in a {@link ProgressJournal} in the output
+ * directory each time an output file is committed, and a new run in the same
+ * output directory skips the input files and documents that are already in
+ * committed output files.
+ * </p><p>
+ * To process the input on several machines that share a file system, each
+ * machine can process one shard of the input files (see
+ * {@link #setShard(int, int)}), after which the outputs of all shards are
+ * merged using the {@link ShardMerger}. As shards of the same number of files
+ * can take very different times, the machines can instead share the input
+ * files dynamically (see {@link #setCoordination(String)}) through a
+ * {@link LeaseCoordinator}. When a run is complete, its counts and timing are
+ * written to the output directory as a {@link RunSummary}.
+ * </p>
+ */
+public class LocalHtmlSentenceExtractionTool {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final Logger LOGGER =
+      Logger.getLogger(LocalHtmlSentenceExtractionTool.class.getName());
+
+  /**
+   * Default number of documents per extraction thread that may wait in each
+   * queue.
+   */
+  public static final int DEFAULT_QUEUE_SIZE_PER_THREAD = 16;
+
+  /**
+   * Default number of seconds between two status messages.
+   */
+  public static final int DEFAULT_STATUS_INTERVAL_IN_SECONDS = 60;
+
+  /**
+   * Value to use in {@link #setStatusIntervalInSeconds(int)} to specify that no
+   * status messages should be printed.
+   */
+  public static final int NO_STATUS = 0;
+
+  /**
+   * Default number of documents sent to a worker process at once when
+   * extracting in child processes.
+   */
+  public static final int DEFAULT_WORKER_BATCH_SIZE = 16;
+
+  /**
+   * Value to use as shard in {@link #setShard(int, int)} to specify that all
+   * input files should be processed.
+   */
+  public static final int NO_SHARD = -1;
+
+  private static final Document END_OF_INPUT =
+      new Document(null, null, null, null, null, null,
+          ExtractedDocument.NO_OFFSET, 0);
+
+  private static final Result END_OF_RESULTS = new Result(END_OF_INPUT, null);
+
+  // how often the main thread checks whether a stage failed while waiting
+  private static final long FAILURE_CHECK_INTERVAL_IN_MILLIS = 1000;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final HtmlSentenceExtractor extractor;
+
+  private final HtmlDecoder decoder;
+
+  private final WarcRecordFilter filter;
+
+  private int numReaderThreads;
+
+  private int numExtractionThreads;
+
+  private int numWriterThreads;
+
+  private int queueSize;
+
+  private int statusIntervalInSeconds;
+
+  private boolean writeNames;
+
+  private DocumentWriter.Format outputFormat;
+
+  private OutputCompression outputCompression;
+
+  private long maxBytesPerFile;
+
+  private long maxDocumentsPerFile;
+
+  private boolean resume;
+
+  private ProgressJournal journal;
+
+  private int shard;
+
+  private int numShards;
+
+  private String nodeName;
+
+  private int leaseTimeoutInSeconds;
+
+  private LeaseCoordinator coordinator;
+
+  private String[] workerArgs;
+
+  private int workerBatchSize;
+
+  private int workerMemoryInMb;
+
+  private final AtomicLong numDocumentsRead;
+
+  private final AtomicLong numDocumentsExtracted;
+
+  private final AtomicLong numDocumentsWritten;
+
+  private final AtomicLong numExtractionErrors;
+
+  private final AtomicLong numWorkerRestarts;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new tool for running given (already configured) extractor with
+   * one thread per stage.
+   */
+  public LocalHtmlSentenceExtractionTool(
+      final HtmlSentenceExtractor extractor) {
+    if (extractor == null) { throw new NullPointerException(); }
+    this.extractor = extractor;
+    this.decoder = new HtmlDecoder();
+    this.filter = new WarcRecordFilter();
+    this.numDocumentsRead = new AtomicLong();
+    this.numDocumentsExtracted = new AtomicLong();
+    this.numDocumentsWritten = new AtomicLong();
+    this.numExtractionErrors = new AtomicLong();
+    this.numWorkerRestarts = new AtomicLong();
+    this.setNumThreads(1);
+    this.workerArgs = null;
+    this.setWorkerBatchSize(DEFAULT_WORKER_BATCH_SIZE);
+    this.setWorkerMemoryInMb(ExtractionWorkerProcess.DEFAULT_MEMORY_IN_MB);
+    this.setStatusIntervalInSeconds(DEFAULT_STATUS_INTERVAL_IN_SECONDS);
+    this.setWriteNames(false);
+    this.setOutputFormat(DocumentWriter.DEFAULT_FORMAT);
+    this.setOutputCompression(
+        OutputCompression.forName(OutputCompression.NONE));
+    this.setMaxBytesPerFile(RollingDocumentWriter.NO_LIMIT);
+    this.setMaxDocumentsPerFile(RollingDocumentWriter.NO_LIMIT);
+    this.setResume(false);
+    this.journal = null;
+    this.setShard(NO_SHARD, 1);
+    this.setCoordination(null);
+    this.setLeaseTimeoutInSeconds(
+        LeaseCoordinator.DEFAULT_LEASE_TIMEOUT_IN_SECONDS);
+    this.coordinator = null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the decoder that the extraction threads use to decode the documents,
+   * which can be configured before running this tool.
+   */
+  public HtmlDecoder getDecoder() {
+    return this.decoder;
+  }
+
+  /**
+   * Gets the filter that the reader threads use to skip WARC records based on
+   * their header, which can be configured before running this tool and counts
+   * the skipped records.
+   */
+  public WarcRecordFilter getFilter() {
+    return this.filter;
+  }
+
+  /**
+   * Gets the number of documents the readers put on the document queue so far.
+   */
+  public long getNumDocumentsRead() {
+    return this.numDocumentsRead.get();
+  }
+
+  /**
+   * Gets the number of documents the sentences were extracted from so far.
+   */
+  public long getNumDocumentsExtracted() {
+    return this.numDocumentsExtracted.get();
+  }
+
+  /**
+   * Gets the number of documents the sentences were written for so far.
+   */
+  public long getNumDocumentsWritten() {
+    return this.numDocumentsWritten.get();
+  }
+
+  /**
+   * Gets the number of documents for which the extraction failed so far.
+   */
+  public long getNumExtractionErrors() {
+    return this.numExtractionErrors.get();
+  }
+
+  /**
+   * Gets the number of times a worker process had to be restarted so far when
+   * extracting in child processes.
+   */
+  public long getNumWorkerRestarts() {
+    return this.numWorkerRestarts.get();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Configures this tool based on command line arguments.
+   * <p>
+   * The given <tt>CommandLine</tt> <b>must</b> be one created from an
+   * {@link org.apache.commons.cli.Options} object obtained from the extractor
+   * of this tool.
+   * </p>
+   * @param config The parsed configuration
+   */
+  public void configure(final CommandLine config) {
+    this.setNumThreads(Integer.parseInt(config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_NUM_THREADS, "1")));
+
+    final String numReaderThreads = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_NUM_READER_THREADS);
+    if (numReaderThreads != null) {
+      this.setNumReaderThreads(Integer.parseInt(numReaderThreads));
+    }
+    final String numWriterThreads = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_NUM_WRITER_THREADS);
+    if (numWriterThreads != null) {
+      this.setNumWriterThreads(Integer.parseInt(numWriterThreads));
+    }
+    final String queueSize = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_QUEUE_SIZE);
+    if (queueSize != null) {
+      this.setQueueSize(Integer.parseInt(queueSize));
+    }
+    final String statusInterval = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_STATUS_INTERVAL);
+    if (statusInterval != null) {
+      this.setStatusIntervalInSeconds(Integer.parseInt(statusInterval));
+    }
+
+    final String workerBatchSize = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_ISOLATE_BATCH_SIZE);
+    if (workerBatchSize != null) {
+      this.setWorkerBatchSize(Integer.parseInt(workerBatchSize));
+    }
+    final String workerMemory = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_ISOLATE_MEMORY);
+    if (workerMemory != null) {
+      this.setWorkerMemoryInMb(Integer.parseInt(workerMemory));
+    }
+
+    this.setWriteNames(
+        config.hasOption(HtmlSentenceExtractor.FLAG_WRITE_NAMES));
+    final String outputFormat = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_OUTPUT_FORMAT);
+    if (outputFormat != null) {
+      this.setOutputFormat(DocumentWriter.Format.parse(outputFormat));
+    }
+    final String outputCompression = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_OUTPUT_COMPRESSION);
+    if (outputCompression != null) {
+      this.setOutputCompression(OutputCompression.forName(outputCompression));
+    }
+    final String maxBytesPerFile = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_ROLL_BYTES);
+    if (maxBytesPerFile != null) {
+      this.setMaxBytesPerFile(Long.parseLong(maxBytesPerFile));
+    }
+    final String maxDocumentsPerFile = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_ROLL_RECORDS);
+    if (maxDocumentsPerFile != null) {
+      this.setMaxDocumentsPerFile(Long.parseLong(maxDocumentsPerFile));
+    }
+    this.setResume(config.hasOption(HtmlSentenceExtractor.FLAG_RESUME));
+    final String shard = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_SHARD);
+    if (shard != null) {
+      final String[] shardAndNumShards = shard.split("/", 2);
+      if (shardAndNumShards.length != 2) {
+        throw new IllegalArgumentException("Invalid shard: " + shard);
+      }
+      this.setShard(Integer.parseInt(shardAndNumShards[0]),
+          Integer.parseInt(shardAndNumShards[1]));
+    }
+    this.setCoordination(
+        config.getOptionValue(HtmlSentenceExtractor.FLAG_COORDINATE));
+    final String leaseTimeout = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_LEASE_TIMEOUT);
+    if (leaseTimeout != null) {
+      this.setLeaseTimeoutInSeconds(Integer.parseInt(leaseTimeout));
+    }
+    this.decoder.setDetectCharset(
+        config.hasOption(HtmlSentenceExtractor.FLAG_DETECT_CHARSET));
+
+    final String filterPayloadType = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_FILTER_PAYLOAD_TYPE);
+    if (filterPayloadType != null) {
+      this.filter.setPayloadTypePattern(Pattern.compile(filterPayloadType));
+    }
+    final String filterMinLength = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_FILTER_MIN_LENGTH);
+    if (filterMinLength != null) {
+      this.filter.setMinContentLength(Long.parseLong(filterMinLength));
+    }
+    final String filterMaxLength = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_FILTER_MAX_LENGTH);
+    if (filterMaxLength != null) {
+      this.filter.setMaxContentLength(Long.parseLong(filterMaxLength));
+    }
+    final String filterUri = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_FILTER_URI);
+    if (filterUri != null) {
+      this.filter.setUriPattern(Pattern.compile(filterUri));
+    }
+    final String filterUriExclude = config.getOptionValue(
+        HtmlSentenceExtractor.FLAG_FILTER_URI_EXCLUDE);
+    if (filterUriExclude != null) {
+      this.filter.setExcludedUriPattern(Pattern.compile(filterUriExclude));
+    }
+  }
+
+  /**
+   * Sets the number of threads of each stage to the given number, and sets the
+   * size of the queues to {@link #DEFAULT_QUEUE_SIZE_PER_THREAD} times that
+   * number.
+   */
+  public void setNumThreads(final int numThreads) {
+    this.setNumReaderThreads(numThreads);
+    this.setNumExtractionThreads(numThreads);
+    this.setNumWriterThreads(numThreads);
+    this.setQueueSize(numThreads * DEFAULT_QUEUE_SIZE_PER_THREAD);
+  }
+
+  /**
+   * Sets the number of threads that read and decode input files. At most one
+   * thread is used per input file.
+   */
+  public void setNumReaderThreads(final int numReaderThreads) {
+    LocalHtmlSentenceExtractionTool.checkNumThreads(numReaderThreads);
+    this.numReaderThreads = numReaderThreads;
+  }
+
+  /**
+   * Sets the number of threads that extract sentences from documents.
+   */
+  public void setNumExtractionThreads(final int numExtractionThreads) {
+    LocalHtmlSentenceExtractionTool.checkNumThreads(numExtractionThreads);
+    this.numExtractionThreads = numExtractionThreads;
+  }
+
+  /**
+   * Sets the number of threads that write the extracted sentences, which is
+   * also the number of output files.
+   */
+  public void setNumWriterThreads(final int numWriterThreads) {
+    LocalHtmlSentenceExtractionTool.checkNumThreads(numWriterThreads);
+    this.numWriterThreads = numWriterThreads;
+  }
+
+  /**
+   * Sets the maximum number of documents that may wait in each queue between
+   * two stages.
+   */
+  public void setQueueSize(final int queueSize) {
+    if (queueSize <= 0) {
+      throw new IllegalArgumentException("Non-positive queue size: " + queueSize);
+    }
+    this.queueSize = queueSize;
+  }
+
+  /**
+   * Sets the number of seconds between two status messages on the queue depths
+   * and stage progress, or {@link #NO_STATUS} to print none.
+   */
+  public void setStatusIntervalInSeconds(final int statusIntervalInSeconds) {
+    if (statusIntervalInSeconds < 0) {
+      throw new IllegalArgumentException(
+          "Negative status interval: " + statusIntervalInSeconds);
+    }
+    this.statusIntervalInSeconds = statusIntervalInSeconds;
+  }
+
+  /**
+   * Sets whether to separate the sentences from different documents by two
+   * empty lines and add a line with the URI, TREC-ID, and file name of the
+   * document before them.
+   */
+  public void setWriteNames(final boolean writeNames) {
+    this.writeNames = writeNames;
+  }
+
+  /**
+   * Sets the format of the output files. For formats with paragraphs, the
+   * extraction threads extract the sentences by paragraph (see
+   * {@link HtmlSentenceExtractor#extractSentencesByParagraph(CharSequence)}).
+   */
+  public void setOutputFormat(final DocumentWriter.Format outputFormat) {
+    if (outputFormat == null) { throw new NullPointerException(); }
+    this.outputFormat = outputFormat;
+  }
+
+  /**
+   * Sets the compression of the output files.
+   */
+  public void setOutputCompression(final OutputCompression outputCompression) {
+    if (outputCompression == null) { throw new NullPointerException(); }
+    this.outputCompression = outputCompression;
+  }
+
+  /**
+   * Sets the number of (compressed) bytes after which a writer thread starts
+   * a new output file, or {@link RollingDocumentWriter#NO_LIMIT}.
+   */
+  public void setMaxBytesPerFile(final long maxBytesPerFile) {
+    if (maxBytesPerFile <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of bytes: " + maxBytesPerFile);
+    }
+    this.maxBytesPerFile = maxBytesPerFile;
+  }
+
+  /**
+   * Sets the number of documents after which a writer thread starts a new
+   * output file, or {@link RollingDocumentWriter#NO_LIMIT}.
+   */
+  public void setMaxDocumentsPerFile(final long maxDocumentsPerFile) {
+    if (maxDocumentsPerFile <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of documents: " + maxDocumentsPerFile);
+    }
+    this.maxDocumentsPerFile = maxDocumentsPerFile;
+  }
+
+  /**
+   * Sets whether to record the progress in a {@link ProgressJournal} in the
+   * output directory, and to resume from it if it exists.
+   * <p>
+   * Progress is recorded each time an output file is committed, so a resumed
+   * run only skips the documents in output files that were complete when the
+   * previous run was aborted. Output files thus have to be rolled over
+   * regularly (see {@link #setMaxBytesPerFile(long)} and
+   * {@link #setMaxDocumentsPerFile(long)}), as otherwise nothing would be
+   * recorded before the run is complete, and resuming is rejected without
+   * either limit when the run starts. The documents of an input file are
+   * identified by their order in the file, so a resumed run has to use the
+   * same input files and filters. Compressed WARC files that are compressed
+   * per record are read using a {@link GzipWarcReader}, so that the readers
+   * can start at the offset of the first missing record; the offsets of their
+   * documents in the output are then those of the gzip members.
+   * </p>
+   */
+  public void setResume(final boolean resume) {
+    this.resume = resume;
+  }
+
+  /**
+   * Sets this tool to only process the input files of given shard (see
+   * {@link ShardMerger#getShard(String, int)}) and to write to the
+   * subdirectory of the shard in the output directory (see
+   * {@link ShardMerger#getShardDirectoryName(int, int)}), or to process all
+   * input files if the shard is {@link #NO_SHARD}.
+   */
+  public void setShard(final int shard, final int numShards) {
+    if (numShards <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of shards: " + numShards);
+    }
+    if (shard != NO_SHARD && (shard < 0 || shard >= numShards)) {
+      throw new IllegalArgumentException(
+          "Invalid shard: " + shard + "/" + numShards);
+    }
+    this.shard = shard;
+    this.numShards = numShards;
+  }
+
+  /**
+   * Sets this tool to share the input files with other processes that use the
+   * same output directory as node of given unique name, or to process all
+   * input files if the name is <tt>null</tt>.
+   * <p>
+   * The input files are claimed through a {@link LeaseCoordinator} in the
+   * {@link LeaseCoordinator#DIRECTORY_NAME} subdirectory of the output
+   * directory, and the output is written to the subdirectory of the node (see
+   * {@link LeaseCoordinator#getNodeDirectoryName(String)}). The progress is
+   * recorded as with {@link #setResume(boolean)}, which is needed to know when
+   * an input file is done, so that a node that died can be restarted with the
+   * same name to continue. Cannot be used together with
+   * {@link #setShard(int, int)}.
+   * </p>
+   */
+  public void setCoordination(final String nodeName) {
+    this.nodeName = nodeName;
+  }
+
+  /**
+   * Sets the number of seconds after which the lease of a node on an input
+   * file expires if the node did not renew it.
+   * @see #setCoordination(String)
+   */
+  public void setLeaseTimeoutInSeconds(final int leaseTimeoutInSeconds) {
+    if (leaseTimeoutInSeconds <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive lease timeout: " + leaseTimeoutInSeconds);
+    }
+    this.leaseTimeoutInSeconds = leaseTimeoutInSeconds;
+  }
+
+  /**
+   * Configures this tool to run the extractor in child processes, one per
+   * extraction thread, that are configured using the given command line
+   * arguments (without the mode). Use <tt>null</tt> to run the extractor in
+   * this process.
+   * @see ExtractionWorkerProcess
+   */
+  public void setIsolateProcesses(final String[] workerArgs) {
+    this.workerArgs = workerArgs;
+  }
+
+  /**
+   * Sets the number of documents sent to a worker process at once when
+   * extracting in child processes.
+   */
+  public void setWorkerBatchSize(final int workerBatchSize) {
+    if (workerBatchSize <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive batch size: " + workerBatchSize);
+    }
+    this.workerBatchSize = workerBatchSize;
+  }
+
+  /**
+   * Sets the maximum heap size of each worker process when extracting in child
+   * processes.
+   */
+  public void setWorkerMemoryInMb(final int workerMemoryInMb) {
+    if (workerMemoryInMb <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive memory budget: " + workerMemoryInMb);
+    }
+    this.workerMemoryInMb = workerMemoryInMb;
+  }
+
+  private static void checkNumThreads(final int numThreads) {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of threads: " + numThreads);
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Extracts the sentences from the given input files (see
+   * {@link #addInputRecursive(Queue, String)}) and writes them to the output
+   * directory, blocking until all input has been processed.
+   */
+  public void run(final String[] inputFileNames, final File outputDirectory)
+  throws IOException, InterruptedException {
+    final Instant start = Instant.now();
+    final Queue<String> inputFiles = new ConcurrentLinkedQueue<>();
+    for (final String inputFileName : inputFileNames) {
+      LocalHtmlSentenceExtractionTool.addInputRecursive(
+          inputFiles, inputFileName);
+    }
+    if (this.shard != NO_SHARD) {
+      inputFiles.removeIf(inputFileName -> ShardMerger.getShard(
+          inputFileName, this.numShards) != this.shard);
+    }
+    if (this.resume
+        && this.maxBytesPerFile == RollingDocumentWriter.NO_LIMIT
+        && this.maxDocumentsPerFile == RollingDocumentWriter.NO_LIMIT) {
+      throw new IllegalArgumentException(
+          "Can not resume without rolling over the output files");
+    }
+    final int numInputFiles = inputFiles.size();
+    if (this.nodeName != null) {
+      if (this.shard != NO_SHARD) {
+        throw new IllegalArgumentException(
+            "Can not use shards and coordination together");
+      }
+      this.coordinator = new LeaseCoordinator(
+          new File(outputDirectory, LeaseCoordinator.DIRECTORY_NAME),
+          this.nodeName, this.leaseTimeoutInSeconds);
+      try {
+        this.coordinator.addInputs(inputFiles);
+        final File nodeDirectory = new File(outputDirectory,
+            LeaseCoordinator.getNodeDirectoryName(this.nodeName));
+        // runs again for input files of nodes that died meanwhile
+        do {
+          this.run(new ConcurrentLinkedQueue<>(), numInputFiles, start,
+              nodeDirectory);
+        } while (this.coordinator.awaitInputs());
+      } finally {
+        this.coordinator.close();
+        this.coordinator = null;
+      }
+    } else {
+      this.run(inputFiles, numInputFiles, start, this.shard == NO_SHARD
+          ? outputDirectory
+          : new File(outputDirectory,
+              ShardMerger.getShardDirectoryName(this.shard, this.numShards)));
+    }
+  }
+
+  private void run(final Queue<String> inputFiles, final int numInputFiles,
+      final Instant start, final File outputDirectory)
+  throws IOException, InterruptedException {
+    outputDirectory.mkdirs();
+    int firstPart = 0;
+    if (this.resume || this.coordinator != null) {
+      this.journal = new ProgressJournal(
+          new File(outputDirectory, ProgressJournal.FILE_NAME));
+      firstPart = RollingDocumentWriter.recover(
+          outputDirectory, this.journal.getCommittedFiles());
+      if (this.coordinator != null) {
+        // the node may have died before it marked them as done
+        this.coordinator.markDone(this.journal::isDone);
+        this.journal.setDoneHook(this.coordinator::markDone);
+      } else {
+        inputFiles.removeIf(this.journal::isDone);
+        System.err.println("Resuming: skipping "
+            + (numInputFiles - inputFiles.size()) + " completed input files");
+      }
+    }
+
+    final BlockingQueue<Document> documents =
+        new ArrayBlockingQueue<>(this.queueSize);
+    final BlockingQueue<Result> results =
+        new ArrayBlockingQueue<>(this.queueSize);
+
+    final int numReaderThreads = this.coordinator != null
+        ? this.numReaderThreads
+        : Math.max(1, Math.min(this.numReaderThreads, inputFiles.size()));
+    final StageThreads stages = new StageThreads();
+    final List<Thread> readers = new ArrayList<>(numReaderThreads);
+    for (int r = 0; r < numReaderThreads; ++r) {
+      readers.add(stages.start("reader-" + r, () -> {
+        for (String inputFileName =
+              this.nextInputFile(inputFiles, outputDirectory);
+            inputFileName != null && !stages.isFailed();
+            inputFileName = this.nextInputFile(inputFiles, outputDirectory)) {
+          this.readFile(inputFileName, documents);
+        }
+      }));
+    }
+
+    final List<Thread> extractors = new ArrayList<>(this.numExtractionThreads);
+    for (int e = 0; e < this.numExtractionThreads; ++e) {
+      if (this.workerArgs == null) {
+        extractors.add(stages.start("extractor-" + e, () -> {
+          for (Document document = documents.take();
+              document != END_OF_INPUT;
+              document = documents.take()) {
+            final Result result = this.extract(document);
+            if (result != null) { results.put(result); }
+          }
+        }));
+      } else {
+        extractors.add(stages.start("extractor-" + e, () -> {
+          try (final ExtractionWorkerProcess worker =
+              new ExtractionWorkerProcess(this.extractor.getClass(),
+                  this.workerArgs, this.extractor.getTimeoutInSeconds(),
+                  this.workerMemoryInMb)) {
+            final List<Document> batch = new ArrayList<>();
+            boolean endOfInput = false;
+            while (!endOfInput) {
+              endOfInput = this.takeBatch(documents, batch);
+              for (final Result result : this.extract(batch, worker)) {
+                results.put(result);
+              }
+            }
+          }
+        }));
+      }
+    }
+
+    final List<Thread> writers = new ArrayList<>(this.numWriterThreads);
+    for (int w = 0; w < this.numWriterThreads; ++w) {
+      final int writerFirstPart = firstPart + w;
+      writers.add(stages.start("writer-" + w, () -> {
+        // the documents in the current file by input file
+        final Map<String, List<Long>> sequences = new HashMap<>();
+        try (final RollingDocumentWriter writer = new RollingDocumentWriter(
+            outputDirectory, writerFirstPart, this.numWriterThreads,
+            this.outputFormat, this.writeNames, this.outputCompression)) {
+          writer.setMaxBytesPerFile(this.maxBytesPerFile);
+          writer.setMaxDocumentsPerFile(this.maxDocumentsPerFile);
+          if (this.journal != null) {
+            writer.setCommitHook(file -> {
+              this.journal.commit(file.getName(), sequences);
+              sequences.clear();
+            });
+          }
+          for (Result result = results.take();
+              result != END_OF_RESULTS;
+              result = results.take()) {
+            this.write(result, writer, sequences);
+          }
+        }
+      }));
+    }
+
+    final Thread status = this.startStatusThread(documents, results);
+
+    // stops waiting once a stage failed, as the other stages then stop
+    try {
+      stages.join(readers);
+      for (int e = 0; e < this.numExtractionThreads; ++e) {
+        stages.put(documents, END_OF_INPUT);
+      }
+      stages.join(extractors);
+      for (int w = 0; w < this.numWriterThreads; ++w) {
+        stages.put(results, END_OF_RESULTS);
+      }
+      stages.join(writers);
+    } finally {
+      stages.stop();
+      if (this.journal != null) {
+        this.journal.close();
+        this.journal = null;
+      }
+      if (status != null) {
+        status.interrupt();
+      }
+    }
+    stages.throwFailure();
+    this.printStatus(documents, results);
+    this.createSummary(start, numInputFiles, outputDirectory)
+      .write(outputDirectory);
+  }
+
+  private RunSummary createSummary(final Instant start,
+      final int numInputFiles, final File outputDirectory) {
+    final RunSummary summary = new RunSummary(start, Instant.now());
+    summary.setCount("input.files", this.coordinator == null
+        ? numInputFiles
+        : this.coordinator.getNumAcquired());
+    summary.setCount("documents.read", this.numDocumentsRead.get());
+    summary.setCount("documents.skipped", this.filter.getNumSkipped());
+    summary.setCount("documents.extracted", this.numDocumentsExtracted.get());
+    summary.setCount("extraction.errors", this.numExtractionErrors.get());
+    if (this.extractor.hasTimeout()) {
+      summary.setCount("extraction.timeouts",
+          this.extractor.getTimeoutExecutor().getNumTimeouts());
+    }
+    if (this.workerArgs != null) {
+      summary.setCount("worker.restarts", this.numWorkerRestarts.get());
+    }
+    summary.setCount("documents.written", this.numDocumentsWritten.get());
+    for (final Map.Entry<String, Long> statistic
+        : this.extractor.getStatistics().entrySet()) {
+      summary.setCount("extractor." + statistic.getKey(), statistic.getValue());
+    }
+    long numOutputFiles = 0;
+    long numOutputBytes = 0;
+    for (final File file : outputDirectory.listFiles()) {
+      final String name = file.getName();
+      if (RollingDocumentWriter.getPart(name) >= 0) {
+        ++numOutputFiles;
+        numOutputBytes += file.length();
+      }
+    }
+    summary.setCount("output.files", numOutputFiles);
+    summary.setCount("output.bytes", numOutputBytes);
+    return summary;
+  }
+
+  /**
+   * Adds the file of given name to the queue if it is of a supported type, or
+   * all such files in it if it is a directory.
+   */
+  protected static void addInputRecursive(
+      final Queue<String> inputFileNames, final String inputFileName)
+  throws IOException {
+    final File inputFile = new File(inputFileName);
+    if (inputFile.isDirectory()) {
+      for (final String child : inputFile.list()) {
+        LocalHtmlSentenceExtractionTool.addInputRecursive(
+            inputFileNames, inputFileName + File.separatorChar + child);
+      }
+    } else {
+      if (inputFileName.endsWith(".html")
+          || inputFileName.endsWith(".htm")) {
+        LOGGER.fine("Add text/html " + inputFileName);
+        inputFileNames.add(inputFileName);
+      } else if (inputFileName.endsWith(".warc")) {
+        LOGGER.fine("Add warc " + inputFileName);
+        inputFileNames.add(inputFileName);
+      } else if (inputFileName.endsWith(".warc.gz")) {
+        LOGGER.fine("Add warc.gz " + inputFileName);
+        inputFileNames.add(inputFileName);
+      } else {
+        LOGGER.finer("Unsupported file ending for " + inputFileName);
+      }
+    }
+  }
+
+  /**
+   * Gets the next input file to read, or <tt>null</tt> if there is none. When
+   * coordinating, the progress of the nodes that held the input file before is
+   * adopted from their journals in the node directories next to the given one,
+   * so that the documents they committed are skipped.
+   */
+  private String nextInputFile(
+      final Queue<String> inputFiles, final File outputDirectory)
+  throws IOException {
+    if (this.coordinator == null) {
+      return inputFiles.poll();
+    }
+    while (true) {
+      final String inputFileName = this.coordinator.acquire();
+      if (inputFileName == null) { return null; }
+      for (final String nodeName
+          : this.coordinator.getPreviousNodeNames(inputFileName)) {
+        LOGGER.info("Adopting progress of node " + nodeName + " for "
+            + inputFileName);
+        this.journal.adopt(inputFileName, new File(new File(
+            outputDirectory.getParentFile(),
+            LeaseCoordinator.getNodeDirectoryName(nodeName)),
+            ProgressJournal.FILE_NAME));
+      }
+      // done if a previous node finished it before it could mark it
+      if (!this.journal.isDone(inputFileName)) { return inputFileName; }
+    }
+  }
+
+  private void readFile(
+      final String inputFileName, final BlockingQueue<Document> documents)
+  throws InterruptedException {
+    final File inputFile = new File(inputFileName);
+    System.err.println("Extracting " + inputFileName);
+    try {
+      if (inputFileName.endsWith(".html") || inputFileName.endsWith(".htm")) {
+        if (this.register(inputFileName, 0, ExtractedDocument.NO_OFFSET, 0)) {
+          // like before, files without charset declaration use the default
+          documents.put(new Document(
+              ByteBuffer.wrap(FileUtils.readFileToByteArray(inputFile)),
+              null, Charset.defaultCharset(), inputFileName, null, null,
+              ExtractedDocument.NO_OFFSET, 0));
+          this.numDocumentsRead.incrementAndGet();
+        }
+      } else if (inputFileName.endsWith(".warc")) {
+        this.readWarcFile(inputFile, inputFileName, documents);
+      } else {
+        this.readCompressedWarcFile(inputFile, inputFileName, documents);
+      }
+      if (this.journal != null) {
+        this.journal.finishReading(inputFileName);
+      }
+    } catch (final IOException | UncheckedIOException e) {
+      if (Thread.interrupted()) {
+        // the file channel was closed as another stage failed
+        throw new InterruptedException();
+      }
+      // Continue with next
+      System.err.println("READ ERROR on " + inputFile + ": " + e.getMessage());
+      if (this.coordinator != null) {
+        try {
+          this.coordinator.release(inputFileName);
+        } catch (final IOException e2) {
+          System.err.println("Could not release lease on " + inputFile + ": "
+              + e2.getMessage());
+        }
+      }
+    }
+  }
+
+  private void readWarcFile(
+      final File inputFile, final String inputFileName,
+      final BlockingQueue<Document> documents)
+  throws IOException, InterruptedException {
+    final long offset =
+        this.journal == null ? 0 : this.journal.getOffset(inputFileName);
+    // maps the file and decodes the records without copying them first
+    try (final MappedWarcReader reader =
+        new MappedWarcReader(inputFile, offset)) {
+      reader.setFilter(this.filter);
+      this.readWarcRecords(reader, inputFileName, documents, offset);
+    }
+  }
+
+  private void readCompressedWarcFile(
+      final File inputFile, final String inputFileName,
+      final BlockingQueue<Document> documents)
+  throws IOException, InterruptedException {
+    if (this.journal != null
+        && LocalHtmlSentenceExtractionTool.isCompressedPerRecord(inputFile)) {
+      // can start at the gzip member of the first missing record
+      final long offset = this.journal.getOffset(inputFileName);
+      try (final GzipWarcReader reader =
+          new GzipWarcReader(inputFile, offset)) {
+        reader.setFilter(this.filter);
+        this.readWarcRecords(reader, inputFileName, documents, offset);
+      }
+    } else {
+      // skips the content of filtered records without copying it
+      try (final StreamWarcReader reader = new StreamWarcReader(inputFile)) {
+        reader.setFilter(this.filter);
+        this.readWarcRecords(reader, inputFileName, documents, 0);
+      }
+    }
+  }
+
+  private static boolean isCompressedPerRecord(final File inputFile)
+  throws IOException {
+    try (final InputStream input = new FileInputStream(inputFile)) {
+      return GzipWarcReader.isCompressedPerRecord(
+          input, WarcInputFormat.MAX_FIRST_MEMBER_LENGTH);
+    }
+  }
+
+  /**
+   * Reads the documents from given reader, which starts at given offset. When
+   * resuming, the documents are numbered starting from the number of the first
+   * document at that offset (see {@link ProgressJournal#getSequence(String)}).
+   */
+  private void readWarcRecords(
+      final WarcReader reader, final String inputFileName,
+      final BlockingQueue<Document> documents, final long offset)
+  throws IOException, InterruptedException {
+    long sequence = (this.journal == null || offset == 0)
+        ? 0 : this.journal.getSequence(inputFileName);
+    long lastOffset = offset;
+    long firstSequenceAtOffset = sequence;
+    for (RawWarcRecord record = reader.read(); record != null;
+        record = reader.read()) {
+      final RawHttpResponse response;
+      try {
+        response = Warcs.getHtmlResponse(record);
+      } catch (final Exception e) {
+        continue;
+      }
+      if (response != null) {
+        if (record.getOffset() != lastOffset) {
+          lastOffset = record.getOffset();
+          firstSequenceAtOffset = sequence;
+        }
+        final long documentSequence = sequence++;
+        if (this.register(inputFileName, documentSequence,
+            lastOffset, firstSequenceAtOffset)) {
+          final WarcHeader header = record.getHeader();
+          documents.put(new Document(response.getBody(),
+              response.getCharset(), Warcs.DEFAULT_CHARSET, inputFileName,
+              header.getTargetUri(), header.getTrecId(), record.getOffset(),
+              documentSequence));
+          this.numDocumentsRead.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  /**
+   * Registers the document in the journal if resuming, and returns whether it
+   * has to be extracted, which is not the case if a previous run committed it
+   * already.
+   */
+  private boolean register(final String inputFileName, final long sequence,
+      final long offset, final long firstSequenceAtOffset) {
+    if (this.journal == null) { return true; }
+    if (this.journal.isResolved(inputFileName, sequence)) { return false; }
+    this.journal.register(
+        inputFileName, sequence, offset, firstSequenceAtOffset);
+    return true;
+  }
+
+  /**
+   * Marks the document as resolved in the journal if resuming, as it produces
+   * no output.
+   */
+  private void resolve(final Document document) throws IOException {
+    if (this.journal != null) {
+      this.journal.resolve(document.inputFileName, document.sequence);
+    }
+  }
+
+  private Result extract(final Document document)
+  throws IOException, InterruptedException {
+    final String html = this.decoder.decodeToString(document.html,
+        document.declaredCharset, document.defaultCharset);
+    final List<Paragraph> paragraphs;
+    try {
+      paragraphs = this.extractor.extractSentences(html, this.outputFormat);
+    } catch (final ExecutionException | RuntimeException e) {
+      if (e.getCause() instanceof InterruptedException) {
+        // another stage failed, so the document stays unresolved
+        throw (InterruptedException) e.getCause();
+      }
+      // Continue with next
+      this.numExtractionErrors.incrementAndGet();
+      if (document.uri == null) {
+        System.err.println("EXTRACTION ERROR on parsing "
+            + document.inputFileName + ": " + e.getMessage());
+      }
+      this.resolve(document);
+      return null;
+    } finally {
+      this.numDocumentsExtracted.incrementAndGet();
+    }
+    return new Result(document, paragraphs);
+  }
+
+  private List<Result> extract(
+      final List<Document> batch, final ExtractionWorkerProcess worker)
+  throws IOException {
+    final List<String> htmlInputs = new ArrayList<>(batch.size());
+    for (final Document document : batch) {
+      htmlInputs.add(this.decoder.decodeToString(document.html,
+          document.declaredCharset, document.defaultCharset));
+    }
+    final long numRestarts = worker.getNumRestarts();
+    final List<Object> outcomes = worker.extract(htmlInputs);
+    this.numWorkerRestarts.addAndGet(worker.getNumRestarts() - numRestarts);
+
+    final List<Result> results = new ArrayList<>(batch.size());
+    for (int d = 0; d < batch.size(); ++d) {
+      final Document document = batch.get(d);
+      final Object outcome = outcomes.get(d);
+      this.numDocumentsExtracted.incrementAndGet();
+      if (outcome instanceof ExecutionException) {
+        this.numExtractionErrors.incrementAndGet();
+        if (document.uri == null) {
+          System.err.println("EXTRACTION ERROR on parsing "
+              + document.inputFileName + ": "
+              + ((ExecutionException) outcome).getMessage());
+        }
+        this.resolve(document);
+      } else {
+        @SuppressWarnings("unchecked")
+        final List<Paragraph> paragraphs = (List<Paragraph>) outcome;
+        results.add(new Result(document, paragraphs));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Replaces the contents of the batch by the next documents from the queue,
+   * waiting for at least one. Returns whether the end of the input was reached.
+   */
+  private boolean takeBatch(
+      final BlockingQueue<Document> documents, final List<Document> batch)
+  throws InterruptedException {
+    batch.clear();
+    batch.add(documents.take());
+    documents.drainTo(batch, this.workerBatchSize - 1);
+    final int endOfInput = batch.indexOf(END_OF_INPUT);
+    if (endOfInput < 0) { return false; }
+
+    // leave the other end markers for the other extraction threads
+    for (int d = batch.size() - 1; d > endOfInput; --d) {
+      if (batch.remove(d) == END_OF_INPUT) { documents.put(END_OF_INPUT); }
+    }
+    batch.remove(endOfInput);
+    return true;
+  }
+
+  /**
+   * Writes the result and, if resuming, adds its document to the documents in
+   * the current file of the writer (by input file) or resolves it if it is not
+   * written, as it has no sentences.
+   */
+  private void write(final Result result, final DocumentWriter writer,
+      final Map<String, List<Long>> sequences)
+  throws IOException {
+    final Document document = result.document;
+    final ExtractedDocument extractedDocument = new ExtractedDocument(
+        document.uri, document.trecId, document.inputFileName,
+        document.offset, result.paragraphs);
+    if (this.journal != null) {
+      if (extractedDocument.getNumSentences() == 0) {
+        this.resolve(document);
+      } else {
+        // before writing, as writing may commit the file
+        sequences.computeIfAbsent(document.inputFileName,
+            inputFileName -> new ArrayList<>()).add(document.sequence);
+      }
+    }
+    writer.write(extractedDocument);
+    this.numDocumentsWritten.incrementAndGet();
+  }
+
+  private Thread startStatusThread(
+      final BlockingQueue<Document> documents,
+      final BlockingQueue<Result> results) {
+    if (this.statusIntervalInSeconds == NO_STATUS) { return null; }
+    final long intervalInMillis = this.statusIntervalInSeconds * 1000L;
+    final Thread thread = new Thread(() -> {
+      try {
+        while (true) {
+          Thread.sleep(intervalInMillis);
+          this.printStatus(documents, results);
+        }
+      } catch (final InterruptedException e) {
+        // Finished
+      }
+    }, "status");
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  private void printStatus(
+      final BlockingQueue<Document> documents,
+      final BlockingQueue<Result> results) {
+    final StringBuilder status = new StringBuilder("STATUS");
+    status.append(" read ").append(this.numDocumentsRead.get());
+    if (this.filter.getNumSkipped() > 0) {
+      status.append(" | skipped ");
+      this.filter.appendNumSkipped(status);
+    }
+    status.append(" | document queue ").append(documents.size())
+      .append('/').append(this.queueSize);
+    status.append(" | extracted ").append(this.numDocumentsExtracted.get())
+      .append(" (").append(this.numExtractionErrors.get()).append(" errors");
+    if (this.extractor.hasTimeout()) {
+      final TimeoutExecutor timeoutExecutor =
+          this.extractor.getTimeoutExecutor();
+      status.append(", ").append(timeoutExecutor.getNumTimeouts())
+        .append(" timeouts, ")
+        .append(timeoutExecutor.getNumThreadsRunningAfterTimeout())
+        .append(" threads still running after timeout");
+    }
+    if (this.workerArgs != null) {
+      status.append(", ").append(this.numWorkerRestarts.get())
+        .append(" worker restarts");
+    }
+    status.append(')');
+    status.append(" | result queue ").append(results.size())
+      .append('/').append(this.queueSize);
+    status.append(" | written ").append(this.numDocumentsWritten.get());
+    System.err.println(status);
+  }
+
+  /**
+   * The work of the threads of one stage.
+   */
+  @FunctionalInterface
+  private static interface Stage {
+
+    void run() throws IOException, InterruptedException;
+
+  }
+
+  /**
+   * The threads of the stages of one run.
+   * <p>
+   * The stages only wait on each other through the queues, so a thread that
+   * fails would leave the threads that put into or take from the same queue
+   * waiting forever. Therefore, the first failure of any thread is kept, and
+   * all threads are interrupted then. The main thread waits in
+   * {@link #join(List)} and {@link #put(BlockingQueue, Object)}, which return
+   * once a thread failed, and throws the failure in {@link #throwFailure()}.
+   * </p>
+   */
+  private static class StageThreads {
+
+    private final List<Thread> threads;
+
+    private Throwable failure;
+
+    public StageThreads() {
+      this.threads = new ArrayList<>();
+      this.failure = null;
+    }
+
+    public synchronized boolean isFailed() {
+      return this.failure != null;
+    }
+
+    /**
+     * Starts a thread that runs given stage.
+     */
+    public synchronized Thread start(final String name, final Stage stage) {
+      final Thread thread = new Thread(() -> {
+        try {
+          stage.run();
+        } catch (final InterruptedException e) {
+          // stopped because another thread failed
+        } catch (final Throwable e) {
+          this.fail(e);
+        }
+      }, name);
+      this.threads.add(thread);
+      thread.start();
+      if (this.failure != null) { thread.interrupt(); }
+      return thread;
+    }
+
+    private synchronized void fail(final Throwable e) {
+      if (this.failure == null) {
+        LOGGER.severe("Stopping after " + Thread.currentThread().getName()
+            + " failed: " + e);
+        this.failure = e;
+        for (final Thread thread : this.threads) {
+          if (thread != Thread.currentThread()) { thread.interrupt(); }
+        }
+      }
+    }
+
+    /**
+     * Waits until all given threads ended or a thread failed.
+     */
+    public void join(final List<Thread> threads) throws InterruptedException {
+      for (final Thread thread : threads) {
+        while (thread.isAlive() && !this.isFailed()) {
+          thread.join(FAILURE_CHECK_INTERVAL_IN_MILLIS);
+        }
+      }
+    }
+
+    /**
+     * Puts given element into the queue unless a thread failed.
+     */
+    public <E> void put(final BlockingQueue<E> queue, final E element)
+    throws InterruptedException {
+      while (!this.isFailed() && !queue.offer(element,
+          FAILURE_CHECK_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS)) {
+        // try again
+      }
+    }
+
+    /**
+     * Interrupts all threads if the main thread stops waiting for them early,
+     * and waits until they ended.
+     */
+    public void stop() throws InterruptedException {
+      final List<Thread> threads;
+      synchronized (this) {
+        threads = new ArrayList<>(this.threads);
+      }
+      for (final Thread thread : threads) {
+        if (thread.isAlive()) { thread.interrupt(); }
+      }
+      for (final Thread thread : threads) {
+        thread.join();
+      }
+    }
+
+    /**
+     * Throws the failure of the thread that failed first, if any.
+     */
+    public synchronized void throwFailure() throws IOException {
+      if (this.failure == null) {
+        return;
+      } else if (this.failure instanceof IOException) {
+        throw (IOException) this.failure;
+      } else if (this.failure instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) this.failure).getCause();
+      } else if (this.failure instanceof RuntimeException) {
+        throw (RuntimeException) this.failure;
+      } else if (this.failure instanceof Error) {
+        throw (Error) this.failure;
+      } else {
+        throw new IOException(this.failure);
+      }
+    }
+
+  }
+
+  /**
+   * A document waiting for extraction. The HTML is decoded by the extraction
+   * thread (see {@link HtmlDecoder}).
+   */
+  private static class Document {
+
+    private final ByteBuffer html;
+
+    private final Charset declaredCharset;
+
+    private final Charset defaultCharset;
+
+    private final String inputFileName;
+
+    private final String uri;
+
+    private final String trecId;
+
+    private final long offset;
+
+    // number of the document in its input file
+    private final long sequence;
+
+    public Document(final ByteBuffer html,
+        final Charset declaredCharset, final Charset defaultCharset,
+        final String inputFileName, final String uri, final String trecId,
+        final long offset, final long sequence) {
+      this.html = html;
+      this.declaredCharset = declaredCharset;
+      this.defaultCharset = defaultCharset;
+      this.inputFileName = inputFileName;
+      this.uri = uri;
+      this.trecId = trecId;
+      this.offset = offset;
+      this.sequence = sequence;
+    }
+
+  }
+
+  /**
+   * The paragraphs extracted from a document waiting to be written.
+   */
+  private static class Result {
+
+    private final Document document;
+
+    private final List<Paragraph> paragraphs;
+
+    public Result(final Document document, final List<Paragraph> paragraphs) {
+      this.document = document;
+      this.paragraphs = paragraphs;
+    }
+
+  }
+
+}
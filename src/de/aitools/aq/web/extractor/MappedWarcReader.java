@@ -0,0 +1,213 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader for uncompressed WARC files that maps the file into memory.
+ *
+ * <p>
+ * The headers are parsed directly from the mapped bytes, and the content of a
+ * record is a slice of the mapped file, so reading a record does not copy its
+ * content. The file is mapped in windows of {@link #DEFAULT_WINDOW_SIZE}
+ * bytes (or larger if a single record does not fit), so files larger than
+ * 2 GB can be read as well.
+ * </p>
+ */
+public class MappedWarcReader implements WarcReader {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Default number of bytes to map at once.
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final FileChannel channel;
+
+  private final long size;
+
+  private final int windowSize;
+
+  private MappedByteBuffer window;
+
+  private long windowStart;
+
+  private long position;
+
+  private WarcRecordFilter filter;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new reader for the given uncompressed WARC file.
+   */
+  public MappedWarcReader(final File input) throws IOException {
+    this(input, 0);
+  }
+
+  /**
+   * Creates a new reader for the given uncompressed WARC file that starts
+   * reading at given position, which has to be the start of a record.
+   */
+  public MappedWarcReader(final File input, final long position)
+  throws IOException {
+    this(input, position, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Creates a new reader for the given uncompressed WARC file that starts
+   * reading at given position, which has to be the start of a record, and maps
+   * given number of bytes at once.
+   */
+  public MappedWarcReader(
+      final File input, final long position, final int windowSize)
+  throws IOException {
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive window size: " + windowSize);
+    }
+    this.channel = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+    this.size = this.channel.size();
+    this.windowSize = windowSize;
+    this.window = null;
+    this.windowStart = 0;
+    this.position = position;
+    this.filter = null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the position in the file at which the next record is read.
+   */
+  public long getPosition() {
+    return this.position;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the filter for the records to read, or <tt>null</tt> to read all
+   * records. The content of rejected records is not even mapped.
+   */
+  public void setFilter(final WarcRecordFilter filter) {
+    this.filter = filter;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public RawWarcRecord read() throws IOException {
+    while (true) {
+      this.skipLineBreaks();
+      if (this.position >= this.size) { return null; }
+
+      WarcHeader header = this.parseHeader();
+      if (header == null) {
+        // header is cut by the end of the window
+        this.map(this.position, this.windowSize);
+        header = this.parseHeader();
+        if (header == null) {
+          throw new IOException("Truncated WARC header at " + this.position);
+        }
+      }
+      final long headerLength =
+          this.windowStart + this.window.position() - this.position;
+      final long contentLength = header.getContentLength();
+      final long recordLength = headerLength + contentLength;
+
+      if (this.position + recordLength > this.size) {
+        throw new IOException("Truncated WARC record at " + this.position);
+      }
+      if (this.filter != null && !this.filter.accept(header)) {
+        // skip without mapping the content
+        this.position += recordLength;
+        continue;
+      }
+      if (this.windowStart + this.window.limit()
+          < this.position + recordLength) {
+        // content is cut by the end of the window
+        if (recordLength > Integer.MAX_VALUE) {
+          throw new IOException("WARC record too large: " + recordLength);
+        }
+        this.map(this.position,
+            Math.max(this.windowSize, (int) recordLength));
+      }
+
+      final int contentStart =
+          (int) (this.position + headerLength - this.windowStart);
+      final ByteBuffer content = this.window.duplicate();
+      content.position(contentStart);
+      content.limit((int) (contentStart + contentLength));
+      final RawWarcRecord record =
+          new RawWarcRecord(header, content.slice(), this.position);
+      this.position += recordLength;
+      return record;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.window = null;
+    this.channel.close();
+  }
+
+  private WarcHeader parseHeader() throws IOException {
+    if (!this.isMapped(this.position)) {
+      this.map(this.position, this.windowSize);
+    }
+    this.window.position((int) (this.position - this.windowStart));
+    try {
+      return WarcHeader.parse(this.window);
+    } catch (final IllegalArgumentException e) {
+      throw new IOException(e.getMessage() + " at " + this.position, e);
+    }
+  }
+
+  /**
+   * Skips the line breaks that follow each record.
+   */
+  private void skipLineBreaks() throws IOException {
+    while (this.position < this.size) {
+      if (!this.isMapped(this.position)) {
+        this.map(this.position, this.windowSize);
+      }
+      final byte b = this.window.get((int) (this.position - this.windowStart));
+      if (b != '\r' && b != '\n') { return; }
+      ++this.position;
+    }
+  }
+
+  private boolean isMapped(final long position) {
+    return this.window != null
+        && position >= this.windowStart
+        && position < this.windowStart + this.window.limit();
+  }
+
+  private void map(final long start, final int length) throws IOException {
+    final long mappedLength = Math.min(length, this.size - start);
+    this.window = this.channel.map(
+        FileChannel.MapMode.READ_ONLY, start, mappedLength);
+    this.windowStart = start;
+  }
+
+}
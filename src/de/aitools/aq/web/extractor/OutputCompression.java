@@ -0,0 +1,300 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * The compression of the output files, which is used the same way by the
+ * {@link LocalHtmlSentenceExtractionTool} and the
+ * {@link HadoopHtmlSentenceExtractionTool}.
+ *
+ * <p>
+ * Compressions are given by name (see {@link #forName(String)}): <tt>none</tt>,
+ * <tt>gzip</tt>, <tt>bgzf</tt>, or the class name of a Hadoop compression
+ * codec. Local mode writes gzip using the JDK, and other codecs using Hadoop,
+ * so that the files are the same format as those written on Hadoop.
+ * </p><p>
+ * The <tt>bgzf</tt> compression writes gzip files that consist of independent
+ * blocks, each ending at a document boundary, and an index file for each of
+ * them (see {@link BlockGzipOutputStream}). In local mode, the blocks are
+ * compressed by a pool of one thread per processor that is shared by all
+ * output files.
+ * </p>
+ */
+public abstract class OutputCompression {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Name of the compression that writes the output files uncompressed.
+   */
+  public static final String NONE = "none";
+
+  /**
+   * Name of the compression that compresses the output files with gzip.
+   */
+  public static final String GZIP = "gzip";
+
+  /**
+   * Name of the compression that compresses the output files with gzip in
+   * independent blocks and writes an index file for each of them.
+   */
+  public static final String BLOCK_GZIP = "bgzf";
+
+  private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final String name;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private OutputCompression(final String name) {
+    this.name = name;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the name of this compression.
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Gets the extension of the compressed output files (including the dot), or
+   * an empty string.
+   */
+  public abstract String getExtension();
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the compression of given name.
+   * @param name {@link #NONE}, {@link #GZIP}, {@link #BLOCK_GZIP}, or the class
+   * name of a Hadoop <tt>CompressionCodec</tt>
+   * @throws IllegalArgumentException If there is no such compression
+   */
+  public static OutputCompression forName(final String name) {
+    switch (name) {
+    case NONE:
+      return new NoCompression();
+    case GZIP:
+      return new GzipCompression();
+    case BLOCK_GZIP:
+      return new BlockGzipCompression();
+    default:
+      try {
+        return new CodecCompression(
+            Class.forName(name).asSubclass(CompressionCodec.class));
+      } catch (final ClassNotFoundException | ClassCastException e) {
+        throw new IllegalArgumentException(
+            "Unknown output compression: " + name, e);
+      }
+    }
+  }
+
+  /**
+   * Wraps given output stream so that the data written to the returned stream
+   * is compressed. Closing the returned stream finishes the compression and
+   * closes the given stream.
+   */
+  public abstract OutputStream compress(final OutputStream output)
+  throws IOException;
+
+  /**
+   * Checks whether this compression writes an index file for each output file
+   * (see {@link #compress(OutputStream, OutputStream)}).
+   */
+  public boolean hasIndex() {
+    return false;
+  }
+
+  /**
+   * Like {@link #compress(OutputStream)}, but writes the index of the
+   * compressed data to given stream if this compression {@link #hasIndex()}.
+   * Otherwise, the index stream is not used.
+   */
+  public OutputStream compress(
+      final OutputStream output, final OutputStream indexOutput)
+  throws IOException {
+    return this.compress(output);
+  }
+
+  /**
+   * Configures given Hadoop job to compress its output files like this.
+   */
+  public abstract void configure(final Job job);
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+
+  /**
+   * Writes the output files uncompressed.
+   */
+  private static class NoCompression extends OutputCompression {
+
+    private NoCompression() {
+      super(NONE);
+    }
+
+    @Override
+    public String getExtension() {
+      return "";
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream output) {
+      return output;
+    }
+
+    @Override
+    public void configure(final Job job) {
+      FileOutputFormat.setCompressOutput(job, false);
+    }
+
+  }
+
+  /**
+   * Compresses the output files with gzip.
+   */
+  private static class GzipCompression extends OutputCompression {
+
+    private GzipCompression() {
+      super(GZIP);
+    }
+
+    @Override
+    public String getExtension() {
+      return ".gz";
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream output)
+    throws IOException {
+      return new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+    }
+
+    @Override
+    public void configure(final Job job) {
+      FileOutputFormat.setCompressOutput(job, true);
+      FileOutputFormat.setOutputCompressorClass(job, GzipCodec.class);
+    }
+
+  }
+
+  /**
+   * Compresses the output files with gzip in independent blocks.
+   */
+  private static class BlockGzipCompression extends OutputCompression {
+
+    private final int numThreads;
+
+    private ExecutorService executor;
+
+    private BlockGzipCompression() {
+      super(BLOCK_GZIP);
+      this.numThreads = Runtime.getRuntime().availableProcessors();
+      this.executor = null;
+    }
+
+    @Override
+    public String getExtension() {
+      return ".gz";
+    }
+
+    @Override
+    public boolean hasIndex() {
+      return true;
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream output) {
+      return this.compress(output, null);
+    }
+
+    @Override
+    public OutputStream compress(
+        final OutputStream output, final OutputStream indexOutput) {
+      return new BlockGzipOutputStream(
+          output, indexOutput, this.getExecutor(), this.numThreads);
+    }
+
+    @Override
+    public void configure(final Job job) {
+      FileOutputFormat.setCompressOutput(job, false);
+      DocumentOutputFormat.setBlockGzipOutput(job, true);
+    }
+
+    private synchronized ExecutorService getExecutor() {
+      if (this.executor == null) {
+        this.executor = Executors.newFixedThreadPool(this.numThreads, task -> {
+          final Thread thread = new Thread(task, "block-gzip");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      return this.executor;
+    }
+
+  }
+
+  /**
+   * Compresses the output files with a Hadoop codec.
+   */
+  private static class CodecCompression extends OutputCompression {
+
+    private final Class<? extends CompressionCodec> codecClass;
+
+    private final CompressionCodec codec;
+
+    private CodecCompression(
+        final Class<? extends CompressionCodec> codecClass) {
+      super(codecClass.getName());
+      this.codecClass = codecClass;
+      this.codec = ReflectionUtils.newInstance(codecClass, new Configuration());
+    }
+
+    @Override
+    public String getExtension() {
+      return this.codec.getDefaultExtension();
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream output)
+    throws IOException {
+      return this.codec.createOutputStream(output);
+    }
+
+    @Override
+    public void configure(final Job job) {
+      FileOutputFormat.setCompressOutput(job, true);
+      FileOutputFormat.setOutputCompressorClass(job, this.codecClass);
+    }
+
+  }
+
+}
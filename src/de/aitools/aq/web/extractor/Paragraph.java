@@ -0,0 +1,55 @@
+package de.aitools.aq.web.extractor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The sentences extracted from one paragraph of a web page, together with the
+ * language that was detected for the paragraph.
+ */
+public class Paragraph {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final Locale language;
+
+  private final List<String> sentences;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new paragraph.
+   * @param language The language of the paragraph, or <tt>null</tt> if it is
+   * not known
+   * @param sentences The sentences extracted from the paragraph
+   */
+  public Paragraph(final Locale language, final List<String> sentences) {
+    if (sentences == null) { throw new NullPointerException(); }
+    this.language = language;
+    this.sentences = Collections.unmodifiableList(sentences);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the language of this paragraph, or <tt>null</tt> if it is not known.
+   */
+  public Locale getLanguage() {
+    return this.language;
+  }
+
+  /**
+   * Gets the sentences extracted from this paragraph.
+   */
+  public List<String> getSentences() {
+    return this.sentences;
+  }
+
+}
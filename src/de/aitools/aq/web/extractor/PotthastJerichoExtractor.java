@@ -1,16 +1,15 @@
 package de.aitools.aq.web.extractor;
 
 import java.util.Collection;
-import java.util.List;
 import java.util.Locale;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 
+import de.aitools.aq.text.CombinedTextFilter;
 import de.aitools.aq.text.StopWordFilter;
 import de.aitools.aq.text.TextFilter;
-import de.aitools.aq.text.WordFilter;
 import de.aitools.aq.text.WordMatchFilter;
 
 /**
@@ -21,7 +20,9 @@ import de.aitools.aq.text.WordMatchFilter;
  * The extractor discard too small paragraphs, sentences with too few function
  * words (also known as stop words), and sentences with too few proper words
  * (naively defined as tokens that only consist of alphabetic characters and
- * hyphens within). 
+ * hyphens within). The paragraph length is checked before the language
+ * detection (see {@link #getParagraphFilters()}), so that short paragraphs
+ * like menu items are discarded without detecting their language.
  * </p><p>
  * The default settings are the ones used in
  * <pre>
@@ -89,6 +90,8 @@ public class PotthastJerichoExtractor extends JerichoHtmlSentenceExtractor {
   
   private final TextFilter wordMatchTextFilter;
 
+  private final CombinedTextFilter wordsTextFilter;
+
   //////////////////////////////////////////////////////////////////////////////
   //                                CONSTRUCTORS                              //
   //////////////////////////////////////////////////////////////////////////////
@@ -105,7 +108,12 @@ public class PotthastJerichoExtractor extends JerichoHtmlSentenceExtractor {
     this.setMinStopWordsInSentence(DEFAULT_MIN_NUM_STOP_WORDS_IN_SENTENCE);
     this.wordMatchTextFilter = new TextFilter(this.wordMatchFilter);
     this.setMinMatchingWordRatioInSentence(DEFAULT_MIN_MATCHING_WORD_RATIO);
+    this.wordsTextFilter = new CombinedTextFilter(
+        this.stopWordTextFilter, this.wordMatchTextFilter);
     this.setExtractLanguage(Locale.ENGLISH);
+    // the sentence words are checked through isValidSentence
+    this.getParagraphFilters().add("length", false, FilterCascade.Cost.CHEAP,
+        (paragraph, language) -> this.hasValidLength(paragraph));
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -231,19 +239,54 @@ public class PotthastJerichoExtractor extends JerichoHtmlSentenceExtractor {
   //                               FUNCTIONALITY                              //
   //////////////////////////////////////////////////////////////////////////////
   
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Checks whether given paragraph has at least the minimum length (see
+   * {@link #hasValidLength(String)}). The extraction checks the length also
+   * before the language detection, so an override can not accept shorter
+   * paragraphs (use {@link #setMinParagraphLengthInCharacters(int)} instead).
+   * </p>
+   */
   @Override
   protected boolean isValidParagraph(
       final String paragraph, final Locale paragraphLanguage) {
-    return paragraph.length() >= this.minParagraphLengthInCharacters;
+    return this.hasValidLength(paragraph);
   }
-  
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Checks whether given sentence has enough stop words and matching words
+   * (see {@link #hasValidWords(String, Locale)}).
+   * </p>
+   */
   @Override
   protected boolean isValidSentence(
       final String sentence, final Locale paragraphLanguage) {
-    final List<String> words = WordFilter.toWords(sentence, paragraphLanguage);
-    
-    return this.stopWordTextFilter.test(words, paragraphLanguage)
-        && this.wordMatchTextFilter.test(words, paragraphLanguage);
+    return this.hasValidWords(sentence, paragraphLanguage);
+  }
+  
+  /**
+   * Checks whether given paragraph has at least the minimum length.
+   * @see #setMinParagraphLengthInCharacters(int)
+   */
+  protected boolean hasValidLength(final String paragraph) {
+    return paragraph.length() >= this.minParagraphLengthInCharacters;
+  }
+  
+  /**
+   * Checks whether given sentence of given language has enough stop words and
+   * matching words, counting both in one pass over the sentence that stops
+   * once the result is decided (see {@link CombinedTextFilter}).
+   * @see #setMinStopWordsInSentence(int)
+   * @see #setMinStopWordRatioInSentence(double)
+   * @see #setMinMatchingWordsInSentence(int)
+   * @see #setMinMatchingWordRatioInSentence(double)
+   */
+  protected boolean hasValidWords(
+      final String sentence, final Locale paragraphLanguage) {
+    return this.wordsTextFilter.test(sentence, paragraphLanguage);
   }
 
   //////////////////////////////////////////////////////////////////////////////
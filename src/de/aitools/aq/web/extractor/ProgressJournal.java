@@ -0,0 +1,565 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * Journal of the progress of a local extraction run, so that a run that was
+ * aborted can be resumed without extracting the same documents again.
+ *
+ * <p>
+ * The documents of each input file are numbered in the order in which they are
+ * read. A document is <i>resolved</i> once it is in an output file that has
+ * been committed (see {@link #commit(String, Map)}) or once it is known that
+ * it produces no output (see {@link #resolve(String, long)}). For each input
+ * file, the journal keeps which documents are resolved and the offset of a
+ * record from which reading can continue (see {@link #getOffset(String)}),
+ * which is the offset of the first document that is not resolved yet, or of
+ * the last document if all are. When a run is resumed, the readers start at
+ * this offset and skip the resolved documents, and input files that are
+ * completely resolved are skipped altogether (see {@link #isDone(String)}).
+ * </p><p>
+ * The journal is a text file to which lines are appended, which consist of a
+ * keyword and values separated by spaces:
+ * </p><ul>
+ * <li><tt>progress &lt;offset&gt; &lt;sequence&gt; &lt;resolved&gt;
+ * &lt;input&gt;</tt>: The documents of given input file that are resolved, as
+ * comma-separated ranges of document numbers (e.g., <tt>0-41,43</tt>), or
+ * <tt>-</tt> if there are none, as well as the offset to continue reading at
+ * and the number of the first document at that offset.</li>
+ * <li><tt>commit &lt;part&gt;</tt>: The output file of given name has been
+ * committed, which also applies the progress lines since the previous commit
+ * or checkpoint. It is written before the output file gets its final name, so
+ * that a resumed run can finish the commit (see
+ * {@link RollingDocumentWriter#recover(File, Set)}).</li>
+ * <li><tt>checkpoint</tt>: Applies the progress lines since the previous
+ * commit or checkpoint without committing an output file.</li>
+ * <li><tt>done &lt;input&gt;</tt>: All documents of given input file are
+ * resolved.</li>
+ * </ul><p>
+ * Later progress lines replace earlier ones for the same input file. The
+ * journal is synced to disk after each commit. If a run is aborted while
+ * writing the journal, its incomplete last line is ignored, and so are the
+ * progress lines before it that were not applied yet.
+ * </p>
+ */
+public class ProgressJournal implements Closeable {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Name of the journal file in the output directory.
+   */
+  public static final String FILE_NAME = "_progress";
+
+  private static final String COMMIT = "commit";
+
+  private static final String CHECKPOINT = "checkpoint";
+
+  private static final String PROGRESS = "progress";
+
+  private static final String DONE = "done";
+
+  private static final String NO_VALUE = "-";
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final FileOutputStream output;
+
+  private final Set<String> committedFiles;
+
+  private final Map<String, InputProgress> inputs;
+
+  private final Set<String> changedInputs;
+
+  private DoneHook doneHook;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Opens the journal in given file, reading the progress from it if it
+   * exists, and creating it otherwise.
+   */
+  public ProgressJournal(final File file) throws IOException {
+    this(file, true);
+  }
+
+  /**
+   * Reads the journal in given file if it exists, and opens it for writing if
+   * so requested.
+   */
+  private ProgressJournal(final File file, final boolean writable)
+  throws IOException {
+    if (file == null) { throw new NullPointerException(); }
+    this.committedFiles = new HashSet<>();
+    this.inputs = new HashMap<>();
+    this.changedInputs = new LinkedHashSet<>();
+    this.doneHook = null;
+    if (file.exists()) {
+      this.read(file);
+      if (writable) { ProgressJournal.terminateLastLine(file); }
+    }
+    this.output = writable ? new FileOutputStream(file, true) : null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the names of the output files that have been committed.
+   */
+  public synchronized Set<String> getCommittedFiles() {
+    return Collections.unmodifiableSet(new HashSet<>(this.committedFiles));
+  }
+
+  /**
+   * Checks whether all documents of given input file are resolved.
+   */
+  public synchronized boolean isDone(final String inputFileName) {
+    final InputProgress input = this.inputs.get(inputFileName);
+    return input != null && input.done;
+  }
+
+  /**
+   * Gets the offset of the record in given input file at which to continue
+   * reading, or 0 if it has not been started.
+   */
+  public synchronized long getOffset(final String inputFileName) {
+    final InputProgress input = this.inputs.get(inputFileName);
+    return input == null ? 0 : input.getOffset();
+  }
+
+  /**
+   * Gets the number of the first document at the offset of
+   * {@link #getOffset(String)} for given input file.
+   */
+  public synchronized long getSequence(final String inputFileName) {
+    final InputProgress input = this.inputs.get(inputFileName);
+    return input == null ? 0 : input.getSequence();
+  }
+
+  /**
+   * Checks whether the document of given number of given input file is
+   * resolved.
+   */
+  public synchronized boolean isResolved(
+      final String inputFileName, final long sequence) {
+    final InputProgress input = this.inputs.get(inputFileName);
+    return input != null && input.isResolved(sequence);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the hook that is called for each input file once it is done, or
+   * <tt>null</tt> for none.
+   */
+  public synchronized void setDoneHook(final DoneHook doneHook) {
+    this.doneHook = doneHook;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Registers that the document of given number has been read from given input
+   * file.
+   * @param inputFileName The name of the input file
+   * @param sequence The number of the document
+   * @param offset The offset of the record of the document
+   * @param firstSequence The number of the first document at that offset
+   */
+  public synchronized void register(final String inputFileName,
+      final long sequence, final long offset, final long firstSequence) {
+    this.getInput(inputFileName).register(sequence, offset, firstSequence);
+  }
+
+  /**
+   * Registers that all documents of given input file have been read, which
+   * writes that it is done if they are all resolved.
+   */
+  public synchronized void finishReading(final String inputFileName)
+  throws IOException {
+    final InputProgress input = this.getInput(inputFileName);
+    input.readingFinished = true;
+    this.checkDone(inputFileName, input);
+  }
+
+  /**
+   * Marks the document of given number of given input file as resolved, as it
+   * does not appear in any output file. Its progress is written with the next
+   * commit (or when the input file is done).
+   */
+  public synchronized void resolve(
+      final String inputFileName, final long sequence) throws IOException {
+    final InputProgress input = this.getInput(inputFileName);
+    input.resolve(sequence);
+    this.changedInputs.add(inputFileName);
+    this.checkDone(inputFileName, input);
+  }
+
+  /**
+   * Marks the documents of given numbers of the input files as resolved and
+   * writes that the output file of given name is committed, together with the
+   * progress of all input files that changed since the last commit.
+   * @param fileName The name of the output file
+   * @param sequences The numbers of the documents in the output file by input
+   * file name
+   */
+  public synchronized void commit(
+      final String fileName, final Map<String, List<Long>> sequences)
+  throws IOException {
+    for (final Map.Entry<String, List<Long>> entry : sequences.entrySet()) {
+      final InputProgress input = this.getInput(entry.getKey());
+      for (final long sequence : entry.getValue()) {
+        input.resolve(sequence);
+      }
+      this.changedInputs.add(entry.getKey());
+    }
+
+    final StringBuilder lines = new StringBuilder();
+    this.appendChanged(lines);
+    lines.append(COMMIT).append(' ').append(fileName).append('\n');
+    this.append(lines);
+    this.committedFiles.add(fileName);
+    for (final String inputFileName : sequences.keySet()) {
+      this.checkDone(inputFileName, this.inputs.get(inputFileName));
+    }
+  }
+
+  /**
+   * Marks the documents of given input file that are resolved in the journal
+   * in given file, which belongs to another run, as resolved in this journal,
+   * and continues reading where that run would have continued. This is used
+   * when this run takes over the input file from another run that died, so
+   * that the documents which that run committed are not extracted again. The
+   * other journal is only read, and only its progress that was applied by a
+   * commit or checkpoint is taken, so it can be in use. Must be called before
+   * any document of the input file is registered in this journal.
+   * @param inputFileName The name of the input file
+   * @param file The journal file of the other run, which need not exist
+   */
+  public synchronized void adopt(final String inputFileName, final File file)
+  throws IOException {
+    if (!file.exists()) { return; }
+    final InputProgress adopted =
+        new ProgressJournal(file, false).inputs.get(inputFileName);
+    if (adopted == null) { return; }
+    final InputProgress input = this.getInput(inputFileName);
+    if (!input.pending.isEmpty()) {
+      throw new IllegalStateException(
+          "Documents already registered for " + inputFileName);
+    }
+    input.adopt(adopted);
+    this.changedInputs.add(inputFileName);
+    if (adopted.done) {
+      input.readingFinished = true;
+      this.checkDone(inputFileName, input);
+    }
+  }
+
+  /**
+   * Writes the progress of all input files that changed since the last commit
+   * and closes the journal.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      final StringBuilder lines = new StringBuilder();
+      this.appendChanged(lines);
+      if (lines.length() > 0) {
+        this.append(lines.append(CHECKPOINT).append('\n'));
+      }
+    } finally {
+      this.output.close();
+    }
+  }
+
+  private InputProgress getInput(final String inputFileName) {
+    return this.inputs.computeIfAbsent(
+        inputFileName, name -> new InputProgress());
+  }
+
+  private void checkDone(final String inputFileName, final InputProgress input)
+  throws IOException {
+    if (!input.done && input.readingFinished && input.pending.isEmpty()) {
+      input.done = true;
+      this.changedInputs.remove(inputFileName);
+      this.append(new StringBuilder(DONE).append(' ')
+          .append(inputFileName).append('\n'));
+      if (this.doneHook != null) {
+        this.doneHook.done(inputFileName);
+      }
+    }
+  }
+
+  private void appendChanged(final StringBuilder lines) {
+    for (final String inputFileName : this.changedInputs) {
+      final InputProgress input = this.inputs.get(inputFileName);
+      if (!input.done) {
+        lines.append(PROGRESS).append(' ').append(input.getOffset())
+          .append(' ').append(input.getSequence()).append(' ');
+        input.appendResolved(lines);
+        lines.append(' ').append(inputFileName).append('\n');
+      }
+    }
+    this.changedInputs.clear();
+  }
+
+  private void append(final CharSequence lines) throws IOException {
+    this.output.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+    this.output.flush();
+    this.output.getFD().sync();
+  }
+
+  private void read(final File file) throws IOException {
+    final Map<String, InputProgress> staged = new HashMap<>();
+    // reads up to the current length, as another run may be appending to it
+    final long length = file.length();
+    // the last line is incomplete if the file does not end with a newline
+    final boolean complete = ProgressJournal.endsWithNewline(file, length);
+    try (final BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new BoundedInputStream(new FileInputStream(file), length),
+        StandardCharsets.UTF_8))) {
+      String line = reader.readLine();
+      while (line != null) {
+        final String nextLine = reader.readLine();
+        if (nextLine != null || complete) {
+          try {
+            this.parse(line, staged);
+          } catch (final IllegalArgumentException e) {
+            throw new IOException("Invalid journal " + file, e);
+          }
+        }
+        line = nextLine;
+      }
+    }
+  }
+
+  private void parse(
+      final String line, final Map<String, InputProgress> staged) {
+    if (line.startsWith(PROGRESS + ' ')) {
+      final String[] fields = line.split(" ", 5);
+      if (fields.length != 5) {
+        throw new IllegalArgumentException("Invalid journal line: " + line);
+      }
+      final InputProgress input = new InputProgress();
+      try {
+        input.lastOffset = Long.parseLong(fields[1]);
+        input.lastFirstSequence = Long.parseLong(fields[2]);
+      } catch (final NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid journal line: " + line, e);
+      }
+      input.parseResolved(fields[3]);
+      staged.put(fields[4], input);
+    } else if (line.startsWith(COMMIT + ' ') || line.equals(CHECKPOINT)) {
+      for (final Map.Entry<String, InputProgress> entry : staged.entrySet()) {
+        if (!this.isDone(entry.getKey())) {
+          this.inputs.put(entry.getKey(), entry.getValue());
+        }
+      }
+      staged.clear();
+      if (!line.equals(CHECKPOINT)) {
+        this.committedFiles.add(line.substring(COMMIT.length() + 1));
+      }
+    } else if (line.startsWith(DONE + ' ')) {
+      this.getInput(line.substring(DONE.length() + 1)).done = true;
+    } else if (!line.isEmpty()) {
+      throw new IllegalArgumentException("Invalid journal line: " + line);
+    }
+  }
+
+  private static boolean endsWithNewline(final File file, final long length)
+  throws IOException {
+    try (final RandomAccessFile access = new RandomAccessFile(file, "r")) {
+      if (length == 0) { return true; }
+      access.seek(length - 1);
+      return access.read() == '\n';
+    }
+  }
+
+  private static void terminateLastLine(final File file) throws IOException {
+    if (!ProgressJournal.endsWithNewline(file, file.length())) {
+      try (final RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+        access.seek(access.length());
+        access.write('\n');
+      }
+    }
+  }
+
+  /**
+   * The progress of one input file.
+   */
+  private static class InputProgress {
+
+    // all documents before this one are resolved
+    private long nextUnresolved;
+
+    private final TreeSet<Long> resolvedAfterNext;
+
+    // offset and first sequence at that offset by unresolved document
+    private final TreeMap<Long, long[]> pending;
+
+    private long lastOffset;
+
+    private long lastFirstSequence;
+
+    private boolean readingFinished;
+
+    private boolean done;
+
+    private InputProgress() {
+      this.nextUnresolved = 0;
+      this.resolvedAfterNext = new TreeSet<>();
+      this.pending = new TreeMap<>();
+      this.lastOffset = 0;
+      this.lastFirstSequence = 0;
+      this.readingFinished = false;
+      this.done = false;
+    }
+
+    private long getOffset() {
+      if (this.pending.isEmpty()) { return this.lastOffset; }
+      return this.pending.firstEntry().getValue()[0];
+    }
+
+    private long getSequence() {
+      if (this.pending.isEmpty()) { return this.lastFirstSequence; }
+      return this.pending.firstEntry().getValue()[1];
+    }
+
+    private boolean isResolved(final long sequence) {
+      return this.done || sequence < this.nextUnresolved
+          || this.resolvedAfterNext.contains(sequence);
+    }
+
+    private void register(
+        final long sequence, final long offset, final long firstSequence) {
+      this.pending.put(sequence, new long[] { offset, firstSequence });
+      this.lastOffset = offset;
+      this.lastFirstSequence = firstSequence;
+    }
+
+    private void resolve(final long sequence) {
+      this.pending.remove(sequence);
+      if (sequence == this.nextUnresolved) {
+        ++this.nextUnresolved;
+        while (this.resolvedAfterNext.remove(this.nextUnresolved)) {
+          ++this.nextUnresolved;
+        }
+      } else if (sequence > this.nextUnresolved) {
+        this.resolvedAfterNext.add(sequence);
+      }
+    }
+
+    /**
+     * Adds the resolved documents of given progress, and takes its offset if
+     * it is further in the input file. As all documents before the offset of a
+     * progress are resolved in it, they are then resolved in this one, too.
+     */
+    private void adopt(final InputProgress other) {
+      this.resolvedAfterNext.addAll(other.resolvedAfterNext);
+      this.nextUnresolved =
+          Math.max(this.nextUnresolved, other.nextUnresolved);
+      this.resolvedAfterNext.headSet(this.nextUnresolved).clear();
+      while (this.resolvedAfterNext.remove(this.nextUnresolved)) {
+        ++this.nextUnresolved;
+      }
+      if (other.lastOffset > this.lastOffset) {
+        this.lastOffset = other.lastOffset;
+        this.lastFirstSequence = other.lastFirstSequence;
+      }
+    }
+
+    private void appendResolved(final StringBuilder builder) {
+      final int length = builder.length();
+      long start = 0;
+      long end = this.nextUnresolved;
+      final Iterator<Long> sequences = this.resolvedAfterNext.iterator();
+      while (true) {
+        final long sequence = sequences.hasNext() ? sequences.next() : -1;
+        if (sequence == end) {
+          ++end;
+        } else {
+          if (end > start) {
+            if (builder.length() > length) { builder.append(','); }
+            builder.append(start);
+            if (end - 1 > start) { builder.append('-').append(end - 1); }
+          }
+          if (sequence < 0) { break; }
+          start = sequence;
+          end = sequence + 1;
+        }
+      }
+      if (builder.length() == length) { builder.append(NO_VALUE); }
+    }
+
+    private void parseResolved(final String ranges) {
+      if (ranges.equals(NO_VALUE)) { return; }
+      try {
+        for (final String range : ranges.split(",")) {
+          final int dash = range.indexOf('-');
+          final long start = Long.parseLong(
+              dash < 0 ? range : range.substring(0, dash));
+          final long end = Long.parseLong(
+              dash < 0 ? range : range.substring(dash + 1));
+          if (start <= this.nextUnresolved) {
+            this.nextUnresolved = Math.max(this.nextUnresolved, end + 1);
+          } else {
+            for (long sequence = start; sequence <= end; ++sequence) {
+              this.resolvedAfterNext.add(sequence);
+            }
+          }
+        }
+      } catch (final NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid ranges: " + ranges, e);
+      }
+    }
+
+  }
+
+  /**
+   * Hook that is called when all documents of an input file are resolved.
+   */
+  @FunctionalInterface
+  public static interface DoneHook {
+
+    /**
+     * Called when all documents of the input file of given name are resolved,
+     * after this has been written to the journal.
+     * @param inputFileName The name of the input file
+     */
+    void done(final String inputFileName) throws IOException;
+
+  }
+
+}
@@ -0,0 +1,494 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A lightweight parser for HTTP responses as they are stored in WARC files.
+ *
+ * <p>
+ * This parses the status line and the header fields directly from the bytes of
+ * the record, removes the chunked transfer encoding, and decodes the gzip and
+ * deflate content encodings. The body is a view of the record's bytes if it
+ * has neither a transfer nor a content encoding, so in the common case the
+ * body is not copied before it is decoded into characters.
+ * </p><p>
+ * Like with HttpCore, which was used before, a <tt>Content-Length</tt> that
+ * is larger than the record, truncated chunks, and truncated or corrupt
+ * compressed bodies throw an {@link IOException}. A malformed
+ * <tt>Content-Length</tt> is ignored, so that the rest of the record is the
+ * body. Like {@link java.util.zip.GZIPInputStream}, gzip bodies can
+ * consist of several members, which are decoded one after another, and bytes
+ * after the last member that do not start another member are ignored.
+ * </p>
+ */
+public class RawHttpResponse {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  public static final String HEADER_CONTENT_TYPE = "Content-Type";
+
+  public static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+  public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+  public static final String HEADER_TRANSFER_ENCODING = "Transfer-Encoding";
+
+  private static final String HTTP_VERSION_PREFIX = "HTTP/";
+
+  private static final String CHARSET_PARAMETER = "charset=";
+
+  private static final int GZIP_MAGIC = 0x8B1F;
+
+  private static final int GZIP_FLAG_HEADER_CRC = 0x02;
+
+  private static final int GZIP_FLAG_EXTRA = 0x04;
+
+  private static final int GZIP_FLAG_NAME = 0x08;
+
+  private static final int GZIP_FLAG_COMMENT = 0x10;
+
+  private static final int GZIP_METHOD_DEFLATE = 8;
+
+  private static final int GZIP_HEADER_LENGTH = 10;
+
+  private static final int GZIP_TRAILER_LENGTH = 8;
+
+  private static final int INFLATE_BUFFER_SIZE = 1 << 13;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final int statusCode;
+
+  private final List<String> headerNames;
+
+  private final List<String> headerValues;
+
+  private final ByteBuffer body;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private RawHttpResponse(
+      final int statusCode,
+      final List<String> headerNames, final List<String> headerValues,
+      final ByteBuffer body) {
+    this.statusCode = statusCode;
+    this.headerNames = headerNames;
+    this.headerValues = headerValues;
+    this.body = body;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the status code of the response.
+   */
+  public int getStatusCode() {
+    return this.statusCode;
+  }
+
+  /**
+   * Gets the value of the last header field with given name (ignoring case), or
+   * <tt>null</tt> if there is none.
+   */
+  public String getHeader(final String name) {
+    for (int h = this.headerNames.size() - 1; h >= 0; --h) {
+      if (this.headerNames.get(h).equalsIgnoreCase(name)) {
+        return this.headerValues.get(h);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the value of the last <tt>Content-Type</tt> header field, or
+   * <tt>null</tt> if there is none.
+   */
+  public String getContentType() {
+    return this.getHeader(HEADER_CONTENT_TYPE);
+  }
+
+  /**
+   * Gets the charset specified in the <tt>Content-Type</tt> header field, or
+   * <tt>null</tt> if none is specified or it is not supported.
+   */
+  public Charset getCharset() {
+    final String contentType = this.getContentType();
+    if (contentType == null) { return null; }
+    final int parameter =
+        contentType.toLowerCase(Locale.ROOT).indexOf(CHARSET_PARAMETER);
+    if (parameter < 0) { return null; }
+    int start = parameter + CHARSET_PARAMETER.length();
+    int end = contentType.indexOf(';', start);
+    if (end < 0) { end = contentType.length(); }
+    String name = contentType.substring(start, end).trim();
+    if (name.length() >= 2 && (name.charAt(0) == '"' || name.charAt(0) == '\'')
+        && name.charAt(name.length() - 1) == name.charAt(0)) {
+      name = name.substring(1, name.length() - 1);
+    }
+    try {
+      return Charset.forName(name);
+    } catch (final IllegalCharsetNameException | UnsupportedCharsetException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Gets a read-only view of the body of the response, with transfer and
+   * content encodings removed.
+   */
+  public ByteBuffer getBody() {
+    return this.body.asReadOnlyBuffer();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Parses the HTTP response from the buffer (from its position to its limit).
+   * The position of the buffer is not changed.
+   * @throws IOException If the bytes are not an HTTP response or use an
+   * unsupported content encoding
+   */
+  public static RawHttpResponse parse(final ByteBuffer buffer)
+  throws IOException {
+    final ByteBuffer input = buffer.duplicate();
+
+    final String statusLine = RawHttpResponse.readLine(input);
+    if (statusLine == null || !statusLine.startsWith(HTTP_VERSION_PREFIX)) {
+      throw new IOException("Invalid status line: " + statusLine);
+    }
+    final int statusCode = RawHttpResponse.parseStatusCode(statusLine);
+
+    final List<String> headerNames = new ArrayList<>();
+    final List<String> headerValues = new ArrayList<>();
+    String line = RawHttpResponse.readLine(input);
+    while (line != null && !line.isEmpty()) {
+      final char first = line.charAt(0);
+      if ((first == ' ' || first == '\t') && !headerValues.isEmpty()) {
+        // continuation of the previous field
+        final int last = headerValues.size() - 1;
+        headerValues.set(last, headerValues.get(last) + ' ' + line.trim());
+      } else {
+        final int colon = line.indexOf(':');
+        if (colon > 0) {
+          headerNames.add(line.substring(0, colon).trim());
+          headerValues.add(line.substring(colon + 1).trim());
+        }
+      }
+      line = RawHttpResponse.readLine(input);
+    }
+
+    final RawHttpResponse header = new RawHttpResponse(
+        statusCode, headerNames, headerValues, input);
+    ByteBuffer body = input.slice();
+
+    final String transferEncoding = header.getHeader(HEADER_TRANSFER_ENCODING);
+    if (transferEncoding != null
+        && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+      body = RawHttpResponse.dechunk(body);
+    } else {
+      final String contentLength = header.getHeader(HEADER_CONTENT_LENGTH);
+      if (contentLength != null) {
+        try {
+          final long length = Long.parseLong(contentLength.trim());
+          if (length > body.remaining()) {
+            throw new IOException("Premature end of Content-Length delimited"
+                + " body (expected: " + length + "; received: "
+                + body.remaining() + ")");
+          }
+          if (length >= 0) {
+            body.limit((int) length);
+          }
+        } catch (final NumberFormatException e) {
+          // use all remaining bytes like for identity encoding
+        }
+      }
+    }
+
+    final String contentEncoding = header.getHeader(HEADER_CONTENT_ENCODING);
+    if (contentEncoding != null && body.hasRemaining()) {
+      for (final String codec : contentEncoding.split(",")) {
+        final String codecName = codec.trim().toLowerCase(Locale.ROOT);
+        switch (codecName) {
+        case "gzip":
+        case "x-gzip":
+          body = RawHttpResponse.gunzip(body);
+          break;
+        case "deflate":
+          body = RawHttpResponse.inflate(body);
+          break;
+        case "identity":
+        case "":
+          break;
+        default:
+          throw new IOException("Unsupported Content-Encoding: " + codec);
+        }
+      }
+    }
+
+    return new RawHttpResponse(statusCode, headerNames, headerValues, body);
+  }
+
+  private static int parseStatusCode(final String statusLine)
+  throws IOException {
+    final int start = statusLine.indexOf(' ');
+    if (start < 0) {
+      throw new IOException("Invalid status line: " + statusLine);
+    }
+    int end = statusLine.indexOf(' ', start + 1);
+    if (end < 0) { end = statusLine.length(); }
+    try {
+      return Integer.parseInt(statusLine.substring(start + 1, end).trim());
+    } catch (final NumberFormatException e) {
+      throw new IOException("Invalid status line: " + statusLine);
+    }
+  }
+
+  /**
+   * Reads the line starting at the current position of the buffer (without the
+   * line break), or the rest of the buffer if it contains no line break, or
+   * <tt>null</tt> if the buffer has no remaining bytes.
+   */
+  private static String readLine(final ByteBuffer buffer) {
+    final int start = buffer.position();
+    final int limit = buffer.limit();
+    if (start >= limit) { return null; }
+    int p = start;
+    while (p < limit && buffer.get(p) != '\n') { ++p; }
+    int end = p;
+    if (end > start && buffer.get(end - 1) == '\r') { --end; }
+    final char[] line = new char[end - start];
+    for (int c = 0; c < line.length; ++c) {
+      line[c] = (char) (buffer.get(start + c) & 0xFF);
+    }
+    buffer.position(Math.min(p + 1, limit));
+    return new String(line);
+  }
+
+  private static ByteBuffer dechunk(final ByteBuffer input)
+  throws IOException {
+    final ByteArrayOutputStream output =
+        new ByteArrayOutputStream(input.remaining());
+    while (true) {
+      final String sizeLine = RawHttpResponse.readLine(input);
+      if (sizeLine == null) {
+        throw new IOException("Premature end of chunk coded body");
+      }
+      int end = sizeLine.indexOf(';');
+      if (end < 0) { end = sizeLine.length(); }
+      final int size;
+      try {
+        size = Integer.parseInt(sizeLine.substring(0, end).trim(), 16);
+      } catch (final NumberFormatException e) {
+        throw new IOException("Bad chunk header: " + sizeLine);
+      }
+      if (size < 0) {
+        throw new IOException("Negative chunk size: " + sizeLine);
+      }
+      if (size == 0) {
+        return ByteBuffer.wrap(output.toByteArray());
+      }
+      if (size > input.remaining()) {
+        throw new IOException("Truncated chunk (expected size: " + size
+            + "; actual size: " + input.remaining() + ")");
+      }
+      final int position = input.position();
+      if (input.hasArray()) {
+        output.write(input.array(), input.arrayOffset() + position, size);
+      } else {
+        for (int b = 0; b < size; ++b) {
+          output.write(input.get(position + b));
+        }
+      }
+      input.position(position + size);
+      final String lineBreak = RawHttpResponse.readLine(input);
+      if (lineBreak != null && !lineBreak.isEmpty()) {
+        throw new IOException("Unexpected content at the end of chunk");
+      }
+    }
+  }
+
+  private static ByteBuffer gunzip(final ByteBuffer input) throws IOException {
+    final ByteBuffer compressed = input.duplicate();
+    RawHttpResponse.skipGzipHeader(compressed);
+    ByteBuffer output = RawHttpResponse.inflateGzipMember(compressed);
+    while (compressed.hasRemaining()) {
+      final int position = compressed.position();
+      try {
+        RawHttpResponse.skipGzipHeader(compressed);
+      } catch (final IOException e) {
+        // like GZIPInputStream, ignores what follows if it is not a member
+        compressed.position(position);
+        break;
+      }
+      final ByteBuffer member = RawHttpResponse.inflateGzipMember(compressed);
+      final ByteBuffer joined =
+          ByteBuffer.allocate(output.remaining() + member.remaining());
+      joined.put(output).put(member).flip();
+      output = joined;
+    }
+    return output;
+  }
+
+  /**
+   * Moves the position of the buffer from the start of a gzip member to the
+   * start of its compressed data.
+   */
+  private static void skipGzipHeader(final ByteBuffer compressed)
+  throws IOException {
+    RawHttpResponse.checkGzipHeader(compressed, GZIP_HEADER_LENGTH);
+    final int magic =
+        (compressed.get() & 0xFF) | (compressed.get() & 0xFF) << 8;
+    if (magic != GZIP_MAGIC) {
+      throw new IOException("Not in gzip format");
+    }
+    final int method = compressed.get() & 0xFF;
+    if (method != GZIP_METHOD_DEFLATE) {
+      throw new IOException("Unsupported gzip compression method: " + method);
+    }
+    final int flags = compressed.get() & 0xFF;
+    compressed.position(compressed.position() + 6); // time, flags, OS
+    if ((flags & GZIP_FLAG_EXTRA) != 0) {
+      RawHttpResponse.checkGzipHeader(compressed, 2);
+      final int length =
+          (compressed.get() & 0xFF) | (compressed.get() & 0xFF) << 8;
+      RawHttpResponse.checkGzipHeader(compressed, length);
+      compressed.position(compressed.position() + length);
+    }
+    if ((flags & GZIP_FLAG_NAME) != 0) {
+      RawHttpResponse.skipZeroTerminated(compressed);
+    }
+    if ((flags & GZIP_FLAG_COMMENT) != 0) {
+      RawHttpResponse.skipZeroTerminated(compressed);
+    }
+    if ((flags & GZIP_FLAG_HEADER_CRC) != 0) {
+      RawHttpResponse.checkGzipHeader(compressed, 2);
+      compressed.position(compressed.position() + 2);
+    }
+  }
+
+  private static void skipZeroTerminated(final ByteBuffer compressed)
+  throws IOException {
+    do {
+      RawHttpResponse.checkGzipHeader(compressed, 1);
+    } while (compressed.get() != 0);
+  }
+
+  private static void checkGzipHeader(
+      final ByteBuffer compressed, final int length)
+  throws IOException {
+    if (compressed.remaining() < length) {
+      throw new IOException("Truncated gzip header");
+    }
+  }
+
+  /**
+   * Inflates the compressed data of a gzip member and checks its trailer,
+   * moving the position of the buffer to the end of the member.
+   */
+  private static ByteBuffer inflateGzipMember(final ByteBuffer compressed)
+  throws IOException {
+    final ByteBuffer output = RawHttpResponse.inflate(compressed, true);
+    if (compressed.remaining() < GZIP_TRAILER_LENGTH) {
+      throw new IOException("Truncated gzip trailer");
+    }
+    final CRC32 checksum = new CRC32();
+    checksum.update(output.array(), output.arrayOffset() + output.position(),
+        output.remaining());
+    final long expectedChecksum = RawHttpResponse.getUnsignedInt(compressed);
+    final long expectedSize = RawHttpResponse.getUnsignedInt(compressed);
+    if (expectedChecksum != checksum.getValue()
+        || expectedSize != (output.remaining() & 0xFFFFFFFFL)) {
+      throw new IOException("Corrupt gzip trailer");
+    }
+    return output;
+  }
+
+  /**
+   * Reads an unsigned 32 bit integer in little-endian byte order.
+   */
+  private static long getUnsignedInt(final ByteBuffer buffer) {
+    long value = 0;
+    for (int b = 0; b < 4; ++b) {
+      value |= (buffer.get() & 0xFFL) << (8 * b);
+    }
+    return value;
+  }
+
+  private static ByteBuffer inflate(final ByteBuffer input) throws IOException {
+    // like org.apache.http.client.entity.DeflateInputStream: zlib header if it
+    // is there, raw deflate otherwise
+    try {
+      return RawHttpResponse.inflate(input.duplicate(), false);
+    } catch (final IOException e) {
+      return RawHttpResponse.inflate(input.duplicate(), true);
+    }
+  }
+
+  /**
+   * Inflates the compressed data starting at the position of the buffer, and
+   * moves the position to the end of the compressed data.
+   */
+  private static ByteBuffer inflate(final ByteBuffer input, final boolean raw)
+  throws IOException {
+    final Inflater inflater = new Inflater(raw);
+    try {
+      final byte[] compressed;
+      final int offset;
+      final int length = input.remaining();
+      if (input.hasArray()) {
+        compressed = input.array();
+        offset = input.arrayOffset() + input.position();
+      } else {
+        compressed = new byte[length];
+        input.duplicate().get(compressed);
+        offset = 0;
+      }
+      inflater.setInput(compressed, offset, length);
+
+      byte[] output = new byte[Math.max(INFLATE_BUFFER_SIZE, length * 4)];
+      int size = 0;
+      while (!inflater.finished()) {
+        if (size == output.length) {
+          final byte[] larger = new byte[output.length * 2];
+          System.arraycopy(output, 0, larger, 0, size);
+          output = larger;
+        }
+        final int numInflated =
+            inflater.inflate(output, size, output.length - size);
+        size += numInflated;
+        if (numInflated == 0
+            && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Unexpected end of compressed body");
+        }
+      }
+      input.position(input.position() + length - inflater.getRemaining());
+      return ByteBuffer.wrap(output, 0, size);
+    } catch (final DataFormatException e) {
+      throw new IOException(e.getMessage(), e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+}
@@ -0,0 +1,72 @@
+package de.aitools.aq.web.extractor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A WARC record with a parsed header and its content block as raw bytes.
+ *
+ * <p>
+ * Unlike the Lemur project's <tt>WarcRecord</tt>, the content is not copied
+ * into an own array, but is a view of the buffer the record was read from
+ * (e.g., a memory-mapped file).
+ * </p>
+ */
+public class RawWarcRecord {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final WarcHeader header;
+
+  private final ByteBuffer content;
+
+  private final long offset;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new record.
+   * @param header The parsed WARC header
+   * @param content The content block, from its position to its limit
+   * @param offset The position of the record in its file
+   */
+  public RawWarcRecord(
+      final WarcHeader header, final ByteBuffer content, final long offset) {
+    if (header == null) { throw new NullPointerException(); }
+    if (content == null) { throw new NullPointerException(); }
+    this.header = header;
+    this.content = content;
+    this.offset = offset;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the WARC header of this record.
+   */
+  public WarcHeader getHeader() {
+    return this.header;
+  }
+
+  /**
+   * Gets a read-only view of the content block of this record (from its
+   * position to its limit), which shares the bytes with the buffer the record
+   * was read from.
+   */
+  public ByteBuffer getContent() {
+    return this.content.asReadOnlyBuffer();
+  }
+
+  /**
+   * Gets the position of this record in its file.
+   */
+  public long getOffset() {
+    return this.offset;
+  }
+
+}
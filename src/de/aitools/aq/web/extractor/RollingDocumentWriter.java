@@ -0,0 +1,419 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * A {@link DocumentWriter} that writes to a sequence of (compressed) part files
+ * in a directory, starting a new file when the current one is large enough.
+ *
+ * <p>
+ * The files are named like the output files of Hadoop:
+ * <tt>part-m-&lt;number&gt;</tt> followed by the extension of the
+ * {@link OutputCompression}. The numbers of the files of one writer start at a
+ * given number and increase by a given step, so that several writers can write
+ * to the same directory (e.g., writer <tt>w</tt> of <tt>n</tt> writes the parts
+ * <tt>w</tt>, <tt>w + n</tt>, <tt>w + 2n</tt>, and so on).
+ * </p><p>
+ * The size of the current file is checked after each document, so files are
+ * larger than the limit by up to the size of one document and the buffer of
+ * the compression. For this, each document is passed on to the compression
+ * right away, but the data is only written to the file in chunks of
+ * {@link #OUTPUT_BUFFER_SIZE}. The first file is created right away, so each
+ * writer produces at least one (possibly empty) file.
+ * </p><p>
+ * If the compression {@link OutputCompression#hasIndex()}, the index of each
+ * file is written to a hidden file next to it (see
+ * {@link BlockGzipOutputStream#getIndexFileName(String)}), and each document
+ * is a record of the {@link BlockGzipOutputStream}.
+ * </p><p>
+ * Each file is committed atomically: it is written under a name with the
+ * prefix {@link #IN_PROGRESS_PREFIX} (which Hadoop ignores as input), and only
+ * renamed to its final name once it is complete. If a {@link CommitHook} is
+ * set, the file is synced to disk before the hook is called, and the hook is
+ * called before the file is renamed, so that a {@link ProgressJournal} can
+ * record the commit first. A later run can then finish or discard the commits
+ * of an aborted run using {@link #recover(File, Set)}.
+ * </p>
+ */
+public class RollingDocumentWriter extends DocumentWriter {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Value to use in {@link #setMaxBytesPerFile(long)} and
+   * {@link #setMaxDocumentsPerFile(long)} to specify that files have no limit.
+   */
+  public static final long NO_LIMIT = Long.MAX_VALUE;
+
+  /**
+   * Size of the buffer before each output file.
+   */
+  public static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
+  /**
+   * Prefix of the name of a file while it is written.
+   */
+  public static final String IN_PROGRESS_PREFIX = "_";
+
+  private static final String FILE_NAME_PREFIX = "part-m-";
+
+  private static final String FILE_NAME_FORMAT = FILE_NAME_PREFIX + "%05d";
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final File directory;
+
+  private final int partStep;
+
+  private final DocumentWriter.Format format;
+
+  private final boolean writeNames;
+
+  private final OutputCompression compression;
+
+  private long maxBytesPerFile;
+
+  private long maxDocumentsPerFile;
+
+  private CommitHook commitHook;
+
+  private int nextPart;
+
+  private final List<File> files;
+
+  private File file;
+
+  private BufferedOutputStream fileOutput;
+
+  private CountingOutputStream countingOutput;
+
+  private BlockGzipOutputStream blockOutput;
+
+  private DocumentWriter writer;
+
+  private long numDocumentsInFile;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new writer and its first file.
+   * @param directory The directory to write the files to
+   * @param firstPart The number of the first file
+   * @param partStep The difference between the numbers of consecutive files
+   * @param format The output format
+   * @param writeNames Whether to write names in the {@link Format#LINES} format
+   * @param compression The compression of the files
+   */
+  public RollingDocumentWriter(final File directory,
+      final int firstPart, final int partStep,
+      final DocumentWriter.Format format, final boolean writeNames,
+      final OutputCompression compression)
+  throws IOException {
+    if (directory == null) { throw new NullPointerException(); }
+    if (format == null) { throw new NullPointerException(); }
+    if (compression == null) { throw new NullPointerException(); }
+    if (firstPart < 0) {
+      throw new IllegalArgumentException("Negative part: " + firstPart);
+    }
+    if (partStep <= 0) {
+      throw new IllegalArgumentException("Non-positive step: " + partStep);
+    }
+    this.directory = directory;
+    this.partStep = partStep;
+    this.format = format;
+    this.writeNames = writeNames;
+    this.compression = compression;
+    this.setMaxBytesPerFile(NO_LIMIT);
+    this.setMaxDocumentsPerFile(NO_LIMIT);
+    this.commitHook = null;
+    this.nextPart = firstPart;
+    this.files = new ArrayList<>();
+    this.file = null;
+    this.fileOutput = null;
+    this.countingOutput = null;
+    this.blockOutput = null;
+    this.writer = null;
+    this.openFile();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the files this writer committed so far.
+   */
+  public List<File> getFiles() {
+    return Collections.unmodifiableList(this.files);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the number of (compressed) bytes after which to start a new file, or
+   * {@link #NO_LIMIT}.
+   */
+  public void setMaxBytesPerFile(final long maxBytesPerFile) {
+    if (maxBytesPerFile <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of bytes: " + maxBytesPerFile);
+    }
+    this.maxBytesPerFile = maxBytesPerFile;
+  }
+
+  /**
+   * Sets the number of documents after which to start a new file, or
+   * {@link #NO_LIMIT}. Documents without sentences are not counted, as they
+   * are not written.
+   */
+  public void setMaxDocumentsPerFile(final long maxDocumentsPerFile) {
+    if (maxDocumentsPerFile <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of documents: " + maxDocumentsPerFile);
+    }
+    this.maxDocumentsPerFile = maxDocumentsPerFile;
+  }
+
+  /**
+   * Sets the hook that is called for each complete file before it is renamed
+   * to its final name, or <tt>null</tt> for none.
+   */
+  public void setCommitHook(final CommitHook commitHook) {
+    this.commitHook = commitHook;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public void write(final ExtractedDocument document) throws IOException {
+    if (document.getNumSentences() == 0) { return; }
+    if (this.writer == null) { this.openFile(); }
+    this.writer.write(document);
+    ++this.numDocumentsInFile;
+    if (this.blockOutput != null) {
+      // blocks may only end after complete documents
+      this.writer.flush();
+      this.blockOutput.endRecord();
+    } else if (this.maxBytesPerFile != NO_LIMIT) {
+      // only reaches the counting output, see openFile()
+      this.writer.flush();
+    }
+    if (this.numDocumentsInFile >= this.maxDocumentsPerFile
+        || this.countingOutput.getByteCount() >= this.maxBytesPerFile) {
+      this.closeFile();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (this.writer != null) {
+      this.writer.flush();
+      this.fileOutput.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.closeFile();
+  }
+
+  /**
+   * Finishes the commits of an aborted run in given directory: renames the
+   * in-progress files that were committed to their final name, and deletes
+   * the other ones.
+   * @param directory The output directory
+   * @param committedFiles The (final) names of the committed files
+   * @return The number after the highest part number of the files in the
+   * directory, at which a new run should start numbering its files
+   */
+  public static int recover(
+      final File directory, final Set<String> committedFiles)
+  throws IOException {
+    final File[] files = directory.listFiles();
+    if (files == null) { return 0; }
+    int nextPart = 0;
+    for (final File file : files) {
+      String name = file.getName();
+      if (RollingDocumentWriter.isInProgressFileName(name)) {
+        name = name.substring(IN_PROGRESS_PREFIX.length());
+        final String indexedFileName =
+            BlockGzipOutputStream.getIndexedFileName(name);
+        final String fileName =
+            indexedFileName == null ? name : indexedFileName;
+        if (committedFiles.contains(fileName)) {
+          RollingDocumentWriter.rename(file, new File(directory, name));
+        } else {
+          if (!file.delete()) {
+            throw new IOException("Could not delete " + file);
+          }
+          continue;
+        }
+      }
+      nextPart = Math.max(nextPart, RollingDocumentWriter.getPart(name) + 1);
+    }
+    return nextPart;
+  }
+
+  /**
+   * Gets the name of the file of given part number without extension.
+   */
+  public static String getFileName(final int part) {
+    return String.format(FILE_NAME_FORMAT, part);
+  }
+
+  /**
+   * Gets the part number of the (committed) file of given name, or -1 if it is
+   * not the name of a file written by this class.
+   */
+  public static int getPart(final String fileName) {
+    if (!fileName.startsWith(FILE_NAME_PREFIX)) { return -1; }
+    final int end = fileName.indexOf('.');
+    try {
+      return Integer.parseInt(fileName.substring(
+          FILE_NAME_PREFIX.length(), end < 0 ? fileName.length() : end));
+    } catch (final NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private void openFile() throws IOException {
+    this.file = new File(this.directory,
+        RollingDocumentWriter.getFileName(this.nextPart)
+        + this.compression.getExtension());
+    this.nextPart += this.partStep;
+    this.fileOutput = new BufferedOutputStream(new FileOutputStream(
+        RollingDocumentWriter.getInProgressFile(this.file)),
+        OUTPUT_BUFFER_SIZE);
+    // flushing the writer must not write out the buffer each time
+    this.countingOutput = new CountingOutputStream(this.fileOutput) {
+      @Override
+      public void flush() { }
+    };
+    final OutputStream compressedOutput;
+    if (this.compression.hasIndex()) {
+      compressedOutput = this.compression.compress(this.countingOutput,
+          new BufferedOutputStream(new FileOutputStream(
+              RollingDocumentWriter.getInProgressFile(
+                  RollingDocumentWriter.getIndexFile(this.file)))));
+    } else {
+      compressedOutput = this.compression.compress(this.countingOutput);
+    }
+    if (compressedOutput instanceof BlockGzipOutputStream) {
+      this.blockOutput = (BlockGzipOutputStream) compressedOutput;
+    }
+    this.writer = DocumentWriter.create(
+        this.format, compressedOutput, this.writeNames);
+    this.numDocumentsInFile = 0;
+  }
+
+  private void closeFile() throws IOException {
+    if (this.writer != null) {
+      this.writer.close();
+      this.writer = null;
+      this.fileOutput = null;
+      this.countingOutput = null;
+      this.blockOutput = null;
+
+      final File indexFile = RollingDocumentWriter.getIndexFile(this.file);
+      final boolean hasIndex = this.compression.hasIndex();
+      if (this.commitHook != null) {
+        RollingDocumentWriter.sync(
+            RollingDocumentWriter.getInProgressFile(this.file));
+        if (hasIndex) {
+          RollingDocumentWriter.sync(
+              RollingDocumentWriter.getInProgressFile(indexFile));
+        }
+        this.commitHook.beforeCommit(this.file);
+      }
+      if (hasIndex) {
+        RollingDocumentWriter.rename(
+            RollingDocumentWriter.getInProgressFile(indexFile), indexFile);
+      }
+      RollingDocumentWriter.rename(
+          RollingDocumentWriter.getInProgressFile(this.file), this.file);
+      this.files.add(this.file);
+      this.file = null;
+    }
+  }
+
+  /**
+   * Checks whether given name is the one of an output file or index file
+   * while it is written.
+   */
+  private static boolean isInProgressFileName(final String name) {
+    if (!name.startsWith(IN_PROGRESS_PREFIX)) { return false; }
+    final String finalName = name.substring(IN_PROGRESS_PREFIX.length());
+    final String indexedFileName =
+        BlockGzipOutputStream.getIndexedFileName(finalName);
+    return (indexedFileName == null ? finalName : indexedFileName)
+        .startsWith(FILE_NAME_PREFIX);
+  }
+
+  private static File getInProgressFile(final File file) {
+    return new File(file.getParentFile(), IN_PROGRESS_PREFIX + file.getName());
+  }
+
+  private static File getIndexFile(final File file) {
+    return new File(file.getParentFile(),
+        BlockGzipOutputStream.getIndexFileName(file.getName()));
+  }
+
+  private static void sync(final File file) throws IOException {
+    try (final FileChannel channel =
+        FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Renames given file, replacing the target if it exists.
+   */
+  static void rename(final File source, final File target)
+  throws IOException {
+    if (!source.renameTo(target)) {
+      target.delete();
+      if (!source.renameTo(target)) {
+        throw new IOException("Could not rename " + source + " to " + target);
+      }
+    }
+  }
+
+  /**
+   * Hook that is called when a file is complete, before it gets its final
+   * name.
+   */
+  @FunctionalInterface
+  public static interface CommitHook {
+
+    /**
+     * Called when given file is complete, before it gets its final name.
+     * @param file The file with its final name
+     * @throws IOException If the file should not be committed
+     */
+    void beforeCommit(final File file) throws IOException;
+
+  }
+
+}
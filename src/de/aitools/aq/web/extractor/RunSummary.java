@@ -0,0 +1,193 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Summary of the counts and timing of a local extraction run, which is written
+ * to the output directory when the run is complete.
+ *
+ * <p>
+ * The summary is a properties file with the start and end time of the run as
+ * ISO-8601 instants (keys <tt>start</tt> and <tt>end</tt>), its duration in
+ * seconds (<tt>seconds</tt>), and any number of counts, sorted by key. The
+ * summaries of several runs (like the shards of a run, see
+ * {@link ShardMerger}) can be combined using {@link #add(RunSummary)}.
+ * </p>
+ */
+public class RunSummary {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Name of the summary file in the output directory.
+   */
+  public static final String FILE_NAME = "_summary";
+
+  private static final String KEY_START = "start";
+
+  private static final String KEY_END = "end";
+
+  private static final String KEY_SECONDS = "seconds";
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private Instant start;
+
+  private Instant end;
+
+  private final Map<String, Long> counts;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new summary for a run between given times without counts.
+   */
+  public RunSummary(final Instant start, final Instant end) {
+    if (start == null) { throw new NullPointerException(); }
+    if (end == null) { throw new NullPointerException(); }
+    this.start = start;
+    this.end = end;
+    this.counts = new TreeMap<>();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the time at which the run started.
+   */
+  public Instant getStart() {
+    return this.start;
+  }
+
+  /**
+   * Gets the time at which the run ended.
+   */
+  public Instant getEnd() {
+    return this.end;
+  }
+
+  /**
+   * Gets the duration of the run in seconds.
+   */
+  public double getSeconds() {
+    return (this.end.toEpochMilli() - this.start.toEpochMilli()) / 1000.0;
+  }
+
+  /**
+   * Gets the counts of the run, sorted by key.
+   */
+  public Map<String, Long> getCounts() {
+    return Collections.unmodifiableMap(this.counts);
+  }
+
+  /**
+   * Gets the count of given key, or 0 if there is none.
+   */
+  public long getCount(final String key) {
+    return this.counts.getOrDefault(key, 0L);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the count of given key.
+   */
+  public void setCount(final String key, final long count) {
+    if (key == null) { throw new NullPointerException(); }
+    this.counts.put(key, count);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Adds the counts of given summary to the ones of this summary, and extends
+   * the time of this summary to also cover the given one.
+   */
+  public void add(final RunSummary summary) {
+    for (final Map.Entry<String, Long> count : summary.counts.entrySet()) {
+      this.counts.merge(count.getKey(), count.getValue(), Long::sum);
+    }
+    if (summary.start.isBefore(this.start)) { this.start = summary.start; }
+    if (summary.end.isAfter(this.end)) { this.end = summary.end; }
+  }
+
+  /**
+   * Reads the summary from the summary file in given directory.
+   */
+  public static RunSummary read(final File directory) throws IOException {
+    final File file = new File(directory, FILE_NAME);
+    final Properties properties = new Properties();
+    try (final Reader reader = new InputStreamReader(
+        new FileInputStream(file), StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    try {
+      final RunSummary summary = new RunSummary(
+          Instant.parse(properties.getProperty(KEY_START)),
+          Instant.parse(properties.getProperty(KEY_END)));
+      for (final String key : properties.stringPropertyNames()) {
+        if (!key.equals(KEY_START) && !key.equals(KEY_END)
+            && !key.equals(KEY_SECONDS)) {
+          summary.setCount(key, Long.parseLong(properties.getProperty(key)));
+        }
+      }
+      return summary;
+    } catch (final NullPointerException | DateTimeParseException
+        | NumberFormatException e) {
+      throw new IOException("Invalid summary file " + file, e);
+    }
+  }
+
+  /**
+   * Writes this summary to the summary file in given directory.
+   */
+  public void write(final File directory) throws IOException {
+    final File file = new File(directory, FILE_NAME);
+    try (final Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(file), StandardCharsets.UTF_8))) {
+      writer.append(this.toString());
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(KEY_START).append('=').append(this.start).append('\n');
+    builder.append(KEY_END).append('=').append(this.end).append('\n');
+    builder.append(KEY_SECONDS).append('=').append(this.getSeconds())
+      .append('\n');
+    for (final Map.Entry<String, Long> count : this.counts.entrySet()) {
+      builder.append(count.getKey()).append('=').append(count.getValue())
+        .append('\n');
+    }
+    return builder.toString();
+  }
+
+}
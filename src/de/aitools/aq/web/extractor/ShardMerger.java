@@ -0,0 +1,262 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Merges the outputs of the shards of a local extraction run into one output
+ * directory.
+ *
+ * <p>
+ * To run local mode on several machines that share a file system, each machine
+ * runs the same command with another shard (see
+ * {@link LocalHtmlSentenceExtractionTool#setShard(int, int)}). Each shard
+ * processes the input files whose path has the shard index as hash (see
+ * {@link #getShard(String, int)}) and writes to an own subdirectory of the
+ * output directory (see {@link #getShardDirectoryName(int, int)}), which
+ * contains the {@link RunSummary} of the shard once it is complete.
+ * </p><p>
+ * Once all shards are complete, {@link #merge(File)} moves the output files of
+ * all shards into the output directory, renumbering them so that their names
+ * are unique, and writes the combined summary of all shards, with the
+ * duration of each shard as additional counts. The shard directories are
+ * deleted afterwards. If the merge is interrupted before the combined summary
+ * is written, it can just be run again.
+ * </p><p>
+ * The outputs of nodes that shared the input files through a
+ * {@link LeaseCoordinator} (see
+ * {@link LocalHtmlSentenceExtractionTool#setCoordination(String)}) are merged
+ * in the same way, in which case the lease directory is deleted as well.
+ * </p>
+ */
+public class ShardMerger {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final String SHARD_DIRECTORY_FORMAT = "shard-%d-of-%d";
+
+  private static final Pattern SHARD_DIRECTORY_PATTERN =
+      Pattern.compile("shard-(\\d+)-of-(\\d+)");
+
+  private static final String SECONDS_SUFFIX = ".seconds";
+
+  private ShardMerger() { }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the shard of the input file of given name, which is the CRC-32 of its
+   * name modulo the number of shards, so that it is the same on all machines
+   * that use the same path for the file.
+   */
+  public static int getShard(final String inputFileName, final int numShards) {
+    if (numShards <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of shards: " + numShards);
+    }
+    final CRC32 checksum = new CRC32();
+    checksum.update(inputFileName.getBytes(StandardCharsets.UTF_8));
+    return (int) (checksum.getValue() % numShards);
+  }
+
+  /**
+   * Gets the name of the output subdirectory of given shard.
+   */
+  public static String getShardDirectoryName(
+      final int shard, final int numShards) {
+    return String.format(SHARD_DIRECTORY_FORMAT, shard, numShards);
+  }
+
+  /**
+   * Merges the outputs of all shards or nodes in given output directory into
+   * it.
+   * @return The combined summary of the shards
+   * @throws IOException If a shard is missing or not complete, or if the files
+   * can not be moved
+   */
+  public static RunSummary merge(final File outputDirectory)
+  throws IOException {
+    final File[] shardDirectories = ShardMerger.getShardDirectories(
+        outputDirectory);
+
+    final List<RunSummary> summaries = new ArrayList<>();
+    for (final File shardDirectory : shardDirectories) {
+      summaries.add(RunSummary.read(shardDirectory));
+    }
+
+    int nextPart = ShardMerger.getNextPart(outputDirectory);
+    RunSummary summary = null;
+    for (int s = 0; s < shardDirectories.length; ++s) {
+      nextPart = ShardMerger.moveFiles(
+          shardDirectories[s], outputDirectory, nextPart);
+      final RunSummary shardSummary = summaries.get(s);
+      if (summary == null) {
+        summary = new RunSummary(
+            shardSummary.getStart(), shardSummary.getEnd());
+      }
+      summary.add(shardSummary);
+      summary.setCount(shardDirectories[s].getName() + SECONDS_SUFFIX,
+          Math.round(shardSummary.getSeconds()));
+    }
+    summary.write(outputDirectory);
+
+    for (final File shardDirectory : shardDirectories) {
+      ShardMerger.delete(shardDirectory);
+    }
+    final File leaseDirectory =
+        new File(outputDirectory, LeaseCoordinator.DIRECTORY_NAME);
+    if (leaseDirectory.exists()) {
+      ShardMerger.delete(leaseDirectory);
+    }
+    return summary;
+  }
+
+  private static void delete(final File directory) throws IOException {
+    for (final File file : directory.listFiles()) {
+      if (!file.delete()) {
+        throw new IOException("Could not delete " + file);
+      }
+    }
+    if (!directory.delete()) {
+      throw new IOException("Could not delete " + directory);
+    }
+  }
+
+  /**
+   * Gets the directories of all shards in given output directory, ordered by
+   * shard, or of all nodes, ordered by name.
+   * @throws IOException If there are no shards or nodes, shards of different
+   * runs, or shards or nodes that are missing or not complete
+   */
+  private static File[] getShardDirectories(final File outputDirectory)
+  throws IOException {
+    final File[] files = outputDirectory.listFiles();
+    if (files == null) {
+      throw new IOException("Not a directory: " + outputDirectory);
+    }
+    int numShards = -1;
+    final TreeMap<Integer, File> shardDirectories = new TreeMap<>();
+    final TreeMap<String, File> nodeDirectories = new TreeMap<>();
+    for (final File file : files) {
+      if (file.isDirectory()
+          && LeaseCoordinator.isNodeDirectoryName(file.getName())) {
+        nodeDirectories.put(file.getName(), file);
+      }
+      final Matcher matcher =
+          SHARD_DIRECTORY_PATTERN.matcher(file.getName());
+      if (file.isDirectory() && matcher.matches()) {
+        final int shard = Integer.parseInt(matcher.group(1));
+        final int shardNumShards = Integer.parseInt(matcher.group(2));
+        if (numShards >= 0 && shardNumShards != numShards) {
+          throw new IOException("Shards of runs with " + numShards + " and "
+              + shardNumShards + " shards in " + outputDirectory);
+        }
+        numShards = shardNumShards;
+        shardDirectories.put(shard, file);
+      }
+    }
+    if (!nodeDirectories.isEmpty()) {
+      if (numShards >= 0) {
+        throw new IOException(
+            "Both shards and nodes in " + outputDirectory);
+      }
+      final List<String> incomplete = new ArrayList<>();
+      for (final File nodeDirectory : nodeDirectories.values()) {
+        if (!new File(nodeDirectory, RunSummary.FILE_NAME).exists()) {
+          incomplete.add(nodeDirectory.getName());
+        }
+      }
+      if (!incomplete.isEmpty()) {
+        throw new IOException("Incomplete nodes in "
+            + outputDirectory + ": " + incomplete);
+      }
+      return nodeDirectories.values().toArray(new File[0]);
+    }
+    if (numShards < 0) {
+      throw new IOException("No shards or nodes in " + outputDirectory);
+    }
+
+    final File[] ordered = new File[numShards];
+    final List<String> incomplete = new ArrayList<>();
+    for (int s = 0; s < numShards; ++s) {
+      ordered[s] = shardDirectories.get(s);
+      if (ordered[s] == null
+          || !new File(ordered[s], RunSummary.FILE_NAME).exists()) {
+        incomplete.add(ShardMerger.getShardDirectoryName(s, numShards));
+      }
+    }
+    if (!incomplete.isEmpty()) {
+      throw new IOException("Missing or incomplete shards in "
+          + outputDirectory + ": " + incomplete);
+    }
+    return ordered;
+  }
+
+  private static int getNextPart(final File directory) {
+    int nextPart = 0;
+    for (final String name : directory.list()) {
+      nextPart = Math.max(nextPart, RollingDocumentWriter.getPart(name) + 1);
+    }
+    return nextPart;
+  }
+
+  /**
+   * Moves the output files of given shard directory to the output directory,
+   * starting with given part number, and returns the next part number.
+   */
+  private static int moveFiles(final File shardDirectory,
+      final File outputDirectory, final int firstPart)
+  throws IOException {
+    final String[] names = shardDirectory.list();
+    Arrays.sort(names);
+    int nextPart = firstPart;
+    for (final String name : names) {
+      final int part = RollingDocumentWriter.getPart(name);
+      if (part >= 0) {
+        final String targetName = RollingDocumentWriter.getFileName(nextPart)
+            + name.substring(RollingDocumentWriter.getFileName(part).length());
+        final File index = new File(shardDirectory,
+            BlockGzipOutputStream.getIndexFileName(name));
+        if (index.exists()) {
+          RollingDocumentWriter.rename(index, new File(outputDirectory,
+              BlockGzipOutputStream.getIndexFileName(targetName)));
+        }
+        RollingDocumentWriter.rename(new File(shardDirectory, name),
+            new File(outputDirectory, targetName));
+        ++nextPart;
+      }
+    }
+    return nextPart;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   PROGRAM                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Merges the outputs of the shards or nodes in the given output directory and
+   * prints the combined summary.
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: " + ShardMerger.class.getName()
+          + " <output-directory>");
+      System.exit(1);
+    }
+    final RunSummary summary = ShardMerger.merge(new File(args[0]));
+    System.err.print(summary);
+  }
+
+}
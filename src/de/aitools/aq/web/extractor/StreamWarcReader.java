@@ -0,0 +1,176 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reader for WARC files from an input stream, like for compressed WARC files.
+ *
+ * <p>
+ * Unlike <tt>WarcRecord.readNextWarcRecord</tt> of the Lemur project, this
+ * reader parses the header first and, if a {@link WarcRecordFilter} is set,
+ * skips the content of records that the filter rejects without copying it
+ * into an array. The content of each accepted record is read into an own
+ * array.
+ * </p>
+ */
+public class StreamWarcReader implements WarcReader {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Maximum number of bytes of a record header.
+   */
+  public static final int MAX_HEADER_LENGTH = 1 << 20;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final InputStream input;
+
+  private final ByteArrayOutputStream headerBytes;
+
+  private WarcRecordFilter filter;
+
+  private long position;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new reader for the given WARC file, which is decompressed if its
+   * name ends in .gz.
+   */
+  public StreamWarcReader(final File input) throws IOException {
+    this(Warcs.openFile(input));
+  }
+
+  /**
+   * Creates a new reader for the given input, which should be buffered.
+   */
+  public StreamWarcReader(final InputStream input) {
+    if (input == null) { throw new NullPointerException(); }
+    this.input = input;
+    this.headerBytes = new ByteArrayOutputStream();
+    this.filter = null;
+    this.position = 0;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the position in the (decompressed) input at which the next record is
+   * read.
+   */
+  public long getPosition() {
+    return this.position;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the filter for the records to read, or <tt>null</tt> to read all
+   * records. The content of rejected records is skipped.
+   */
+  public void setFilter(final WarcRecordFilter filter) {
+    this.filter = filter;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public RawWarcRecord read() throws IOException {
+    while (true) {
+      final long offset = this.readHeaderBytes();
+      if (offset < 0) { return null; }
+
+      final WarcHeader header;
+      try {
+        header = WarcHeader.parse(ByteBuffer.wrap(
+            this.headerBytes.toByteArray()));
+      } catch (final IllegalArgumentException e) {
+        throw new IOException(e.getMessage() + " at " + offset, e);
+      }
+      final long contentLength = header.getContentLength();
+
+      if (this.filter != null && !this.filter.accept(header)) {
+        try {
+          IOUtils.skipFully(this.input, contentLength);
+        } catch (final EOFException e) {
+          throw new IOException("Truncated WARC record at " + offset, e);
+        }
+        this.position += contentLength;
+      } else {
+        if (contentLength > Integer.MAX_VALUE) {
+          throw new IOException("WARC record too large: " + contentLength);
+        }
+        final byte[] content = new byte[(int) contentLength];
+        try {
+          IOUtils.readFully(this.input, content);
+        } catch (final EOFException e) {
+          throw new IOException("Truncated WARC record at " + offset, e);
+        }
+        this.position += contentLength;
+        return new RawWarcRecord(header, ByteBuffer.wrap(content), offset);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.input.close();
+  }
+
+  /**
+   * Reads the bytes of the next header into {@link #headerBytes}, skipping line
+   * breaks before it.
+   * @return The offset of the header or -1 at the end of the input
+   */
+  private long readHeaderBytes() throws IOException {
+    this.headerBytes.reset();
+    int b = this.input.read();
+    while (b == '\r' || b == '\n') {
+      ++this.position;
+      b = this.input.read();
+    }
+    if (b < 0) { return -1; }
+    final long offset = this.position;
+
+    // read until an empty line
+    int lineLength = 0;
+    while (true) {
+      if (b < 0) {
+        throw new IOException("Truncated WARC header at " + offset);
+      }
+      this.headerBytes.write(b);
+      ++this.position;
+      if (b == '\n') {
+        if (lineLength == 0) { return offset; }
+        lineLength = 0;
+      } else if (b != '\r') {
+        ++lineLength;
+      }
+      if (this.headerBytes.size() > MAX_HEADER_LENGTH) {
+        throw new IOException("WARC header too long at " + offset);
+      }
+      b = this.input.read();
+    }
+  }
+
+}
@@ -0,0 +1,210 @@
+package de.aitools.aq.web.extractor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes tasks in a bounded pool of threads and abandons them after a
+ * timeout.
+ *
+ * <p>
+ * Tasks that time out are interrupted, but tasks that do not check the
+ * interrupt flag (like rendering a page with Jericho) will continue to run
+ * until they finish by themselves. Such threads are counted as <i>running after
+ * timeout</i> (see {@link #getNumThreadsRunningAfterTimeout()}) and stay in
+ * use until the task finishes.
+ * </p><p>
+ * The number of threads of this executor is hard-capped: each task needs one
+ * of the threads for as long as it runs, including the time after it has timed
+ * out. If all threads are in use, a new task waits for a free thread at most
+ * for its timeout, and fails with a {@link TimeoutException} otherwise. So
+ * pathological input can slow down the extraction, but can not make it spawn
+ * an unbounded number of threads.
+ * </p>
+ */
+public class TimeoutExecutor {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int STATE_QUEUED = 0;
+
+  private static final int STATE_RUNNING = 1;
+
+  private static final int STATE_FINISHED = 2;
+
+  private static final int STATE_ABANDONED = 3;
+
+  private static final int STATE_CANCELLED = 4;
+
+  private static final long KEEP_ALIVE_IN_SECONDS = 60;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final int maxThreads;
+
+  private final ThreadPoolExecutor executor;
+
+  private final Semaphore threads;
+
+  private final AtomicInteger numThreadsRunningAfterTimeout;
+
+  private final AtomicLong numTimeouts;
+
+  private final AtomicLong numThreadsFinishedAfterTimeout;
+
+  private final AtomicLong numRejected;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new executor that uses at most the given number of threads.
+   */
+  public TimeoutExecutor(final int maxThreads) {
+    if (maxThreads <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive number of threads: " + maxThreads);
+    }
+    this.maxThreads = maxThreads;
+    final AtomicInteger threadIds = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+        KEEP_ALIVE_IN_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        runnable -> {
+          final Thread thread = new Thread(
+              runnable, "timeout-executor-" + threadIds.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.executor.allowCoreThreadTimeOut(true);
+    this.threads = new Semaphore(maxThreads);
+    this.numThreadsRunningAfterTimeout = new AtomicInteger();
+    this.numTimeouts = new AtomicLong();
+    this.numThreadsFinishedAfterTimeout = new AtomicLong();
+    this.numRejected = new AtomicLong();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the maximum number of threads this executor uses.
+   */
+  public int getMaxThreads() {
+    return this.maxThreads;
+  }
+
+  /**
+   * Gets the number of tasks that timed out so far.
+   */
+  public long getNumTimeouts() {
+    return this.numTimeouts.get();
+  }
+
+  /**
+   * Gets the number of threads that are currently still running a task that
+   * timed out.
+   */
+  public int getNumThreadsRunningAfterTimeout() {
+    return this.numThreadsRunningAfterTimeout.get();
+  }
+
+  /**
+   * Gets the number of tasks that finished by themselves after they timed out.
+   */
+  public long getNumThreadsFinishedAfterTimeout() {
+    return this.numThreadsFinishedAfterTimeout.get();
+  }
+
+  /**
+   * Gets the number of tasks that were not run because no thread became
+   * available within their timeout.
+   */
+  public long getNumRejected() {
+    return this.numRejected.get();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Runs the task in a thread of this executor and waits for its result for at
+   * most the given time.
+   * <p>
+   * The timeout includes the time waiting for a free thread.
+   * </p>
+   * @throws ExecutionException If the task failed, or if it timed out, in
+   * which case the exception will have a {@link TimeoutException} as its cause
+   * @throws InterruptedException If the calling thread was interrupted while
+   * waiting
+   */
+  public <T> T call(
+      final Callable<T> task, final long timeout, final TimeUnit unit)
+  throws ExecutionException, InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    if (!this.threads.tryAcquire(timeout, unit)) {
+      this.numRejected.incrementAndGet();
+      throw new ExecutionException(new TimeoutException(
+          "No free thread: " + this.getNumThreadsRunningAfterTimeout()
+          + " of " + this.maxThreads + " still running after timeout"));
+    }
+
+    final AtomicInteger state = new AtomicInteger(STATE_QUEUED);
+    final Future<T> future;
+    try {
+      future = this.executor.submit(() -> {
+        if (!state.compareAndSet(STATE_QUEUED, STATE_RUNNING)) {
+          return null; // cancelled before it started
+        }
+        try {
+          return task.call();
+        } finally {
+          if (!state.compareAndSet(STATE_RUNNING, STATE_FINISHED)) {
+            this.numThreadsRunningAfterTimeout.decrementAndGet();
+            this.numThreadsFinishedAfterTimeout.incrementAndGet();
+          }
+          this.threads.release();
+        }
+      });
+    } catch (final RuntimeException e) {
+      this.threads.release();
+      throw e;
+    }
+
+    try {
+      return future.get(
+          Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (final TimeoutException e) {
+      this.numTimeouts.incrementAndGet();
+      this.abandon(future, state);
+      throw new ExecutionException(e);
+    } catch (final InterruptedException e) {
+      this.abandon(future, state);
+      throw e;
+    }
+  }
+
+  private void abandon(final Future<?> future, final AtomicInteger state) {
+    if (state.compareAndSet(STATE_QUEUED, STATE_CANCELLED)) {
+      this.threads.release();
+    } else if (state.compareAndSet(STATE_RUNNING, STATE_ABANDONED)) {
+      this.numThreadsRunningAfterTimeout.incrementAndGet();
+    }
+    future.cancel(true);
+  }
+
+}
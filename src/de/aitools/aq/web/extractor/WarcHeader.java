@@ -0,0 +1,215 @@
+package de.aitools.aq.web.extractor;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The header of a WARC record.
+ *
+ * <p>
+ * Field names are case-insensitive, as defined by the WARC standard.
+ * </p>
+ */
+public class WarcHeader {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  public static final String FIELD_TYPE = "WARC-Type";
+
+  public static final String FIELD_DATE = "WARC-Date";
+
+  public static final String FIELD_RECORD_ID = "WARC-Record-ID";
+
+  public static final String FIELD_TARGET_URI = "WARC-Target-URI";
+
+  public static final String FIELD_TREC_ID = "WARC-TREC-ID";
+
+  public static final String FIELD_CONTENT_LENGTH = "Content-Length";
+
+  public static final String FIELD_CONTENT_TYPE = "Content-Type";
+
+  public static final String TYPE_RESPONSE = "response";
+
+  private static final String VERSION_PREFIX = "WARC/";
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final String version;
+
+  private final Map<String, String> fields;
+
+  private final Map<String, String> normalizedFields;
+
+  private final long contentLength;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new header of given version and fields.
+   * @throws IllegalArgumentException If the fields contain no valid
+   * {@link #FIELD_CONTENT_LENGTH}
+   */
+  public WarcHeader(final String version, final Map<String, String> fields)
+  throws IllegalArgumentException {
+    if (version == null) { throw new NullPointerException(); }
+    this.version = version;
+    this.fields = new LinkedHashMap<>(fields);
+    this.normalizedFields = new LinkedHashMap<>(fields.size());
+    for (final Map.Entry<String, String> field : fields.entrySet()) {
+      this.normalizedFields.put(WarcHeader.normalizeName(field.getKey()),
+          field.getValue());
+    }
+
+    final String contentLength = this.getField(FIELD_CONTENT_LENGTH);
+    if (contentLength == null) {
+      throw new IllegalArgumentException("No " + FIELD_CONTENT_LENGTH);
+    }
+    try {
+      this.contentLength = Long.parseLong(contentLength.trim());
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "Invalid " + FIELD_CONTENT_LENGTH + ": " + contentLength);
+    }
+    if (this.contentLength < 0) {
+      throw new IllegalArgumentException(
+          "Negative " + FIELD_CONTENT_LENGTH + ": " + contentLength);
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the WARC version line of the record (e.g., <tt>WARC/1.0</tt>).
+   */
+  public String getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Gets the value of the header field of given name, or <tt>null</tt> if the
+   * header has no such field.
+   */
+  public String getField(final String name) {
+    return this.normalizedFields.get(WarcHeader.normalizeName(name));
+  }
+
+  /**
+   * Gets all header fields in their order in the record, with the names as
+   * they are written in the record.
+   */
+  public Map<String, String> getFields() {
+    return Collections.unmodifiableMap(this.fields);
+  }
+
+  /**
+   * Gets the type of the record (e.g., <tt>response</tt>).
+   */
+  public String getType() {
+    return this.getField(FIELD_TYPE);
+  }
+
+  /**
+   * Gets the URI of the record's target, or <tt>null</tt> if it has none.
+   */
+  public String getTargetUri() {
+    return this.getField(FIELD_TARGET_URI);
+  }
+
+  /**
+   * Gets the TREC-ID of the record, or <tt>null</tt> if it has none.
+   */
+  public String getTrecId() {
+    return this.getField(FIELD_TREC_ID);
+  }
+
+  /**
+   * Gets the number of bytes of the record's content block.
+   */
+  public long getContentLength() {
+    return this.contentLength;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Parses a WARC header from the buffer, starting at its position.
+   * <p>
+   * Empty lines before the version line are skipped. On success, the position
+   * of the buffer is set to the first byte of the content block.
+   * </p>
+   * @return The header or <tt>null</tt> if the buffer ends before the end of
+   * the header (in which case the position of the buffer is not changed)
+   * @throws IllegalArgumentException If the bytes are not a valid WARC header
+   */
+  public static WarcHeader parse(final ByteBuffer buffer)
+  throws IllegalArgumentException {
+    final int start = buffer.position();
+    String version = WarcHeader.readLine(buffer);
+    while (version != null && version.isEmpty()) {
+      version = WarcHeader.readLine(buffer);
+    }
+    if (version == null) {
+      buffer.position(start);
+      return null;
+    }
+    if (!version.startsWith(VERSION_PREFIX)) {
+      throw new IllegalArgumentException("Not a WARC record: " + version);
+    }
+
+    final Map<String, String> fields = new LinkedHashMap<>();
+    String line = WarcHeader.readLine(buffer);
+    while (line != null && !line.isEmpty()) {
+      final int colon = line.indexOf(':');
+      if (colon > 0) {
+        fields.put(line.substring(0, colon).trim(),
+            line.substring(colon + 1).trim());
+      }
+      line = WarcHeader.readLine(buffer);
+    }
+    if (line == null) {
+      buffer.position(start);
+      return null;
+    }
+    return new WarcHeader(version, fields);
+  }
+
+  /**
+   * Reads the line starting at the current position of the buffer (without the
+   * line break), or returns <tt>null</tt> if the buffer contains no line break.
+   */
+  private static String readLine(final ByteBuffer buffer) {
+    final int start = buffer.position();
+    final int limit = buffer.limit();
+    for (int p = start; p < limit; ++p) {
+      if (buffer.get(p) == '\n') {
+        int end = p;
+        if (end > start && buffer.get(end - 1) == '\r') { --end; }
+        final char[] line = new char[end - start];
+        for (int c = 0; c < line.length; ++c) {
+          line[c] = (char) (buffer.get(start + c) & 0xFF);
+        }
+        buffer.position(p + 1);
+        return new String(line);
+      }
+    }
+    return null;
+  }
+
+  private static String normalizeName(final String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+}
@@ -0,0 +1,249 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index of the records of a WARC file, stored in a sidecar file next to it.
+ *
+ * <p>
+ * The index is a CDX-like text file with one line per record, containing the
+ * offset and length of the record in the (compressed) file, its
+ * <tt>WARC-Type</tt>, and its <tt>WARC-Target-URI</tt> (or <tt>-</tt>),
+ * separated by spaces. For compressed WARC files, the offsets are those of the
+ * gzip members, so the file has to be compressed per record (see
+ * {@link GzipWarcReader}). Uncompressed WARC files are indexed as well.
+ * </p><p>
+ * This is a standalone tool (see {@link #main(String[])}) that writes the
+ * index files for use by other programs, which can then read single records
+ * without decompressing the file up to them by opening a
+ * {@link GzipWarcReader} (or {@link MappedWarcReader} for uncompressed files)
+ * at the offset of the record. The extraction itself does not use the index
+ * files: the local mode reads the files sequentially, and
+ * {@link WarcInputFormat} finds the record boundaries of its splits itself.
+ * </p>
+ */
+public class WarcIndex {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Suffix that is appended to the name of a WARC file to get the name of its
+   * index file.
+   */
+  public static final String INDEX_FILE_SUFFIX = ".idx";
+
+  private static final String NO_VALUE = "-";
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final File warcFile;
+
+  private final List<Entry> entries;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new index for the given WARC file with given entries, sorted by
+   * offset.
+   */
+  public WarcIndex(final File warcFile, final List<Entry> entries) {
+    if (warcFile == null) { throw new NullPointerException(); }
+    this.warcFile = warcFile;
+    this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the WARC file this index is for.
+   */
+  public File getWarcFile() {
+    return this.warcFile;
+  }
+
+  /**
+   * Gets the entries of this index, sorted by offset.
+   */
+  public List<Entry> getEntries() {
+    return this.entries;
+  }
+
+  /**
+   * Gets the index file for given WARC file.
+   */
+  public static File getIndexFile(final File warcFile) {
+    return new File(warcFile.getPath() + INDEX_FILE_SUFFIX);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates the index for given WARC file by reading all its records.
+   * @throws IOException If the file can not be read, or if the file name ends
+   * in .gz and the file is not compressed per record
+   */
+  public static WarcIndex build(final File warcFile) throws IOException {
+    final List<Entry> entries = new ArrayList<>();
+    if (WarcIndex.isCompressed(warcFile)) {
+      try (final GzipWarcReader reader = new GzipWarcReader(warcFile)) {
+        for (RawWarcRecord record = reader.read(); record != null;
+            record = reader.read()) {
+          if (!entries.isEmpty() && entries.get(entries.size() - 1).getOffset()
+              == record.getOffset()) {
+            throw new IOException("Several records in the gzip member at "
+                + record.getOffset() + ": " + warcFile
+                + " is not compressed per record");
+          }
+          entries.add(new Entry(record, reader.getPosition()));
+        }
+      }
+    } else {
+      try (final MappedWarcReader reader = new MappedWarcReader(warcFile)) {
+        for (RawWarcRecord record = reader.read(); record != null;
+            record = reader.read()) {
+          entries.add(new Entry(record, reader.getPosition()));
+        }
+      }
+    }
+    return new WarcIndex(warcFile, entries);
+  }
+
+  /**
+   * Writes this index to the index file of its WARC file (see
+   * {@link #getIndexFile(File)}). The index file is written to a temporary
+   * file first and then renamed, so it is either complete or missing.
+   */
+  public void write() throws IOException {
+    final File indexFile = WarcIndex.getIndexFile(this.warcFile);
+    final File temporaryFile = new File(indexFile.getPath() + ".tmp");
+    try (final Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(temporaryFile), StandardCharsets.UTF_8))) {
+      for (final Entry entry : this.entries) {
+        writer.append(entry.toString()).append('\n');
+      }
+    }
+    if (!temporaryFile.renameTo(indexFile)) {
+      indexFile.delete();
+      if (!temporaryFile.renameTo(indexFile)) {
+        throw new IOException("Could not rename " + temporaryFile
+            + " to " + indexFile);
+      }
+    }
+  }
+
+  private static boolean isCompressed(final File warcFile) {
+    return warcFile.getName().endsWith(".gz");
+  }
+
+  /**
+   * An entry of the index for one record.
+   */
+  public static class Entry {
+
+    private final long offset;
+
+    private final long length;
+
+    private final String type;
+
+    private final String uri;
+
+    /**
+     * Creates a new entry.
+     * @param offset The offset of the record in the WARC file
+     * @param length The number of bytes of the record in the WARC file
+     * @param type The type of the record, or <tt>null</tt>
+     * @param uri The target URI of the record, or <tt>null</tt>
+     */
+    public Entry(final long offset, final long length,
+        final String type, final String uri) {
+      this.offset = offset;
+      this.length = length;
+      this.type = type;
+      this.uri = uri;
+    }
+
+    private Entry(final RawWarcRecord record, final long end) {
+      this(record.getOffset(), end - record.getOffset(),
+          record.getHeader().getType(), record.getHeader().getTargetUri());
+    }
+
+    /**
+     * Gets the offset of the record in the WARC file.
+     */
+    public long getOffset() {
+      return this.offset;
+    }
+
+    /**
+     * Gets the number of bytes of the record in the WARC file (for compressed
+     * files, of its gzip member).
+     */
+    public long getLength() {
+      return this.length;
+    }
+
+    /**
+     * Gets the <tt>WARC-Type</tt> of the record, or <tt>null</tt>.
+     */
+    public String getType() {
+      return this.type;
+    }
+
+    /**
+     * Gets the <tt>WARC-Target-URI</tt> of the record, or <tt>null</tt>.
+     */
+    public String getUri() {
+      return this.uri;
+    }
+
+    @Override
+    public String toString() {
+      return this.offset + " " + this.length
+          + " " + (this.type == null ? NO_VALUE : this.type)
+          + " " + (this.uri == null ? NO_VALUE : this.uri);
+    }
+
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   PROGRAM                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates the index files for the given WARC files.
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: " + WarcIndex.class.getName()
+          + " <warc-file> [<warc-file> ...]");
+      System.exit(1);
+    }
+    for (final String warcFileName : args) {
+      final WarcIndex index = WarcIndex.build(new File(warcFileName));
+      index.write();
+      System.err.println("Indexed " + index.getEntries().size()
+          + " records of " + warcFileName);
+    }
+  }
+
+}
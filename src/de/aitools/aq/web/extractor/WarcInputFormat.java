@@ -0,0 +1,414 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import edu.cmu.lemurproject.WarcRecord;
+import edu.cmu.lemurproject.WritableWarcRecord;
+
+/**
+ * Hadoop input format for WARC files that, unlike the
+ * <tt>WarcFileInputFormat</tt> of the Lemur project, splits large files so
+ * that several mappers can read one file in parallel.
+ *
+ * <p>
+ * Each split contains the records that start within it. A reader of a split
+ * that does not start at the beginning of its file first searches for the
+ * first such record:
+ * </p><ul>
+ * <li>In uncompressed WARC files, this is the first line starting with
+ * <tt>WARC/</tt> that begins a valid record header and whose record is
+ * followed by another one or the end of the file.</li>
+ * <li>In compressed WARC files (ending in .gz), this is the first gzip member
+ * that decompresses to a WARC record (see {@link GzipWarcReader}). Such files
+ * are only split if they are compressed per record, which is checked once per
+ * file when the splits are created. Other compressed files are read as a
+ * whole.</li>
+ * </ul><p>
+ * The keys are the offsets of the records in the file: for compressed files,
+ * the offsets of their gzip members, or, if the file is read as a whole, the
+ * offsets in the decompressed file. The path of the file is set as the WARC
+ * file path of the records.
+ * </p><p>
+ * HTML files (ending in .html or .htm) are read as a single response record
+ * with the file path as target URI (see
+ * {@link Warcs#toResponseRecord(String, byte[])}), so that they are processed
+ * like crawled pages.
+ * </p>
+ */
+public class WarcInputFormat
+extends FileInputFormat<LongWritable, WritableWarcRecord> {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Maximum number of decompressed bytes of the first gzip member of a file
+   * for it to be considered as compressed per record.
+   */
+  public static final int MAX_FIRST_MEMBER_LENGTH = 1 << 24;
+
+  private static final String GZIP_FILE_SUFFIX = ".gz";
+
+  private static final String[] HTML_FILE_SUFFIXES = { ".html", ".htm" };
+
+  private static final byte[] RECORD_START =
+      "\nWARC/".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] VERSION_PREFIX =
+      "WARC/".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] GZIP_MEMBER_START = { 0x1F, (byte) 0x8B, 0x08 };
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public RecordReader<LongWritable, WritableWarcRecord> createRecordReader(
+      final InputSplit split, final TaskAttemptContext context) {
+    return new WarcRecordReader();
+  }
+
+  @Override
+  protected boolean isSplitable(final JobContext context, final Path file) {
+    final Configuration configuration = context.getConfiguration();
+    if (WarcInputFormat.isHtmlFile(file)) { return false; }
+    final CompressionCodec codec =
+        new CompressionCodecFactory(configuration).getCodec(file);
+    if (codec == null) { return true; }
+    if (!file.getName().endsWith(GZIP_FILE_SUFFIX)) { return false; }
+
+    try (final FSDataInputStream input =
+        file.getFileSystem(configuration).open(file)) {
+      return GzipWarcReader.isCompressedPerRecord(
+          input, MAX_FIRST_MEMBER_LENGTH);
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  private static boolean isHtmlFile(final Path file) {
+    for (final String suffix : HTML_FILE_SUFFIXES) {
+      if (file.getName().endsWith(suffix)) { return true; }
+    }
+    return false;
+  }
+
+  /**
+   * Finds the first position at or after <tt>from</tt> and before
+   * <tt>limit</tt> where the pattern starts in the file.
+   * @param pattern A pattern whose first byte does not occur again in it
+   * @return The position or -1 if there is none
+   */
+  private static long find(final FSDataInputStream file,
+      final long from, final long limit, final byte[] pattern)
+  throws IOException {
+    file.seek(from);
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    long position = from;
+    int matched = 0;
+    while (position - matched < limit) {
+      final int length = file.read(buffer, 0, buffer.length);
+      if (length < 0) { return -1; }
+      for (int b = 0; b < length; ++b) {
+        if (buffer[b] == pattern[matched]) {
+          ++matched;
+          if (matched == pattern.length) {
+            final long start = position + b + 1 - matched;
+            return start < limit ? start : -1;
+          }
+        } else {
+          matched = buffer[b] == pattern[0] ? 1 : 0;
+        }
+      }
+      position += length;
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the first record in an uncompressed WARC file that starts at or
+   * after <tt>from</tt> and before <tt>limit</tt>.
+   * @return The position of the record or -1 if there is none
+   */
+  private static long findRecordStart(final FSDataInputStream file,
+      final long fileLength, final long from, final long limit)
+  throws IOException {
+    if (from == 0) { return 0; }
+    long candidate =
+        WarcInputFormat.find(file, from - 1, limit - 1, RECORD_START);
+    while (candidate >= 0) {
+      if (WarcInputFormat.isRecordStart(file, fileLength, candidate + 1)) {
+        return candidate + 1;
+      }
+      candidate =
+          WarcInputFormat.find(file, candidate + 1, limit - 1, RECORD_START);
+    }
+    return -1;
+  }
+
+  /**
+   * Checks whether a valid WARC header starts at given position, and whether
+   * its record is followed by another one or the end of the file.
+   */
+  private static boolean isRecordStart(final FSDataInputStream file,
+      final long fileLength, final long position)
+  throws IOException {
+    file.seek(position);
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    final ByteBuffer header =
+        ByteBuffer.wrap(buffer, 0, IOUtils.read(file, buffer));
+    final long contentLength;
+    try {
+      final WarcHeader parsed = WarcHeader.parse(header);
+      if (parsed == null) { return false; }
+      contentLength = parsed.getContentLength();
+    } catch (final IllegalArgumentException e) {
+      return false;
+    }
+
+    final long next = position + header.position() + contentLength;
+    if (next > fileLength) { return false; }
+    file.seek(next);
+    final int length = IOUtils.read(file, buffer);
+    int b = 0;
+    while (b < length && (buffer[b] == '\r' || buffer[b] == '\n')) { ++b; }
+    if (b == length) { return length < buffer.length; }
+    if (length - b < VERSION_PREFIX.length) { return false; }
+    for (int v = 0; v < VERSION_PREFIX.length; ++v) {
+      if (buffer[b + v] != VERSION_PREFIX[v]) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * Finds the first gzip member in a compressed WARC file that starts at or
+   * after <tt>from</tt> and before <tt>limit</tt> and decompresses to a WARC
+   * record.
+   * @return The position of the member or -1 if there is none
+   */
+  private static long findMemberStart(final FSDataInputStream file,
+      final long from, final long limit)
+  throws IOException {
+    long candidate =
+        WarcInputFormat.find(file, from, limit, GZIP_MEMBER_START);
+    while (candidate >= 0) {
+      if (WarcInputFormat.isMemberStart(file, candidate)) {
+        return candidate;
+      }
+      candidate =
+          WarcInputFormat.find(file, candidate + 1, limit, GZIP_MEMBER_START);
+    }
+    return -1;
+  }
+
+  /**
+   * Checks whether a gzip member starts at given position that decompresses to
+   * a WARC record.
+   */
+  private static boolean isMemberStart(
+      final FSDataInputStream file, final long position) {
+    try {
+      file.seek(position);
+      try (final GzipWarcReader reader = new GzipWarcReader(
+          new CloseShieldInputStream(file), position)) {
+        return reader.read() != null;
+      }
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reader for the records of one split of a WARC file.
+   */
+  public static class WarcRecordReader
+  extends RecordReader<LongWritable, WritableWarcRecord> {
+
+    private FSDataInputStream file;
+
+    private String filePath;
+
+    private WarcReader reader;
+
+    private long start;
+
+    private long end;
+
+    private long readerStart;
+
+    private long recordsEnd;
+
+    private final LongWritable key;
+
+    private final WritableWarcRecord value;
+
+    /**
+     * Creates a new reader, which has to be initialized before use.
+     */
+    public WarcRecordReader() {
+      this.file = null;
+      this.filePath = null;
+      this.reader = null;
+      this.key = new LongWritable();
+      this.value = new WritableWarcRecord();
+    }
+
+    @Override
+    public void initialize(
+        final InputSplit genericSplit, final TaskAttemptContext context)
+    throws IOException {
+      final FileSplit split = (FileSplit) genericSplit;
+      final Configuration configuration = context.getConfiguration();
+      final Path path = split.getPath();
+      final FileSystem fileSystem = path.getFileSystem(configuration);
+      final long fileLength = fileSystem.getFileStatus(path).getLen();
+      this.start = split.getStart();
+      this.end = this.start + split.getLength();
+      this.file = fileSystem.open(path);
+      this.filePath = path.toString();
+
+      final CompressionCodec codec =
+          new CompressionCodecFactory(configuration).getCodec(path);
+      if (WarcInputFormat.isHtmlFile(path)) {
+        this.reader = new HtmlFileReader(this.file, path, fileLength);
+        this.readerStart = 0;
+        this.recordsEnd = Long.MAX_VALUE;
+      } else if (codec == null) {
+        final long recordStart = WarcInputFormat.findRecordStart(
+            this.file, fileLength, this.start, this.end);
+        if (recordStart < 0) { return; }
+        this.file.seek(recordStart);
+        this.reader = new StreamWarcReader(
+            new BufferedInputStream(this.file, BUFFER_SIZE));
+        this.readerStart = recordStart;
+        this.recordsEnd = this.end;
+      } else if (this.start == 0 && this.end >= fileLength) {
+        this.reader = new StreamWarcReader(new BufferedInputStream(
+            codec.createInputStream(this.file), BUFFER_SIZE));
+        this.readerStart = 0;
+        this.recordsEnd = Long.MAX_VALUE;
+      } else {
+        final long memberStart = WarcInputFormat.findMemberStart(
+            this.file, this.start, this.end);
+        if (memberStart < 0) { return; }
+        this.file.seek(memberStart);
+        this.reader = new GzipWarcReader(this.file, memberStart);
+        this.readerStart = 0;
+        this.recordsEnd = this.end;
+      }
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      if (this.reader == null) { return false; }
+      final RawWarcRecord record = this.reader.read();
+      if (record == null
+          || this.readerStart + record.getOffset() >= this.recordsEnd) {
+        this.reader.close();
+        this.reader = null;
+        this.file = null;
+        return false;
+      }
+      this.key.set(this.readerStart + record.getOffset());
+      final WarcRecord warcRecord = Warcs.toWarcRecord(record);
+      warcRecord.setWarcFilePath(this.filePath);
+      this.value.setRecord(warcRecord);
+      return true;
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+      return this.key;
+    }
+
+    @Override
+    public WritableWarcRecord getCurrentValue() {
+      return this.value;
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      if (this.reader == null || this.end == this.start) { return 1.0f; }
+      final long read = this.file.getPos() - this.start;
+      return Math.min(1.0f,
+          Math.max(0.0f, read / (float) (this.end - this.start)));
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (this.reader != null) {
+        this.reader.close();
+        this.reader = null;
+      }
+      if (this.file != null) {
+        this.file.close();
+        this.file = null;
+      }
+    }
+
+  }
+
+  /**
+   * Reader for an HTML file, which reads the file as a single response record.
+   */
+  private static class HtmlFileReader implements WarcReader {
+
+    private final FSDataInputStream file;
+
+    private final String uri;
+
+    private final long fileLength;
+
+    private boolean read;
+
+    private HtmlFileReader(final FSDataInputStream file, final Path path,
+        final long fileLength) {
+      this.file = file;
+      this.uri = path.toString();
+      this.fileLength = fileLength;
+      this.read = false;
+    }
+
+    @Override
+    public RawWarcRecord read() throws IOException {
+      if (this.read) { return null; }
+      this.read = true;
+      if (this.fileLength > Integer.MAX_VALUE) {
+        throw new IOException("HTML file too large: " + this.uri);
+      }
+      final byte[] html = new byte[(int) this.fileLength];
+      IOUtils.readFully(this.file, html);
+      return Warcs.toResponseRecord(this.uri, html);
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.file.close();
+    }
+
+  }
+
+}
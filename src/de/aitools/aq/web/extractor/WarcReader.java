@@ -0,0 +1,22 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reader for the {@link RawWarcRecord}s of a WARC file.
+ */
+public interface WarcReader extends Closeable {
+
+  /**
+   * Reads the next record.
+   * <p>
+   * The content of the returned record may become invalid once the reader is
+   * closed.
+   * </p>
+   * @return The record or <tt>null</tt> if there are no more records
+   * @throws IOException If the input can not be read or is not a valid WARC
+   */
+  RawWarcRecord read() throws IOException;
+
+}
@@ -0,0 +1,284 @@
+package de.aitools.aq.web.extractor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Decides from the header of a WARC record alone whether its content is worth
+ * reading, so that the readers can skip the content of other records without
+ * materializing it.
+ *
+ * <p>
+ * A record is accepted if all of these hold:
+ * </p><ul>
+ * <li>Its <tt>WARC-Type</tt> is one of the accepted types (default:
+ * <tt>response</tt>).</li>
+ * <li>It has no <tt>WARC-Identified-Payload-Type</tt>, or the type matches the
+ * accepted payload type pattern (default: any).</li>
+ * <li>Its <tt>Content-Length</tt> is within the accepted bounds (default:
+ * any).</li>
+ * <li>Its <tt>WARC-Target-URI</tt> matches the URI pattern and does not match
+ * the excluded URI pattern (default: any).</li>
+ * </ul><p>
+ * The filter counts the accepted records and the skipped records by
+ * {@link Reason}. It is thread-safe once configured, so one filter can be
+ * shared by several readers.
+ * </p>
+ */
+public class WarcRecordFilter {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  public static final String FIELD_IDENTIFIED_PAYLOAD_TYPE =
+      "WARC-Identified-Payload-Type";
+
+  /**
+   * Value to use in {@link #setMaxContentLength(long)} to specify that records
+   * of any length are accepted.
+   */
+  public static final long NO_MAX_CONTENT_LENGTH = Long.MAX_VALUE;
+
+  /**
+   * The reasons for skipping a record.
+   */
+  public static enum Reason {
+    /**
+     * The <tt>WARC-Type</tt> is not accepted.
+     */
+    TYPE,
+    /**
+     * The <tt>WARC-Identified-Payload-Type</tt> is not accepted.
+     */
+    PAYLOAD_TYPE,
+    /**
+     * The content is shorter than the minimum length.
+     */
+    TOO_SHORT,
+    /**
+     * The content is longer than the maximum length.
+     */
+    TOO_LONG,
+    /**
+     * The <tt>WARC-Target-URI</tt> is not accepted.
+     */
+    URI
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private Set<String> types;
+
+  private Pattern payloadTypePattern;
+
+  private long minContentLength;
+
+  private long maxContentLength;
+
+  private Pattern uriPattern;
+
+  private Pattern excludedUriPattern;
+
+  private final AtomicLong numAccepted;
+
+  private final Map<Reason, AtomicLong> numSkipped;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new filter that accepts all response records.
+   */
+  public WarcRecordFilter() {
+    this.setTypes(Collections.singleton(WarcHeader.TYPE_RESPONSE));
+    this.setPayloadTypePattern(null);
+    this.setMinContentLength(0);
+    this.setMaxContentLength(NO_MAX_CONTENT_LENGTH);
+    this.setUriPattern(null);
+    this.setExcludedUriPattern(null);
+    this.numAccepted = new AtomicLong();
+    this.numSkipped = new EnumMap<>(Reason.class);
+    for (final Reason reason : Reason.values()) {
+      this.numSkipped.put(reason, new AtomicLong());
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of records this filter accepted so far.
+   */
+  public long getNumAccepted() {
+    return this.numAccepted.get();
+  }
+
+  /**
+   * Gets the number of records this filter skipped for given reason so far.
+   */
+  public long getNumSkipped(final Reason reason) {
+    return this.numSkipped.get(reason).get();
+  }
+
+  /**
+   * Gets the number of records this filter skipped so far.
+   */
+  public long getNumSkipped() {
+    long numSkipped = 0;
+    for (final AtomicLong numSkippedForReason : this.numSkipped.values()) {
+      numSkipped += numSkippedForReason.get();
+    }
+    return numSkipped;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the accepted values of <tt>WARC-Type</tt> (ignoring case).
+   */
+  public void setTypes(final Collection<String> types) {
+    final Set<String> lowerCaseTypes = new HashSet<>();
+    for (final String type : types) {
+      lowerCaseTypes.add(type.toLowerCase(Locale.ROOT));
+    }
+    this.types = lowerCaseTypes;
+  }
+
+  /**
+   * Sets the pattern that the <tt>WARC-Identified-Payload-Type</tt> of a record
+   * has to match, or <tt>null</tt> to accept any. Records without this field
+   * are accepted either way.
+   */
+  public void setPayloadTypePattern(final Pattern payloadTypePattern) {
+    this.payloadTypePattern = payloadTypePattern;
+  }
+
+  /**
+   * Sets the minimum number of bytes of the content of a record.
+   */
+  public void setMinContentLength(final long minContentLength) {
+    if (minContentLength < 0) {
+      throw new IllegalArgumentException(
+          "Negative content length: " + minContentLength);
+    }
+    this.minContentLength = minContentLength;
+  }
+
+  /**
+   * Sets the maximum number of bytes of the content of a record, or
+   * {@link #NO_MAX_CONTENT_LENGTH}.
+   */
+  public void setMaxContentLength(final long maxContentLength) {
+    if (maxContentLength < 0) {
+      throw new IllegalArgumentException(
+          "Negative content length: " + maxContentLength);
+    }
+    this.maxContentLength = maxContentLength;
+  }
+
+  /**
+   * Sets the pattern that the <tt>WARC-Target-URI</tt> of a record has to
+   * match, or <tt>null</tt> to accept any.
+   */
+  public void setUriPattern(final Pattern uriPattern) {
+    this.uriPattern = uriPattern;
+  }
+
+  /**
+   * Sets the pattern that the <tt>WARC-Target-URI</tt> of a record must not
+   * match, or <tt>null</tt> to exclude none.
+   */
+  public void setExcludedUriPattern(final Pattern excludedUriPattern) {
+    this.excludedUriPattern = excludedUriPattern;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Checks whether the record with given header should be read, and counts it
+   * as accepted or skipped.
+   */
+  public boolean accept(final WarcHeader header) {
+    final Reason reason = this.getSkipReason(header);
+    if (reason == null) {
+      this.numAccepted.incrementAndGet();
+      return true;
+    } else {
+      this.numSkipped.get(reason).incrementAndGet();
+      return false;
+    }
+  }
+
+  /**
+   * Gets the reason for skipping the record with given header, or
+   * <tt>null</tt> if it should be read. Does not count the record.
+   */
+  public Reason getSkipReason(final WarcHeader header) {
+    final String type = header.getType();
+    if (type == null || !this.types.contains(type.toLowerCase(Locale.ROOT))) {
+      return Reason.TYPE;
+    }
+
+    if (this.payloadTypePattern != null) {
+      final String payloadType =
+          header.getField(FIELD_IDENTIFIED_PAYLOAD_TYPE);
+      if (payloadType != null
+          && !this.payloadTypePattern.matcher(payloadType).matches()) {
+        return Reason.PAYLOAD_TYPE;
+      }
+    }
+
+    final long contentLength = header.getContentLength();
+    if (contentLength < this.minContentLength) { return Reason.TOO_SHORT; }
+    if (contentLength > this.maxContentLength) { return Reason.TOO_LONG; }
+
+    if (this.uriPattern != null || this.excludedUriPattern != null) {
+      final String uri = header.getTargetUri();
+      if (this.uriPattern != null
+          && (uri == null || !this.uriPattern.matcher(uri).matches())) {
+        return Reason.URI;
+      }
+      if (this.excludedUriPattern != null
+          && uri != null && this.excludedUriPattern.matcher(uri).matches()) {
+        return Reason.URI;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Appends the number of skipped records for each reason that occurred, like
+   * <tt>3 (TYPE 2, URI 1)</tt>.
+   */
+  public StringBuilder appendNumSkipped(final StringBuilder output) {
+    output.append(this.getNumSkipped());
+    boolean first = true;
+    for (final Reason reason : Reason.values()) {
+      final long numSkipped = this.getNumSkipped(reason);
+      if (numSkipped > 0) {
+        output.append(first ? " (" : ", ")
+          .append(reason).append(' ').append(numSkipped);
+        first = false;
+      }
+    }
+    if (!first) { output.append(')'); }
+    return output;
+  }
+
+}
@@ -1,5 +1,6 @@
 package de.aitools.aq.web.extractor;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
@@ -7,12 +8,20 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.http.Header;
@@ -42,7 +51,6 @@ import org.apache.http.io.SessionInputBuffer;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HTTP;
-import org.apache.http.util.EntityUtils;
 
 import edu.cmu.lemurproject.WarcRecord;
 
@@ -62,8 +70,6 @@ public class Warcs {
   private static final Pattern HTML_CONTENT_TYPE_PATTERN = Pattern.compile(
       "text/html.*");
 
-  private static final String HEADER_CONTENT_TYPE = "Content-Type";
-
   private final static InputStreamFactory GZIP = new InputStreamFactory() {
     @Override
     public InputStream create(final InputStream instream) throws IOException {
@@ -78,20 +84,44 @@ public class Warcs {
     }
   };
   
+  private static final Lookup<InputStreamFactory> DECODER_REGISTRY =
+      RegistryBuilder.<InputStreamFactory>create()
+        .register("gzip", GZIP)
+        .register("x-gzip", GZIP)
+        .register("deflate", DEFLATE)
+        .build();
+
+  /**
+   * Charset for responses that do not specify one, like in HttpCore's
+   * <tt>EntityUtils</tt>.
+   */
+  public static final Charset DEFAULT_CHARSET = StandardCharsets.ISO_8859_1;
+
+  private static final String RESPONSE_VERSION = "WARC/1.0";
+
+  private static final String RESPONSE_CONTENT_TYPE =
+      "application/http; msgtype=response";
+
+  private static final byte[] RESPONSE_HTTP_HEADER = ("HTTP/1.1 200 OK\r\n"
+      + "Content-Type: text/html\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+  private static final HtmlDecoder HTML_DECODER = new HtmlDecoder();
+  
+  private static final int FILE_BUFFER_SIZE = 1 << 16;
+  
   private Warcs() { }
 
   /**
    * Reads the WARC records from given input. If the file name ends in .gz, the
    * WARC will be decompressed. 
+   * <p>
+   * The records are read lazily (see {@link #getRecords(DataInputStream)}), so
+   * the returned stream should be closed after use.
+   * </p>
    */  
   public static Stream<WarcRecord> getRecords(final File input)
   throws IOException {
-    final InputStream inputStream = new FileInputStream(input);
-    if (input.getName().endsWith(".gz")) {
-      return Warcs.getRecords(new GZIPInputStream(inputStream));
-    } else {
-      return Warcs.getRecords(inputStream);
-    }
+    return Warcs.getRecords(Warcs.openFile(input));
   }
 
   /**
@@ -104,17 +134,20 @@ public class Warcs {
 
   /**
    * Reads the WARC records from given input.
+   * <p>
+   * The records are read lazily: the next record is only read from the input
+   * when the stream requests it, so only the records currently in use are
+   * held in memory. The input is closed when the end of the input is reached
+   * or when the returned stream is closed, whichever happens first. Read
+   * errors are thrown as {@link UncheckedIOException} by the stream.
+   * </p>
    */
   public static Stream<WarcRecord> getRecords(final DataInputStream input)
   throws IOException {
-    final List<WarcRecord> records = new ArrayList<>();
-    WarcRecord record = WarcRecord.readNextWarcRecord(input);
-    while (record != null) {
-      records.add(record);
-      record = WarcRecord.readNextWarcRecord(input);
-    }
-    input.close();
-    return records.stream();
+    final RecordIterator records = new RecordIterator(input);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records,
+          Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(records::close);
   }
 
   /**
@@ -124,12 +157,7 @@ public class Warcs {
    */
   public static Stream<String> getHtmlFromRecords(final File input)
   throws IOException {
-    final InputStream inputStream = new FileInputStream(input);
-    if (input.getName().endsWith(".gz")) {
-      return Warcs.getHtmlFromRecords(new GZIPInputStream(inputStream));
-    } else {
-      return Warcs.getHtmlFromRecords(inputStream);
-    }
+    return Warcs.getHtmlFromRecords(Warcs.openFile(input));
   }
 
   /**
@@ -144,6 +172,10 @@ public class Warcs {
   /**
    * Reads the WARC records from given input and extracts them using
    * {@link #getHtml(WarcRecord)}.
+   * <p>
+   * Like {@link #getRecords(DataInputStream)}, this reads the records lazily
+   * and closes the input when the returned stream is closed.
+   * </p>
    */
   public static Stream<String> getHtmlFromRecords(final DataInputStream input)
   throws IOException {
@@ -162,23 +194,172 @@ public class Warcs {
         .filter(record -> record != null);
   }
   
+  /**
+   * Opens given WARC file for reading, decompressing it if the file name ends
+   * in .gz. The returned stream is buffered.
+   */
+  public static InputStream openFile(final File input) throws IOException {
+    final InputStream inputStream = new BufferedInputStream(
+        new FileInputStream(input), FILE_BUFFER_SIZE);
+    if (input.getName().endsWith(".gz")) {
+      try {
+        return new BufferedInputStream(
+            new GZIPInputStream(inputStream, FILE_BUFFER_SIZE),
+            FILE_BUFFER_SIZE);
+      } catch (final IOException e) {
+        inputStream.close();
+        throw e;
+      }
+    } else {
+      return inputStream;
+    }
+  }
+  
+  /**
+   * Converts given record to a record of the Lemur project, which is used by
+   * the Hadoop input formats. The content is copied unless it is backed by an
+   * array of exactly its length.
+   */
+  public static WarcRecord toWarcRecord(final RawWarcRecord record) {
+    final WarcRecord warcRecord = new WarcRecord();
+    for (final Map.Entry<String, String> field
+        : record.getHeader().getFields().entrySet()) {
+      final String name = field.getKey();
+      final String value = field.getValue();
+      if (name.equalsIgnoreCase(WarcHeader.FIELD_TYPE)) {
+        warcRecord.setWarcRecordType(value);
+      } else if (name.equalsIgnoreCase(WarcHeader.FIELD_DATE)) {
+        warcRecord.setWarcDate(value);
+      } else if (name.equalsIgnoreCase(WarcHeader.FIELD_RECORD_ID)) {
+        warcRecord.setWarcUUID(value);
+      } else if (name.equalsIgnoreCase(WarcHeader.FIELD_CONTENT_TYPE)) {
+        warcRecord.setWarcContentType(value);
+      } else if (!name.equalsIgnoreCase(WarcHeader.FIELD_CONTENT_LENGTH)) {
+        warcRecord.addHeaderMetadata(name, value);
+      }
+    }
+
+    final ByteBuffer content = record.getContent();
+    if (content.hasArray() && content.arrayOffset() == 0
+        && content.position() == 0
+        && content.remaining() == content.array().length) {
+      warcRecord.setContent(content.array());
+    } else {
+      final byte[] bytes = new byte[content.remaining()];
+      content.get(bytes);
+      warcRecord.setContent(bytes);
+    }
+    return warcRecord;
+  }
+  
+  /**
+   * Creates a response record for an HTML page that was not crawled, like the
+   * page of an HTML file, so that it can be processed like a crawled page. The
+   * record has the given target URI and contains an HTTP response with the
+   * HTML as body, which declares no charset.
+   */
+  public static RawWarcRecord toResponseRecord(
+      final String uri, final byte[] html) {
+    final byte[] content =
+        new byte[RESPONSE_HTTP_HEADER.length + html.length];
+    System.arraycopy(RESPONSE_HTTP_HEADER, 0,
+        content, 0, RESPONSE_HTTP_HEADER.length);
+    System.arraycopy(html, 0,
+        content, RESPONSE_HTTP_HEADER.length, html.length);
+
+    final Map<String, String> fields = new LinkedHashMap<>();
+    fields.put(WarcHeader.FIELD_TYPE, WarcHeader.TYPE_RESPONSE);
+    fields.put(WarcHeader.FIELD_TARGET_URI, uri);
+    fields.put(WarcHeader.FIELD_CONTENT_TYPE, RESPONSE_CONTENT_TYPE);
+    fields.put(WarcHeader.FIELD_CONTENT_LENGTH,
+        String.valueOf(content.length));
+    return new RawWarcRecord(new WarcHeader(RESPONSE_VERSION, fields),
+        ByteBuffer.wrap(content), 0);
+  }
+  
   /**
    * Gets the HTML part of a record or <tt>null</tt> if there is none or an
    * invalid one.
    */
   public static String getHtml(final WarcRecord record)
   throws ParseException, IOException, HttpException {
-    final HttpResponse response = Warcs.toResponse(record);
+    return Warcs.getHtml(Warcs.getHtmlResponse(record));
+  }
+  
+  /**
+   * Gets the HTML part of a record or <tt>null</tt> if there is none or an
+   * invalid one.
+   */
+  public static String getHtml(final RawWarcRecord record)
+  throws ParseException, IOException, HttpException {
+    return Warcs.getHtml(Warcs.getHtmlResponse(record));
+  }
+  
+  /**
+   * Gets the HTML part of the content block of a response record (from its
+   * position to its limit) or <tt>null</tt> if there is none or an invalid
+   * one. The position of the buffer is not changed.
+   */
+  public static String getHtml(final ByteBuffer content)
+  throws ParseException, IOException, HttpException {
+    return Warcs.getHtml(Warcs.getHtmlResponse(content));
+  }
+  
+  /**
+   * Gets the HTML part of the response, decoded using the charset that
+   * {@link HtmlDecoder} resolves from the <tt>Content-Type</tt> header, the
+   * byte order mark, and the <tt>&lt;meta&gt;</tt> tags, or <tt>null</tt> if
+   * the response is <tt>null</tt>.
+   */
+  public static String getHtml(final RawHttpResponse response) {
     if (response == null) { return null; }
-    final String contentType =
-        response.getLastHeader(HEADER_CONTENT_TYPE).getValue();
+    return HTML_DECODER.decodeToString(
+        response.getBody(), response.getCharset(), DEFAULT_CHARSET);
+  }
+  
+  /**
+   * Gets the HTTP response of a record if it is a response record with HTML
+   * content, or <tt>null</tt> otherwise.
+   */
+  public static RawHttpResponse getHtmlResponse(final WarcRecord record)
+  throws IOException {
+    if (!WarcHeader.TYPE_RESPONSE.equals(record.getHeaderRecordType())) {
+      return null;
+    }
+    return Warcs.getHtmlResponse(ByteBuffer.wrap(record.getByteContent()));
+  }
+  
+  /**
+   * Gets the HTTP response of a record if it is a response record with HTML
+   * content, or <tt>null</tt> otherwise.
+   */
+  public static RawHttpResponse getHtmlResponse(final RawWarcRecord record)
+  throws IOException {
+    if (!WarcHeader.TYPE_RESPONSE.equals(record.getHeader().getType())) {
+      return null;
+    }
+    return Warcs.getHtmlResponse(record.getContent());
+  }
+  
+  /**
+   * Gets the HTTP response in the content block of a response record (from its
+   * position to its limit) if it has HTML content, or <tt>null</tt> otherwise.
+   * The position of the buffer is not changed.
+   * <p>
+   * The response is parsed with {@link RawHttpResponse} rather than with
+   * HttpCore (see {@link #toResponse(ByteBuffer)}), which avoids the stream
+   * and entity objects, and the body is not decoded into characters yet.
+   * </p>
+   */
+  public static RawHttpResponse getHtmlResponse(final ByteBuffer content)
+  throws IOException {
+    final RawHttpResponse response = RawHttpResponse.parse(content);
+    final String contentType = response.getContentType();
     if (contentType == null) { return null; }
     if (!HTML_CONTENT_TYPE_PATTERN.matcher(contentType).matches()) {
       return null;
     }
-    final HttpEntity entity = response.getEntity();
-    final String defaultCharset = null;
-    return EntityUtils.toString(entity, defaultCharset);
+    return response;
   }
 
   /**
@@ -187,14 +368,29 @@ public class Warcs {
    * record
    */
   public static HttpResponse toResponse(final WarcRecord record)
+  throws IOException, HttpException {
+    if (!record.getHeaderRecordType().equals(WarcHeader.TYPE_RESPONSE)) {
+      return null;
+    }
+    return Warcs.toResponse(new ByteArrayInputStream(record.getByteContent()));
+  }
+
+  /**
+   * Gets an {@link HttpResponse} object from the content block of a WARC
+   * record of such a response (from its position to its limit). The bytes are
+   * parsed from the buffer without copying the content block to an array
+   * first, and the position of the buffer is not changed.
+   */
+  public static HttpResponse toResponse(final ByteBuffer content)
+  throws IOException, HttpException {
+    return Warcs.toResponse(new ByteBufferInputStream(content.duplicate()));
+  }
+  
+  private static HttpResponse toResponse(final InputStream inputStream)
   throws IOException, HttpException {
     // based on http://stackoverflow.com/a/26586178
-    if (!record.getHeaderRecordType().equals("response")) { return null; }
-    
     final SessionInputBufferImpl sessionInputBuffer =
         new SessionInputBufferImpl(new HttpTransportMetricsImpl(), 2048);
-    final InputStream inputStream =
-        new ByteArrayInputStream(record.getByteContent());
     sessionInputBuffer.bind(inputStream);
     final HttpParams params = new BasicHttpParams();
     final DefaultHttpResponseParser parser =
@@ -219,16 +415,10 @@ public class Warcs {
       final Header ceheader = entity.getContentEncoding();
       if (ceheader != null) {
         final HeaderElement[] codecs = ceheader.getElements();
-        final Lookup<InputStreamFactory> decoderRegistry =
-            RegistryBuilder.<InputStreamFactory>create()
-              .register("gzip", GZIP)
-              .register("x-gzip", GZIP)
-              .register("deflate", DEFLATE)
-              .build();
         for (final HeaderElement codec : codecs) {
           final String codecname = codec.getName().toLowerCase(Locale.ROOT);
           final InputStreamFactory decoderFactory =
-              decoderRegistry.lookup(codecname);
+              DECODER_REGISTRY.lookup(codecname);
           if (decoderFactory != null) {
             response.setEntity(new DecompressingEntity(
                 response.getEntity(), decoderFactory));
@@ -296,4 +486,105 @@ public class Warcs {
     return entity;
   }
 
+  /**
+   * Iterator that reads the next record only when it is requested.
+   */
+  private static class RecordIterator
+  implements Iterator<WarcRecord>, AutoCloseable {
+    
+    private final DataInputStream input;
+    
+    private WarcRecord next;
+    
+    private boolean closed;
+    
+    public RecordIterator(final DataInputStream input) {
+      if (input == null) { throw new NullPointerException(); }
+      this.input = input;
+      this.next = null;
+      this.closed = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (this.next == null && !this.closed) {
+        try {
+          this.next = WarcRecord.readNextWarcRecord(this.input);
+        } catch (final IOException e) {
+          final UncheckedIOException exception = new UncheckedIOException(e);
+          try {
+            this.close();
+          } catch (final UncheckedIOException closeException) {
+            exception.addSuppressed(closeException);
+          }
+          throw exception;
+        }
+        if (this.next == null) { this.close(); }
+      }
+      return this.next != null;
+    }
+
+    @Override
+    public WarcRecord next() {
+      if (!this.hasNext()) { throw new NoSuchElementException(); }
+      final WarcRecord record = this.next;
+      this.next = null;
+      return record;
+    }
+
+    @Override
+    public void close() {
+      if (!this.closed) {
+        this.closed = true;
+        try {
+          this.input.close();
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+    
+  }
+
+  /**
+   * Input stream that reads from a buffer without copying it.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    
+    private final ByteBuffer buffer;
+    
+    public ByteBufferInputStream(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      if (!this.buffer.hasRemaining()) { return -1; }
+      return this.buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+      if (length == 0) { return 0; }
+      if (!this.buffer.hasRemaining()) { return -1; }
+      final int numRead = Math.min(length, this.buffer.remaining());
+      this.buffer.get(bytes, offset, numRead);
+      return numRead;
+    }
+
+    @Override
+    public long skip(final long length) {
+      final int numSkipped =
+          (int) Math.max(0, Math.min(length, this.buffer.remaining()));
+      this.buffer.position(this.buffer.position() + numSkipped);
+      return numSkipped;
+    }
+
+    @Override
+    public int available() {
+      return this.buffer.remaining();
+    }
+    
+  }
+
 }